@@ -1,6 +1,18 @@
+check { dependsOn("compileDebugAndroidTestJavaWithJavac") }
+
+android {
+    defaultConfig {
+        testInstrumentationRunner = "android.support.test.runner.AndroidJUnitRunner"
+    }
+}
+
 dependencies {
     api(Config.Libs.Arch.runtime)
     api(Config.Libs.Arch.viewModel)
     implementation(Config.Libs.Support.annotations)
     annotationProcessor(Config.Libs.Arch.compiler)
+
+    androidTestImplementation(Config.Libs.Test.junit)
+    androidTestImplementation(Config.Libs.Test.runner)
+    androidTestImplementation(Config.Libs.Test.rules)
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Batching relies on {@link android.view.Choreographer}, so these tests run on the main thread,
+ * where no frame can pass in the middle of a test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchingTest {
+    @Rule
+    public UiThreadTestRule mUiThreadRule = new UiThreadTestRule();
+
+    private TestSnapshotArray mArray;
+    private RecordingListener.Batch mListener;
+
+    @Before
+    public void setUp() {
+        mArray = new TestSnapshotArray();
+        mListener = new RecordingListener.Batch();
+    }
+
+    @Test
+    @UiThreadTest
+    public void testEventsAreBufferedUntilDataChanged() {
+        mArray.setBatchingEnabled(true);
+        mArray.addChangeEventListener(mListener);
+
+        mArray.addSnapshot(0, "a");
+        mArray.addSnapshot(1, "b");
+        assertTrue(mListener.mEvents.isEmpty());
+
+        mArray.dataChanged();
+        assertEquals(Collections.singletonList(
+                new ChangeEvent(ChangeEventType.ADDED, 0, -1, 2)), mListener.mEvents);
+    }
+
+    @Test
+    @UiThreadTest
+    public void testNotifiedItemsLagUntilFlush() {
+        mArray.addChangeEventListener(mListener);
+        mArray.addSnapshot(0, "a");
+        mArray.addSnapshot(1, "b");
+        mArray.addSnapshot(2, "c");
+        mArray.addSnapshot(3, "d");
+        mArray.dataChanged();
+        long idB = mArray.getStableId(1);
+        mArray.setBatchingEnabled(true);
+
+        // a b c d -> a c d -> x a c d -> x c a d
+        mArray.removeSnapshot(1);
+        mArray.addSnapshot(0, "x");
+        mArray.moveSnapshot(1, 2);
+        mArray.changeSnapshot(3, "d:new");
+
+        assertEquals(Arrays.asList("x", "c", "a", "d:new"), mArray);
+        assertEquals(4, mArray.getNotifiedSize());
+        assertEquals("a", mArray.getNotifiedSnapshot(0));
+        assertEquals("b", mArray.getNotified(1));
+        assertEquals("c", mArray.getNotifiedSnapshot(2));
+        assertEquals("d:new", mArray.getNotifiedSnapshot(3));
+        assertEquals(idB, mArray.getNotifiedStableId(1));
+
+        mArray.dataChanged();
+        assertEquals(4, mArray.getNotifiedSize());
+        for (int i = 0; i < mArray.size(); i++) {
+            assertEquals(mArray.getSnapshot(i), mArray.getNotifiedSnapshot(i));
+        }
+        assertTrue(mArray.getStableIdForKey("b") != idB);
+    }
+
+    @Test
+    @UiThreadTest
+    public void testNotifiedItemsMatchWithoutBatching() {
+        mArray.addChangeEventListener(mListener);
+        mArray.addSnapshot(0, "a");
+        mArray.addSnapshot(0, "b");
+
+        assertEquals(2, mArray.getNotifiedSize());
+        assertEquals("b", mArray.getNotifiedSnapshot(0));
+        assertEquals("a", mArray.getNotifiedSnapshot(1));
+    }
+
+    @Test
+    @UiThreadTest
+    public void testItemRemovedAndAddedBackKeepsStableId() {
+        mArray.addChangeEventListener(mListener);
+        mArray.addSnapshot(0, "a");
+        long id = mArray.getStableId(0);
+        mArray.setBatchingEnabled(true);
+
+        mArray.removeSnapshot(0);
+        mArray.addSnapshot(0, "a");
+        mArray.dataChanged();
+
+        assertEquals(id, mArray.getStableId(0));
+    }
+}
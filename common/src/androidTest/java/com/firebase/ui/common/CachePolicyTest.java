@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class CachePolicyTest {
+    private TestSnapshotArray.CountingParser mParser;
+    private TestSnapshotArray mArray;
+
+    @Before
+    public void setUp() {
+        mParser = new TestSnapshotArray.CountingParser();
+        mArray = new TestSnapshotArray(mParser);
+        mArray.addChangeEventListener(new RecordingListener());
+        for (int i = 0; i < 5; i++) {
+            mArray.addSnapshot(i, String.valueOf(i));
+        }
+        mArray.dataChanged();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        mArray.get(0);
+        mArray.get(0);
+        mArray.get(1);
+        mArray.get(0);
+
+        CacheStats stats = mArray.getCacheStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(2, stats.getSize());
+        assertEquals(2, mParser.mParseCount);
+    }
+
+    @Test
+    public void testChangeInvalidatesModel() {
+        mArray.get(0);
+        mArray.changeSnapshot(0, "0:new");
+
+        assertEquals("0:new", mArray.get(0));
+        assertEquals(2, mArray.getCacheStats().getMissCount());
+    }
+
+    @Test
+    public void testEvictions() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>().setMaxSize(2).build());
+        for (int i = 0; i < 5; i++) {
+            mArray.get(i);
+        }
+
+        CacheStats stats = mArray.getCacheStats();
+        assertEquals(3, stats.getEvictionCount());
+        assertEquals(2, stats.getSize());
+
+        mArray.get(0);
+        assertEquals(6, mParser.mParseCount);
+    }
+
+    @Test
+    public void testWeigherBoundsTotalWeight() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>()
+                .setMaxSize(10)
+                .setWeigher(new CachePolicy.Weigher<String>() {
+                    @Override
+                    public int weigh(@NonNull String id, @NonNull String model) {
+                        return 4;
+                    }
+                })
+                .build());
+        for (int i = 0; i < 3; i++) {
+            mArray.get(i);
+        }
+
+        CacheStats stats = mArray.getCacheStats();
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(8, stats.getSize());
+    }
+
+    @Test
+    public void testPinnedModelsSurviveEviction() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>()
+                .setMaxSize(2)
+                .setPinVisibleRange(true)
+                .build());
+        mArray.setVisibleRange(0, 1);
+        for (int i = 0; i < 5; i++) {
+            mArray.get(i);
+        }
+        mParser.mParseCount = 0;
+
+        mArray.get(0);
+        mArray.get(1);
+        assertEquals(0, mParser.mParseCount);
+        // Pinned models moved out of the cache don't count as evicted
+        assertEquals(1, mArray.getCacheStats().getEvictionCount());
+    }
+
+    @Test
+    public void testUnpinnedModelsAreDropped() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>()
+                .setMaxSize(2)
+                .setPinVisibleRange(true)
+                .build());
+        mArray.setVisibleRange(0, 1);
+        for (int i = 0; i < 5; i++) {
+            mArray.get(i);
+        }
+        mArray.setVisibleRange(3, 4);
+        mParser.mParseCount = 0;
+
+        mArray.get(0);
+        mArray.get(1);
+        assertEquals(2, mParser.mParseCount);
+    }
+
+    @Test
+    public void testNoPinningWithoutPolicy() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>().setMaxSize(2).build());
+        mArray.setVisibleRange(0, 1);
+        for (int i = 0; i < 5; i++) {
+            mArray.get(i);
+        }
+        mParser.mParseCount = 0;
+
+        mArray.get(0);
+        assertEquals(1, mParser.mParseCount);
+    }
+
+    @Test
+    public void testClearIsNotCountedAsEviction() {
+        mArray.get(0);
+        mArray.get(1);
+        mArray.setCachePolicy(CachePolicy.<String>defaultPolicy());
+
+        CacheStats stats = mArray.getCacheStats();
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(0, stats.getSize());
+    }
+}
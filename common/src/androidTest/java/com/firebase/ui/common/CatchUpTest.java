@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class CatchUpTest {
+    private TestSnapshotArray mArray;
+
+    @Before
+    public void setUp() {
+        mArray = new TestSnapshotArray();
+        mArray.addChangeEventListener(new RecordingListener());
+        mArray.addSnapshot(0, "a");
+        mArray.addSnapshot(1, "b");
+        mArray.addSnapshot(2, "c");
+        mArray.dataChanged();
+    }
+
+    @Test
+    public void testBatchListenerCaughtUpPerItemWithoutBatching() {
+        RecordingListener.Batch listener = new RecordingListener.Batch();
+        mArray.addChangeEventListener(listener);
+
+        assertEquals(Arrays.asList(
+                new ChangeEvent(ChangeEventType.ADDED, 0, -1, 1),
+                new ChangeEvent(ChangeEventType.ADDED, 1, -1, 1),
+                new ChangeEvent(ChangeEventType.ADDED, 2, -1, 1)), listener.mEvents);
+        assertEquals(1, listener.mDataChangedCount);
+    }
+
+    @Test
+    public void testBatchListenerCaughtUpWithRangeWhileBatching() {
+        mArray.setBatchingEnabled(true);
+        RecordingListener.Batch listener = new RecordingListener.Batch();
+        mArray.addChangeEventListener(listener);
+
+        assertEquals(Collections.singletonList(
+                new ChangeEvent(ChangeEventType.ADDED, 0, -1, 3)), listener.mEvents);
+        assertEquals(1, listener.mDataChangedCount);
+    }
+
+    @Test
+    public void testPlainListenerCaughtUpPerItemWhileBatching() {
+        mArray.setBatchingEnabled(true);
+        RecordingListener listener = new RecordingListener();
+        mArray.addChangeEventListener(listener);
+
+        assertEquals(3, listener.mEvents.size());
+    }
+}
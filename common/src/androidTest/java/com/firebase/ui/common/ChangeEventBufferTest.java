@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.firebase.ui.common.ChangeEventType.ADDED;
+import static com.firebase.ui.common.ChangeEventType.CHANGED;
+import static com.firebase.ui.common.ChangeEventType.MOVED;
+import static com.firebase.ui.common.ChangeEventType.REMOVED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ChangeEventBufferTest {
+    private ChangeEventBuffer mBuffer;
+
+    @Before
+    public void setUp() {
+        mBuffer = new ChangeEventBuffer();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(mBuffer.isEmpty());
+        assertEquals(Collections.<ChangeEvent>emptyList(), mBuffer.drain());
+    }
+
+    @Test
+    public void testConsecutiveAddsMerge() {
+        mBuffer.add(ADDED, 3, -1);
+        mBuffer.add(ADDED, 4, -1);
+        mBuffer.add(ADDED, 5, -1);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(ADDED, 3, -1, 3)), mBuffer.drain());
+    }
+
+    @Test
+    public void testAddsInsideAndAtStartOfRangeMerge() {
+        mBuffer.add(ADDED, 3, -1);
+        mBuffer.add(ADDED, 4, -1);
+        mBuffer.add(ADDED, 4, -1);
+        mBuffer.add(ADDED, 3, -1);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(ADDED, 3, -1, 4)), mBuffer.drain());
+    }
+
+    @Test
+    public void testAddOutsideRangeStartsNewEvent() {
+        mBuffer.add(ADDED, 3, -1);
+        mBuffer.add(ADDED, 10, -1);
+
+        assertEquals(Arrays.asList(
+                new ChangeEvent(ADDED, 3, -1, 1),
+                new ChangeEvent(ADDED, 10, -1, 1)), mBuffer.drain());
+    }
+
+    @Test
+    public void testRemovalsForwardAndBackwardMerge() {
+        // Removing 5, 5 again (what was 6), then 4 removes positions 4 through 6
+        mBuffer.add(REMOVED, 5, -1);
+        mBuffer.add(REMOVED, 5, -1);
+        mBuffer.add(REMOVED, 4, -1);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(REMOVED, 4, -1, 3)),
+                mBuffer.drain());
+    }
+
+    @Test
+    public void testRemovalWithOldIndexOnly() {
+        mBuffer.add(REMOVED, -1, 2);
+        mBuffer.add(REMOVED, -1, 2);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(REMOVED, 2, -1, 2)),
+                mBuffer.drain());
+    }
+
+    @Test
+    public void testChangesMergeAndRepeatsAreAbsorbed() {
+        mBuffer.add(CHANGED, 5, -1);
+        mBuffer.add(CHANGED, 6, -1);
+        mBuffer.add(CHANGED, 5, -1);
+        mBuffer.add(CHANGED, 4, -1);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(CHANGED, 4, -1, 3)),
+                mBuffer.drain());
+    }
+
+    @Test
+    public void testChangeOfAddedItemIsAbsorbed() {
+        mBuffer.add(ADDED, 0, -1);
+        mBuffer.add(ADDED, 1, -1);
+        mBuffer.add(CHANGED, 1, -1);
+
+        assertEquals(Collections.singletonList(new ChangeEvent(ADDED, 0, -1, 2)), mBuffer.drain());
+    }
+
+    @Test
+    public void testChangeOutsideAddedRangeIsKept() {
+        mBuffer.add(ADDED, 0, -1);
+        mBuffer.add(CHANGED, 1, -1);
+
+        assertEquals(Arrays.asList(
+                new ChangeEvent(ADDED, 0, -1, 1),
+                new ChangeEvent(CHANGED, 1, -1, 1)), mBuffer.drain());
+    }
+
+    @Test
+    public void testMovesAreNeverMerged() {
+        mBuffer.add(ADDED, 0, -1);
+        mBuffer.add(MOVED, 2, 1);
+        mBuffer.add(MOVED, 3, 2);
+        mBuffer.add(ADDED, 1, -1);
+
+        assertEquals(Arrays.asList(
+                new ChangeEvent(ADDED, 0, -1, 1),
+                new ChangeEvent(MOVED, 2, 1, 1),
+                new ChangeEvent(MOVED, 3, 2, 1),
+                new ChangeEvent(ADDED, 1, -1, 1)), mBuffer.drain());
+    }
+
+    @Test
+    public void testDrainEmptiesBuffer() {
+        mBuffer.add(ADDED, 0, -1);
+        mBuffer.drain();
+
+        assertTrue(mBuffer.isEmpty());
+        mBuffer.add(ADDED, 1, -1);
+        assertEquals(Collections.singletonList(new ChangeEvent(ADDED, 1, -1, 1)), mBuffer.drain());
+    }
+}
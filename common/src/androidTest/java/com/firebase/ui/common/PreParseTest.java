@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class PreParseTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestSnapshotArray.CountingParser mParser;
+    private TestSnapshotArray mArray;
+
+    @Before
+    public void setUp() {
+        mParser = new TestSnapshotArray.CountingParser();
+        mArray = new TestSnapshotArray(mParser);
+        mArray.setParseExecutor(DIRECT_EXECUTOR);
+        mArray.addChangeEventListener(new RecordingListener());
+    }
+
+    @Test
+    public void testInitialSyncOnlyParsesTopOfList() {
+        addItems(1000);
+
+        assertEquals(20, mParser.mParseCount);
+        assertEquals(20, mArray.getCacheStats().getSize());
+    }
+
+    @Test
+    public void testParsesAroundVisibleRange() {
+        addItems(1000);
+        mArray.setVisibleRange(500, 509);
+        mParser.mParseCount = 0;
+
+        mArray.changeSnapshot(505, "505:new");
+        mArray.changeSnapshot(480, "480:new");
+        mArray.changeSnapshot(529, "529:new");
+        assertEquals(3, mParser.mParseCount);
+
+        mArray.changeSnapshot(0, "0:new");
+        mArray.changeSnapshot(479, "479:new");
+        mArray.changeSnapshot(530, "530:new");
+        assertEquals(3, mParser.mParseCount);
+
+        // Ahead-of-time results are used rather than parsed again
+        mArray.get(505);
+        assertEquals(3, mParser.mParseCount);
+    }
+
+    @Test
+    public void testParsesNoMoreThanCacheHolds() {
+        mArray.setCachePolicy(new CachePolicy.Builder<String>().setMaxSize(10).build());
+        mArray.setVisibleRange(0, 5);
+        addItems(100);
+
+        // The 6 visible items and 2 on each side
+        assertEquals(8, mParser.mParseCount);
+    }
+
+    private void addItems(int count) {
+        for (int i = 0; i < count; i++) {
+            mArray.addSnapshot(i, String.valueOf(i));
+        }
+        mArray.dataChanged();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the events it receives as {@link ChangeEvent}s.
+ */
+public class RecordingListener implements TestSnapshotArray.Listener {
+    public final List<ChangeEvent> mEvents = new ArrayList<>();
+    public int mDataChangedCount;
+
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull String snapshot,
+                               int newIndex,
+                               int oldIndex) {
+        mEvents.add(new ChangeEvent(type, newIndex, oldIndex, 1));
+    }
+
+    @Override
+    public void onDataChanged() {
+        mDataChangedCount++;
+    }
+
+    @Override
+    public void onError(@NonNull Exception e) {
+        throw new AssertionError(e);
+    }
+
+    /**
+     * Also receives batched events.
+     */
+    public static class Batch extends RecordingListener implements BatchChangeEventListener {
+        @Override
+        public void onChildrenChanged(@NonNull List<ChangeEvent> events) {
+            mEvents.addAll(events);
+        }
+    }
+}
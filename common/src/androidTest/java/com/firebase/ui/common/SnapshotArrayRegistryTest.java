@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class SnapshotArrayRegistryTest {
+    private static final long LINGER_MILLIS = 200;
+    private static final SnapshotArrayRegistry.Factory<TestSnapshotArray> FACTORY =
+            new SnapshotArrayRegistry.Factory<TestSnapshotArray>() {
+                @NonNull
+                @Override
+                public TestSnapshotArray create() {
+                    return new TestSnapshotArray();
+                }
+            };
+
+    private SnapshotArrayRegistry mRegistry;
+    private long mDefaultLingerMillis;
+
+    @Before
+    public void setUp() {
+        mRegistry = SnapshotArrayRegistry.getInstance();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mDefaultLingerMillis = mRegistry.getLingerMillis();
+                mRegistry.setLingerMillis(LINGER_MILLIS);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRegistry.setLingerMillis(mDefaultLingerMillis);
+            }
+        });
+    }
+
+    @Test
+    public void testObtainSharesArray() {
+        Object key = new Object();
+        assertSame(obtain(key), obtain(key));
+    }
+
+    @Test
+    public void testArrayNeverListenedToIsEvicted() throws InterruptedException {
+        Object key = new Object();
+        TestSnapshotArray array = obtain(key);
+
+        Thread.sleep(LINGER_MILLIS * 3);
+        assertNotSame(array, obtain(key));
+    }
+
+    @Test
+    public void testListenedArrayIsNotEvicted() throws InterruptedException {
+        Object key = new Object();
+        final TestSnapshotArray array = obtain(key);
+        final RecordingListener listener = new RecordingListener();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.addChangeEventListener(listener);
+            }
+        });
+
+        Thread.sleep(LINGER_MILLIS * 3);
+        assertSame(array, obtain(key));
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.removeChangeEventListener(listener);
+            }
+        });
+    }
+
+    @Test
+    public void testObtainingAgainPostponesEviction() throws InterruptedException {
+        Object key = new Object();
+        TestSnapshotArray array = obtain(key);
+
+        Thread.sleep(LINGER_MILLIS * 2 / 3);
+        obtain(key);
+        Thread.sleep(LINGER_MILLIS * 2 / 3);
+        assertSame(array, obtain(key));
+    }
+
+    private TestSnapshotArray obtain(final Object key) {
+        final TestSnapshotArray[] result = new TestSnapshotArray[1];
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = mRegistry.obtain(key, FACTORY);
+            }
+        });
+        return result[0];
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A snapshot array of strings for tests. Snapshots look like {@code "id:content"}, and their ID
+ * is the part before the colon. Models are the snapshots themselves.
+ */
+public class TestSnapshotArray extends BaseObservableSnapshotArray<
+        String, Exception, TestSnapshotArray.Listener, String> {
+
+    public interface Listener extends BaseChangeEventListener<String, Exception> {}
+
+    /** Counts how many snapshots were parsed. */
+    public static class CountingParser implements BaseSnapshotParser<String, String> {
+        public int mParseCount;
+
+        @NonNull
+        @Override
+        public String parseSnapshot(@NonNull String snapshot) {
+            mParseCount++;
+            return snapshot;
+        }
+    }
+
+    public static class Parser extends BaseCachingSnapshotParser<String, String> {
+        public Parser(@NonNull BaseSnapshotParser<String, String> parser) {
+            super(parser);
+        }
+
+        @NonNull
+        @Override
+        public String getId(@NonNull String snapshot) {
+            int colon = snapshot.indexOf(':');
+            return colon == -1 ? snapshot : snapshot.substring(0, colon);
+        }
+    }
+
+    private final List<String> mSnapshots = new ArrayList<>();
+    public int mCreateCount;
+    public int mDestroyCount;
+
+    public TestSnapshotArray() {
+        this(new CountingParser());
+    }
+
+    public TestSnapshotArray(@NonNull BaseSnapshotParser<String, String> parser) {
+        super(new Parser(parser));
+    }
+
+    @NonNull
+    @Override
+    protected List<String> getSnapshots() {
+        return mSnapshots;
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        mCreateCount++;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyCount++;
+    }
+
+    public void addSnapshot(int index, String snapshot) {
+        mSnapshots.add(index, snapshot);
+        notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
+    }
+
+    public void changeSnapshot(int index, String snapshot) {
+        mSnapshots.set(index, snapshot);
+        notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1);
+    }
+
+    public void removeSnapshot(int index) {
+        String snapshot = mSnapshots.remove(index);
+        notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, index, -1);
+    }
+
+    public void moveSnapshot(int from, int to) {
+        String snapshot = mSnapshots.remove(from);
+        mSnapshots.add(to, snapshot);
+        notifyOnChildChanged(ChangeEventType.MOVED, snapshot, to, from);
+    }
+
+    public void dataChanged() {
+        notifyOnDataChanged();
+    }
+}
@@ -1,23 +1,56 @@
 package com.firebase.ui.common;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 import android.util.LruCache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Implementation of {@link BaseSnapshotParser} that caches results, so parsing a snapshot
  * repeatedly is not expensive.
+ * <p>
+ * The cache is bounded according to a {@link CachePolicy}. Snapshots can optionally be parsed ahead
+ * of time on a background {@link Executor}, see {@link #setParseExecutor(Executor)}.
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public abstract class BaseCachingSnapshotParser<S, T> implements BaseSnapshotParser<S, T> {
 
-    private static final int MAX_CACHE_SIZE = 100;
-
-    private final LruCache<String, T> mObjectCache = new LruCache<>(MAX_CACHE_SIZE);
     private final BaseSnapshotParser<S, T> mParser;
 
+    private CachePolicy<T> mPolicy;
+    private ObjectCache mObjectCache;
+
+    /**
+     * IDs pinned by {@link #setPinnedIds(Collection)} and the models which were evicted from
+     * {@link #mObjectCache} while pinned.
+     */
+    private final Set<String> mPinnedIds = new HashSet<>();
+    private final Map<String, T> mPinnedObjects = new HashMap<>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    /**
+     * Snapshots handed to the parse executor which have not been published yet, by ID. A result
+     * is only published if its snapshot is still the latest one submitted for that ID.
+     */
+    private final Map<String, S> mPendingParses = new HashMap<>();
+    private final Object mLock = new Object();
+    private Executor mParseExecutor;
+
     public BaseCachingSnapshotParser(@NonNull BaseSnapshotParser<S, T> parser) {
         mParser = parser;
+        setCachePolicy(CachePolicy.<T>defaultPolicy());
     }
 
     /**
@@ -30,27 +63,189 @@ public abstract class BaseCachingSnapshotParser<S, T> implements BaseSnapshotPar
     @Override
     public T parseSnapshot(@NonNull S snapshot) {
         String id = getId(snapshot);
-        T result = mObjectCache.get(id);
+        T result = getCached(id);
         if (result == null) {
+            mMissCount.incrementAndGet();
+
+            // Cache miss: the background parse hasn't finished (or wasn't requested), so parse
+            // synchronously and drop any pending work for this exact snapshot.
             T object = mParser.parseSnapshot(snapshot);
-            mObjectCache.put(id, object);
+            synchronized (mLock) {
+                if (mPendingParses.get(id) == snapshot) {
+                    mPendingParses.remove(id);
+                }
+                mObjectCache.put(id, object);
+            }
             result = object;
+        } else {
+            mHitCount.incrementAndGet();
         }
         return result;
     }
 
+    @Nullable
+    private T getCached(String id) {
+        synchronized (mLock) {
+            T result = mObjectCache.get(id);
+            return result == null ? mPinnedObjects.get(id) : result;
+        }
+    }
+
+    /**
+     * Replace the {@link CachePolicy}. Any cached models are discarded.
+     */
+    public void setCachePolicy(@NonNull CachePolicy<T> policy) {
+        Preconditions.checkNotNull(policy);
+        synchronized (mLock) {
+            mPolicy = policy;
+            mObjectCache = new ObjectCache(policy);
+            mPinnedObjects.clear();
+            if (!policy.isPinVisibleRange()) {
+                mPinnedIds.clear();
+            }
+        }
+    }
+
+    @NonNull
+    public CachePolicy<T> getCachePolicy() {
+        synchronized (mLock) {
+            return mPolicy;
+        }
+    }
+
+    /**
+     * Replace the set of pinned IDs. Does nothing unless the {@link CachePolicy} pins the visible
+     * range.
+     */
+    public void setPinnedIds(@NonNull Collection<String> ids) {
+        synchronized (mLock) {
+            if (!mPolicy.isPinVisibleRange()) {
+                return;
+            }
+
+            mPinnedIds.clear();
+            mPinnedIds.addAll(ids);
+
+            Iterator<String> it = mPinnedObjects.keySet().iterator();
+            while (it.hasNext()) {
+                if (!mPinnedIds.contains(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache's hit, miss, and eviction counters.
+     */
+    @NonNull
+    public CacheStats getStats() {
+        synchronized (mLock) {
+            return new CacheStats(mHitCount.get(),
+                    mMissCount.get(),
+                    mEvictionCount.get(),
+                    mObjectCache.size());
+        }
+    }
+
+    /**
+     * Set the {@link Executor} used by {@link #preParse(Object)}, or {@code null} to disable
+     * background parsing. When set, the wrapped parser must be safe to call from any thread.
+     */
+    public void setParseExecutor(@Nullable Executor executor) {
+        mParseExecutor = executor;
+    }
+
+    /**
+     * Parse a snapshot on the parse executor and publish the result to the cache, so a later
+     * call to {@link #parseSnapshot(Object)} is a cache hit. Does nothing if no executor is set.
+     */
+    public void preParse(@NonNull final S snapshot) {
+        Executor executor = mParseExecutor;
+        if (executor == null) {
+            return;
+        }
+
+        final String id = getId(snapshot);
+        synchronized (mLock) {
+            mPendingParses.put(id, snapshot);
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    if (mPendingParses.get(id) != snapshot) {
+                        return; // Superseded, invalidated, or already parsed synchronously
+                    }
+                }
+
+                T object = mParser.parseSnapshot(snapshot);
+                synchronized (mLock) {
+                    if (mPendingParses.get(id) == snapshot) {
+                        mPendingParses.remove(id);
+                        mObjectCache.put(id, object);
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Clear all data in the cache.
      */
     public void clear() {
-        mObjectCache.evictAll();
+        synchronized (mLock) {
+            mPendingParses.clear();
+            mPinnedObjects.clear();
+            // Swap rather than evictAll() so clearing doesn't count as evictions
+            mObjectCache = new ObjectCache(mPolicy);
+        }
     }
 
     /**
      * Invalidate the cache for a certain document.
      */
     public void invalidate(@NonNull S snapshot) {
-        mObjectCache.remove(getId(snapshot));
+        String id = getId(snapshot);
+        synchronized (mLock) {
+            mPendingParses.remove(id);
+            mPinnedObjects.remove(id);
+            mObjectCache.remove(id);
+        }
+    }
+
+    /**
+     * {@link LruCache} which sizes entries with the policy's {@link CachePolicy.Weigher} and holds
+     * on to pinned models when they are evicted. Always accessed while holding {@link #mLock}.
+     */
+    private final class ObjectCache extends LruCache<String, T> {
+
+        private final CachePolicy.Weigher<T> mWeigher;
+
+        public ObjectCache(CachePolicy<T> policy) {
+            super(policy.getMaxSize());
+            mWeigher = policy.getWeigher();
+        }
+
+        @Override
+        protected int sizeOf(String key, T value) {
+            return mWeigher == null ? 1 : mWeigher.weigh(key, value);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, T oldValue, T newValue) {
+            if (!evicted) {
+                return;
+            }
+
+            // Pinning only applies to the current cache, not one replaced by a new policy
+            if (this == mObjectCache && mPinnedIds.contains(key)) {
+                mPinnedObjects.put(key, oldValue);
+            } else {
+                mEvictionCount.incrementAndGet();
+            }
+        }
     }
 
 }
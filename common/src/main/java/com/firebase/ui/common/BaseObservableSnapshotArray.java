@@ -1,11 +1,20 @@
 package com.firebase.ui.common;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.CallSuper;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 /**
  * Exposes a collection of {@link S} items in a database as a {@link List} of {@link T} objects. To
@@ -19,8 +28,19 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEventListener<S, E>, T>
         extends AbstractList<T> {
 
+    /**
+     * The number of positions on each side of the visible range in which added and changed
+     * snapshots are parsed ahead of time, see {@link #setParseExecutor(Executor)}.
+     */
+    private static final int PRE_PARSE_MARGIN = 20;
+
     private final List<L> mListeners = new CopyOnWriteArrayList<>();
     private final BaseCachingSnapshotParser<S, T> mCachingParser;
+    private final StableIdAllocator mStableIds = new StableIdAllocator();
+
+    /** The last range reported through {@link #setVisibleRange(int, int)}, inclusive. */
+    private int mVisibleFirst = 0;
+    private int mVisibleLast = -1;
 
     /**
      * True if there has been a "data changed" event since the array was created or last reset,
@@ -28,6 +48,46 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
      */
     private boolean mHasDataChanged = false;
 
+    /**
+     * True if child events should be buffered and delivered in bulk to {@link
+     * BatchChangeEventListener}s.
+     */
+    private boolean mBatchingEnabled = false;
+    private final ChangeEventBuffer mPendingEvents = new ChangeEventBuffer();
+    /**
+     * The unmerged events in {@link #mPendingEvents}, used to answer for the items as batch
+     * listeners last saw them, and the IDs of removed items which keep their stable IDs until
+     * then.
+     */
+    private final List<PendingChange<S>> mPendingChanges = new ArrayList<>();
+    private final List<String> mPendingIdReleases = new ArrayList<>();
+    private boolean mFlushScheduled = false;
+    private final Choreographer.FrameCallback mFlushCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFlushScheduled = false;
+            flushPendingEvents();
+        }
+    };
+
+    /**
+     * How long to keep the array alive after its last listener is removed, see {@link
+     * #setLingerMillis(long)}.
+     */
+    private long mLingerMillis = 0;
+    private boolean mIsLingering = false;
+    private long mTeardownCount = 0;
+    private long mAvoidedTeardownCount = 0;
+    private Handler mLingerHandler;
+    private final Runnable mLingerTimeout = new Runnable() {
+        @Override
+        public void run() {
+            mIsLingering = false;
+            destroy();
+        }
+    };
+    private Runnable mOnActiveChangedCallback;
+
     /**
      * Create an BaseObservableSnapshotArray with a custom {@link BaseSnapshotParser}.
      *
@@ -70,12 +130,172 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         return getSnapshots().get(index);
     }
 
+    /**
+     * Returns a {@code long} ID for the item at the specified position, suitable for adapters with
+     * stable IDs. No two items in this array share an ID, and an item keeps its ID for as long as
+     * it stays in the array, including while it moves and across stopping and restarting
+     * listening.
+     *
+     * @param index index of the item
+     * @return the stable ID of the item at the specified position
+     */
+    public long getStableId(int index) {
+        return mStableIds.getId(getSnapshotId(index));
+    }
+
+    /**
+     * Returns the ID of the snapshot at the specified position, as given by the parser. Subclasses
+     * which don't always hold the snapshot itself, see {@link #isLoaded(int)}, must override this
+     * to answer without loading it.
+     */
+    @NonNull
+    protected String getSnapshotId(int index) {
+        return mCachingParser.getId(getSnapshot(index));
+    }
+
+    /**
+     * Returns false if the snapshot at the specified position isn't in memory right now, in which
+     * case {@link #get(int)} and {@link #getSnapshot(int)} must not be called for it. The array
+     * loads it in the background and reports a {@link ChangeEventType#CHANGED} event once it is
+     * available. Adapters should show a placeholder in the meantime.
+     * <p>
+     * Always true unless a subclass only holds part of its snapshots.
+     */
+    public boolean isLoaded(int index) {
+        return true;
+    }
+
+    /**
+     * Returns the number of items as last reported to {@link BatchChangeEventListener}s. While
+     * batching is enabled, the array changes as soon as data arrives but batch listeners only hear
+     * about it at the end of the frame. Adapters must report this size and bind the items returned
+     * by {@link #getNotifiedSnapshot(int)} in the meantime, or their views could ask for positions
+     * they were never told about.
+     * <p>
+     * Equal to {@link #size()} when no batched events are pending.
+     */
+    public int getNotifiedSize() {
+        int size = size();
+        for (PendingChange<S> change : mPendingChanges) {
+            if (change.mType == ChangeEventType.ADDED) {
+                size--;
+            } else if (change.mType == ChangeEventType.REMOVED) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the snapshot at the specified position as last reported to {@link
+     * BatchChangeEventListener}s. Items changed in place already hold their new contents.
+     *
+     * @see #getNotifiedSize()
+     */
+    @NonNull
+    public S getNotifiedSnapshot(int index) {
+        int position = getCurrentIndex(index);
+        return position >= 0 ? getSnapshot(position) : getRemoved(position).mSnapshot;
+    }
+
+    /**
+     * Follow the item at a position batch listeners know about through every event they haven't
+     * heard about yet.
+     *
+     * @return the current position of the item, or a negative value to pass to {@link
+     * #getRemoved(int)} if it was removed since.
+     */
+    private int getCurrentIndex(int index) {
+        int position = index;
+        for (int i = 0; i < mPendingChanges.size(); i++) {
+            PendingChange<S> change = mPendingChanges.get(i);
+            switch (change.mType) {
+                case ADDED:
+                    if (position >= change.mIndex) position++;
+                    break;
+                case REMOVED:
+                    if (position == change.mIndex) return -i - 1;
+                    if (position > change.mIndex) position--;
+                    break;
+                case MOVED:
+                    if (position == change.mOldIndex) {
+                        position = change.mIndex;
+                    } else {
+                        if (position > change.mOldIndex) position--;
+                        if (position >= change.mIndex) position++;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return position;
+    }
+
+    @NonNull
+    private PendingChange<S> getRemoved(int currentIndex) {
+        return mPendingChanges.get(-currentIndex - 1);
+    }
+
+    /**
+     * Returns whether the item at the specified position as last reported to {@link
+     * BatchChangeEventListener}s is loaded.
+     *
+     * @see #isLoaded(int)
+     * @see #getNotifiedSize()
+     */
+    public boolean isNotifiedLoaded(int index) {
+        int position = getCurrentIndex(index);
+        return position < 0 || isLoaded(position);
+    }
+
+    /**
+     * Returns the model at the specified position as last reported to {@link
+     * BatchChangeEventListener}s.
+     *
+     * @see #getNotifiedSize()
+     */
+    @NonNull
+    public T getNotified(int index) {
+        return mCachingParser.parseSnapshot(getNotifiedSnapshot(index));
+    }
+
+    /**
+     * Returns the stable ID of the item at the specified position as last reported to {@link
+     * BatchChangeEventListener}s.
+     *
+     * @see #getNotifiedSize()
+     */
+    public long getNotifiedStableId(int index) {
+        int position = getCurrentIndex(index);
+        return mStableIds.getId(position >= 0
+                ? getSnapshotId(position)
+                : mCachingParser.getId(getRemoved(position).mSnapshot));
+    }
+
+    /**
+     * Returns the stable ID that the item with the given key has, or will have once it is added.
+     * Useful to show items from elsewhere, such as a cache, before this array has synced, without
+     * the views being recreated when the real items arrive.
+     *
+     * @param key the key of the item, such as a database key or document ID
+     * @return the stable ID of the item with that key
+     * @see #getStableId(int)
+     */
+    public long getStableIdForKey(@NonNull String key) {
+        return mStableIds.getId(key);
+    }
+
     /**
      * Attach a {@link BaseChangeEventListener} to this array. The listener will receive one {@link
      * ChangeEventType#ADDED} event for each item that already exists in the array at the time of
      * attachment, a {@link BaseChangeEventListener#onDataChanged()} event if one has occurred, and
      * then receive all future child events.
      * <p>
+     * While batching is enabled, listeners implementing {@link BatchChangeEventListener} are
+     * instead caught up with a single {@link ChangeEventType#ADDED} event covering every existing
+     * item.
+     * <p>
      * If this is the first listener, {@link #onCreate()} will be called.
      */
     @CallSuper
@@ -84,17 +304,33 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         Preconditions.checkNotNull(listener);
         boolean wasListening = isListening();
 
+        // The catch-up below already reflects any buffered events
+        flushPendingEvents();
         mListeners.add(listener);
 
-        // Catch up new listener to existing state
-        for (int i = 0; i < size(); i++) {
-            listener.onChildChanged(ChangeEventType.ADDED, getSnapshot(i), i, -1);
+        // Catch up new listener to existing state, the same way it will receive later events
+        if (mBatchingEnabled && listener instanceof BatchChangeEventListener) {
+            if (size() > 0) {
+                ((BatchChangeEventListener) listener).onChildrenChanged(Collections.singletonList(
+                        new ChangeEvent(ChangeEventType.ADDED, 0, -1, size())));
+            }
+        } else {
+            for (int i = 0; i < size(); i++) {
+                listener.onChildChanged(ChangeEventType.ADDED, getSnapshot(i), i, -1);
+            }
         }
         if (mHasDataChanged) {
             listener.onDataChanged();
         }
 
-        if (!wasListening) { onCreate(); }
+        if (!wasListening) {
+            if (stopLingering()) {
+                mAvoidedTeardownCount++;
+            } else {
+                onCreate();
+                notifyActiveChanged();
+            }
+        }
 
         return listener;
     }
@@ -110,9 +346,16 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
 
         boolean wasListening = isListening();
 
+        flushPendingEvents();
         mListeners.remove(listener);
 
-        if (!isListening() && wasListening) { onDestroy(); }
+        if (!isListening() && wasListening) {
+            if (mLingerMillis > 0) {
+                startLingering();
+            } else {
+                destroy();
+            }
+        }
     }
 
     /**
@@ -125,6 +368,179 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         }
     }
 
+    /**
+     * Enable or disable batching of child events.
+     * <p>
+     * While enabled, listeners implementing {@link BatchChangeEventListener} no longer receive
+     * individual {@link BaseChangeEventListener#onChildChanged} callbacks. Events are buffered
+     * until the next {@link BaseChangeEventListener#onDataChanged()} or the end of the current
+     * frame, whichever comes first, and then delivered as merged ranges through {@link
+     * BatchChangeEventListener#onChildrenChanged(List)}. Other listeners are unaffected. Until
+     * then, batch listeners must read items through {@link #getNotifiedSize()} and {@link
+     * #getNotifiedSnapshot(int)}, which answer for the items as they were last told about.
+     * <p>
+     * Batching relies on {@link Choreographer} and must only be used from the main thread.
+     */
+    public void setBatchingEnabled(boolean enabled) {
+        if (!enabled) {
+            flushPendingEvents();
+        }
+        mBatchingEnabled = enabled;
+    }
+
+    /**
+     * @return true if child events are batched for {@link BatchChangeEventListener}s.
+     * @see #setBatchingEnabled(boolean)
+     */
+    public boolean isBatchingEnabled() {
+        return mBatchingEnabled;
+    }
+
+    /**
+     * Set an {@link Executor} on which added and changed snapshots are parsed as soon as they
+     * arrive, so that {@link #get(int)} usually finds the model already cached. If a model hasn't
+     * been published by the time it is needed, it is parsed synchronously as usual.
+     * <p>
+     * Only snapshots close to the range reported through {@link #setVisibleRange(int, int)}, or
+     * to the top of the list until a range is reported, are parsed ahead, and never more than the
+     * {@link CachePolicy} can hold. Parsing the rest, for example the whole initial sync of a long
+     * list, would only evict the results before they are used.
+     * <p>
+     * The {@link BaseSnapshotParser} used by this array must be thread safe while an executor is
+     * set. Pass {@code null} to go back to parsing on demand.
+     */
+    public void setParseExecutor(@Nullable Executor executor) {
+        mCachingParser.setParseExecutor(executor);
+    }
+
+    /**
+     * Replace the {@link CachePolicy} used for parsed model objects. Any cached models are
+     * discarded.
+     */
+    public void setCachePolicy(@NonNull CachePolicy<T> policy) {
+        mCachingParser.setCachePolicy(policy);
+    }
+
+    /**
+     * @return the current counters of the parsed model cache, useful to tune the {@link
+     * CachePolicy}.
+     */
+    @NonNull
+    public CacheStats getCacheStats() {
+        return mCachingParser.getStats();
+    }
+
+    /**
+     * Report the range of positions currently displayed to the user. Adapters call this as the
+     * list scrolls; subclasses may use it to prioritize work around the visible items.
+     * <p>
+     * If the {@link CachePolicy} pins the visible range, models in this range are never evicted.
+     *
+     * @param first the first visible position, inclusive.
+     * @param last  the last visible position, inclusive.
+     */
+    @CallSuper
+    public void setVisibleRange(int first, int last) {
+        mVisibleFirst = first;
+        mVisibleLast = last;
+
+        if (!mCachingParser.getCachePolicy().isPinVisibleRange()) {
+            return;
+        }
+
+        int end = Math.min(last, size() - 1);
+        List<String> ids = new ArrayList<>(Math.max(end - first + 1, 0));
+        for (int i = Math.max(first, 0); i <= end; i++) {
+            ids.add(getSnapshotId(i));
+        }
+        mCachingParser.setPinnedIds(ids);
+    }
+
+    /**
+     * Set a grace period during which the array keeps listening to the database and holding on to
+     * its data after the last listener is removed. A listener added within that window, for
+     * example by an adapter restarted after a configuration change, is caught up from memory
+     * without a server round-trip. {@link #onDestroy()} only runs once the period expires.
+     * <p>
+     * Defaults to 0, which tears the array down immediately. Must be called from the main thread.
+     */
+    public void setLingerMillis(long millis) {
+        mLingerMillis = millis;
+        if (millis <= 0 && stopLingering()) {
+            destroy();
+        }
+    }
+
+    /**
+     * @see #setLingerMillis(long)
+     */
+    public long getLingerMillis() {
+        return mLingerMillis;
+    }
+
+    /**
+     * @return the number of times the array stopped listening to the database and cleared its
+     * data.
+     */
+    public long getTeardownCount() {
+        return mTeardownCount;
+    }
+
+    /**
+     * @return the number of times a listener was added while the array was lingering, which
+     * avoided a teardown and a reload from the server.
+     * @see #setLingerMillis(long)
+     */
+    public long getAvoidedTeardownCount() {
+        return mAvoidedTeardownCount;
+    }
+
+    /**
+     * Set a callback to run each time the array starts or stops listening to the database.
+     */
+    void setOnActiveChangedCallback(@Nullable Runnable callback) {
+        mOnActiveChangedCallback = callback;
+    }
+
+    /**
+     * @return true if the array is listening to the database, including during its linger period.
+     */
+    boolean isActive() {
+        return isListening() || mIsLingering;
+    }
+
+    private void startLingering() {
+        if (mLingerHandler == null) {
+            mLingerHandler = new Handler(Looper.getMainLooper());
+        }
+        mIsLingering = true;
+        mLingerHandler.postDelayed(mLingerTimeout, mLingerMillis);
+    }
+
+    /**
+     * @return true if the array was lingering and is still listening to the database.
+     */
+    private boolean stopLingering() {
+        if (!mIsLingering) {
+            return false;
+        }
+        mLingerHandler.removeCallbacks(mLingerTimeout);
+        mIsLingering = false;
+        return true;
+    }
+
+    private void destroy() {
+        mTeardownCount++;
+        onDestroy();
+        notifyActiveChanged();
+    }
+
+    private void notifyActiveChanged() {
+        if (mOnActiveChangedCallback != null) {
+            mOnActiveChangedCallback.run();
+        }
+    }
+
     /**
      * Called when the {@link BaseObservableSnapshotArray} is active and should start listening to
      * the Firebase database.
@@ -167,14 +583,66 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         if (type == ChangeEventType.CHANGED || type == ChangeEventType.REMOVED) {
             mCachingParser.invalidate(snapshot);
         }
+        if ((type == ChangeEventType.ADDED || type == ChangeEventType.CHANGED)
+                && isInPreParseRange(newIndex)) {
+            mCachingParser.preParse(snapshot);
+        }
 
+        boolean hasBatchListeners = false;
         for (L listener : mListeners) {
-            listener.onChildChanged(type, snapshot, newIndex, oldIndex);
+            if (mBatchingEnabled && listener instanceof BatchChangeEventListener) {
+                hasBatchListeners = true;
+            } else {
+                listener.onChildChanged(type, snapshot, newIndex, oldIndex);
+            }
+        }
+
+        if (type == ChangeEventType.ADDED && hasBatchListeners) {
+            // Removed and added back within the batch, so it never left
+            mPendingIdReleases.remove(mCachingParser.getId(snapshot));
+        } else if (type == ChangeEventType.REMOVED) {
+            if (hasBatchListeners) {
+                // Batch listeners still show the item until the flush
+                mPendingIdReleases.add(mCachingParser.getId(snapshot));
+            } else {
+                mStableIds.release(mCachingParser.getId(snapshot));
+            }
+        }
+
+        if (hasBatchListeners) {
+            mPendingEvents.add(type, newIndex, oldIndex);
+            if (type != ChangeEventType.CHANGED) {
+                mPendingChanges.add(new PendingChange<>(type, snapshot, newIndex, oldIndex));
+            }
+            if (!mFlushScheduled) {
+                Choreographer.getInstance().postFrameCallback(mFlushCallback);
+                mFlushScheduled = true;
+            }
+        }
+    }
+
+    private boolean isInPreParseRange(int index) {
+        int margin = PRE_PARSE_MARGIN;
+        CachePolicy<T> policy = mCachingParser.getCachePolicy();
+        if (policy.getWeigher() == null) {
+            int visible = Math.max(mVisibleLast - mVisibleFirst + 1, 0);
+            margin = Math.min(margin, Math.max((policy.getMaxSize() - visible) / 2, 0));
         }
+        return index >= mVisibleFirst - margin && index <= mVisibleLast + margin;
     }
 
     protected final void notifyOnDataChanged() {
+        if (!mHasDataChanged) {
+            // First sync since listening started, forget items removed while we weren't listening
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < size(); i++) {
+                ids.add(getSnapshotId(i));
+            }
+            mStableIds.retainAll(ids);
+        }
+
         mHasDataChanged = true;
+        flushPendingEvents();
 
         for (L listener : mListeners) {
             listener.onDataChanged();
@@ -186,4 +654,56 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
             listener.onError(e);
         }
     }
+
+    /**
+     * @return the listeners attached to this array, for subclasses which deliver events of their
+     * own.
+     */
+    @NonNull
+    protected final List<L> getListeners() {
+        return Collections.unmodifiableList(mListeners);
+    }
+
+    /**
+     * Deliver all buffered child events to {@link BatchChangeEventListener}s. Subclasses must call
+     * this before delivering events of their own, so that those don't overtake buffered ones.
+     */
+    protected final void flushPendingEvents() {
+        if (mFlushScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFlushCallback);
+            mFlushScheduled = false;
+        }
+        if (mPendingEvents.isEmpty()) {
+            return;
+        }
+
+        List<ChangeEvent> events = mPendingEvents.drain();
+        mPendingChanges.clear();
+        for (String id : mPendingIdReleases) {
+            mStableIds.release(id);
+        }
+        mPendingIdReleases.clear();
+
+        for (L listener : mListeners) {
+            if (listener instanceof BatchChangeEventListener) {
+                ((BatchChangeEventListener) listener).onChildrenChanged(events);
+            }
+        }
+    }
+
+    private static final class PendingChange<S> {
+        final ChangeEventType mType;
+        final S mSnapshot;
+        /** The position after the change, or the removed position. */
+        final int mIndex;
+        final int mOldIndex;
+
+        PendingChange(ChangeEventType type, S snapshot, int newIndex, int oldIndex) {
+            mType = type;
+            mSnapshot = snapshot;
+            // Not every array reports removals through the same index argument
+            mIndex = type == ChangeEventType.REMOVED && newIndex == -1 ? oldIndex : newIndex;
+            mOldIndex = oldIndex;
+        }
+    }
 }
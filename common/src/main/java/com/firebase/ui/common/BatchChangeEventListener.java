@@ -0,0 +1,32 @@
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Optional interface for {@link BaseChangeEventListener}s that can consume child events in bulk.
+ * <p>
+ * When attached to a {@link BaseObservableSnapshotArray} which already holds data and has
+ * {@link BaseObservableSnapshotArray#setBatchingEnabled(boolean) batching enabled}, listeners
+ * implementing this interface are caught up with a single {@link ChangeEventType#ADDED} event
+ * covering every item. Otherwise they are caught up like any other listener, with one {@link
+ * BaseChangeEventListener#onChildChanged} callback per item.
+ * <p>
+ * When batching is enabled on a {@link BaseObservableSnapshotArray}, listeners implementing this
+ * interface stop receiving individual {@link BaseChangeEventListener#onChildChanged} callbacks.
+ * Instead, events are buffered until the end of the current frame or the next {@link
+ * BaseChangeEventListener#onDataChanged()}, whichever comes first, and delivered as merged ranges.
+ *
+ * @see BaseObservableSnapshotArray#setBatchingEnabled(boolean)
+ */
+public interface BatchChangeEventListener {
+
+    /**
+     * A callback for when a batch of child events has occurred.
+     *
+     * @param events the merged events, to be applied in order.
+     */
+    void onChildrenChanged(@NonNull List<ChangeEvent> events);
+
+}
@@ -0,0 +1,128 @@
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Configures the cache of parsed model objects kept by a {@link BaseObservableSnapshotArray}.
+ *
+ * @param <T> the model object class.
+ * @see Builder
+ */
+public final class CachePolicy<T> {
+
+    private static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * Computes the size of a cached model object, in arbitrary units such as bytes.
+     *
+     * @param <T> the model object class.
+     */
+    public interface Weigher<T> {
+
+        /**
+         * @return the size of the model object, must be non-negative and must not change while
+         * the object is cached.
+         */
+        int weigh(@NonNull String id, @NonNull T model);
+
+    }
+
+    private final int mMaxSize;
+    private final Weigher<T> mWeigher;
+    private final boolean mPinVisibleRange;
+
+    private CachePolicy(int maxSize, @Nullable Weigher<T> weigher, boolean pinVisibleRange) {
+        mMaxSize = maxSize;
+        mWeigher = weigher;
+        mPinVisibleRange = pinVisibleRange;
+    }
+
+    /**
+     * @return the policy used when none is specified: at most 100 entries, without pinning.
+     */
+    @NonNull
+    public static <T> CachePolicy<T> defaultPolicy() {
+        return new Builder<T>().build();
+    }
+
+    /**
+     * Get the maximum size of the cache. This is a number of entries unless a {@link Weigher} is
+     * set, in which case it is the maximum sum of all weights.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Get the (optional) {@link Weigher}.
+     */
+    @Nullable
+    public Weigher<T> getWeigher() {
+        return mWeigher;
+    }
+
+    /**
+     * @return true if models in the visible range are kept even when they would otherwise be
+     * evicted.
+     */
+    public boolean isPinVisibleRange() {
+        return mPinVisibleRange;
+    }
+
+    /**
+     * Builder for {@link CachePolicy}.
+     *
+     * @param <T> the model object class.
+     */
+    public static final class Builder<T> {
+
+        private int mMaxSize = DEFAULT_MAX_SIZE;
+        private Weigher<T> mWeigher;
+        private boolean mPinVisibleRange;
+
+        /**
+         * Set the maximum number of cached models or, when a {@link Weigher} is set, the maximum
+         * total weight.
+         */
+        @NonNull
+        public Builder<T> setMaxSize(int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("Max size must be positive.");
+            }
+
+            mMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Set an optional {@link Weigher} to bound the cache by the size of its models, rather
+         * than by their count.
+         */
+        @NonNull
+        public Builder<T> setWeigher(@Nullable Weigher<T> weigher) {
+            mWeigher = weigher;
+            return this;
+        }
+
+        /**
+         * Keep models at positions reported through {@link
+         * BaseObservableSnapshotArray#setVisibleRange(int, int)} even when they would otherwise be
+         * evicted, so on-screen items are never parsed twice. Pinned models do not count towards
+         * the max size.
+         */
+        @NonNull
+        public Builder<T> setPinVisibleRange(boolean pinVisibleRange) {
+            mPinVisibleRange = pinVisibleRange;
+            return this;
+        }
+
+        /**
+         * Build a {@link CachePolicy} from the provided arguments.
+         */
+        @NonNull
+        public CachePolicy<T> build() {
+            return new CachePolicy<>(mMaxSize, mWeigher, mPinVisibleRange);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.firebase.ui.common;
+
+/**
+ * Point-in-time counters for the model cache of a {@link BaseObservableSnapshotArray}.
+ *
+ * @see BaseObservableSnapshotArray#getCacheStats()
+ */
+public final class CacheStats {
+
+    private final long mHitCount;
+    private final long mMissCount;
+    private final long mEvictionCount;
+    private final int mSize;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, int size) {
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mEvictionCount = evictionCount;
+        mSize = size;
+    }
+
+    /**
+     * @return the number of lookups which returned an already parsed model.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the number of lookups which had to parse a snapshot.
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return the number of models evicted to stay within the {@link CachePolicy}'s max size.
+     */
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * @return the current size of the cache, in the units of the {@link CachePolicy}.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + mHitCount +
+                ", misses=" + mMissCount +
+                ", evictions=" + mEvictionCount +
+                ", size=" + mSize +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A contiguous range of child events of the same {@link ChangeEventType}, delivered to a {@link
+ * BatchChangeEventListener}.
+ * <p>
+ * Events in a batch must be applied in order, each one relative to the state left behind by the
+ * previous one.
+ */
+public final class ChangeEvent {
+
+    private final ChangeEventType mType;
+    private final int mIndex;
+    private final int mOldIndex;
+    private final int mCount;
+
+    public ChangeEvent(@NonNull ChangeEventType type, int index, int oldIndex, int count) {
+        mType = Preconditions.checkNotNull(type);
+        mIndex = index;
+        mOldIndex = oldIndex;
+        mCount = count;
+    }
+
+    /**
+     * @return the type shared by every element in this range.
+     */
+    @NonNull
+    public ChangeEventType getType() {
+        return mType;
+    }
+
+    /**
+     * @return the position of the first element in this range. For {@link ChangeEventType#MOVED}
+     * events this is the position the element was moved to.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * @return the position the element was moved from for {@link ChangeEventType#MOVED} events,
+     * -1 otherwise.
+     */
+    public int getOldIndex() {
+        return mOldIndex;
+    }
+
+    /**
+     * @return the number of elements in this range. Always 1 for {@link ChangeEventType#MOVED}
+     * events.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ChangeEvent event = (ChangeEvent) o;
+
+        return mType == event.mType
+                && mIndex == event.mIndex
+                && mOldIndex == event.mOldIndex
+                && mCount == event.mCount;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mType.hashCode();
+        result = 31 * result + mIndex;
+        result = 31 * result + mOldIndex;
+        result = 31 * result + mCount;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "type=" + mType +
+                ", index=" + mIndex +
+                ", oldIndex=" + mOldIndex +
+                ", count=" + mCount +
+                '}';
+    }
+}
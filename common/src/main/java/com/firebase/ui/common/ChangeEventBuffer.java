@@ -0,0 +1,109 @@
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accumulates child events and merges adjacent ones into {@link ChangeEvent} ranges.
+ */
+final class ChangeEventBuffer {
+
+    private final List<ChangeEvent> mEvents = new ArrayList<>();
+
+    private ChangeEventType mPendingType;
+    private int mPendingIndex;
+    private int mPendingCount;
+
+    /**
+     * Append an event using the same arguments as {@link BaseChangeEventListener#onChildChanged}.
+     */
+    public void add(@NonNull ChangeEventType type, int newIndex, int oldIndex) {
+        if (type == ChangeEventType.MOVED) {
+            flushPending();
+            mEvents.add(new ChangeEvent(type, newIndex, oldIndex, 1));
+            return;
+        }
+
+        // Not every array reports removals through the same index argument
+        int index = type == ChangeEventType.REMOVED && newIndex == -1 ? oldIndex : newIndex;
+        if (!merge(type, index)) {
+            flushPending();
+            mPendingType = type;
+            mPendingIndex = index;
+            mPendingCount = 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return mPendingType == null && mEvents.isEmpty();
+    }
+
+    /**
+     * @return all merged events, leaving the buffer empty.
+     */
+    @NonNull
+    public List<ChangeEvent> drain() {
+        flushPending();
+        List<ChangeEvent> events = Collections.unmodifiableList(new ArrayList<>(mEvents));
+        mEvents.clear();
+        return events;
+    }
+
+    private boolean merge(ChangeEventType type, int index) {
+        if (mPendingType == null) {
+            return false;
+        }
+
+        int end = mPendingIndex + mPendingCount;
+        if (mPendingType == ChangeEventType.ADDED && type == ChangeEventType.CHANGED) {
+            // Freshly inserted items will be bound from scratch anyway
+            return index >= mPendingIndex && index < end;
+        } else if (mPendingType != type) {
+            return false;
+        }
+
+        switch (type) {
+            case ADDED:
+                // Inserting anywhere inside or at the edges of the range grows it
+                if (index >= mPendingIndex && index <= end) {
+                    mPendingCount++;
+                    return true;
+                }
+                return false;
+            case REMOVED:
+                if (index == mPendingIndex) {
+                    mPendingCount++;
+                    return true;
+                } else if (index == mPendingIndex - 1) {
+                    mPendingIndex--;
+                    mPendingCount++;
+                    return true;
+                }
+                return false;
+            case CHANGED:
+                if (index >= mPendingIndex && index < end) {
+                    return true;
+                } else if (index == end) {
+                    mPendingCount++;
+                    return true;
+                } else if (index == mPendingIndex - 1) {
+                    mPendingIndex--;
+                    mPendingCount++;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void flushPending() {
+        if (mPendingType != null) {
+            mEvents.add(new ChangeEvent(mPendingType, mPendingIndex, -1, mPendingCount));
+            mPendingType = null;
+        }
+    }
+}
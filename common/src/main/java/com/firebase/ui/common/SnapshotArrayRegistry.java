@@ -0,0 +1,151 @@
+package com.firebase.ui.common;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.RestrictTo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A process-wide registry of snapshot arrays shared between adapters. Adapters built for the same
+ * key use the same array, and therefore hold a single copy of the data and a single server
+ * listener between them. An array stays alive for as long as any adapter listens to it, plus a
+ * linger period after the last one stops, so that returning to a screen is instant. An array which
+ * is obtained but never listened to leaves the registry after the linger period as well.
+ * <p>
+ * All methods must be called from the main thread.
+ */
+@MainThread
+public final class SnapshotArrayRegistry {
+    /**
+     * The default linger period in milliseconds, long enough to cover configuration changes and
+     * quick navigation back and forth.
+     */
+    public static final long DEFAULT_LINGER_MILLIS = 5000;
+
+    private static final SnapshotArrayRegistry INSTANCE = new SnapshotArrayRegistry();
+
+    private final Map<Object, BaseObservableSnapshotArray<?, ?, ?, ?>> mArrays = new HashMap<>();
+    /** Removals of arrays which aren't listened to, by key. */
+    private final Map<Object, Runnable> mEvictions = new HashMap<>();
+    private Handler mHandler;
+    private long mLingerMillis = DEFAULT_LINGER_MILLIS;
+
+    private SnapshotArrayRegistry() {}
+
+    @NonNull
+    public static SnapshotArrayRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set how long shared arrays keep listening to the server after their last listener is
+     * removed. Applies to arrays already in the registry as well as future ones.
+     *
+     * @see BaseObservableSnapshotArray#setLingerMillis(long)
+     */
+    public void setLingerMillis(long millis) {
+        mLingerMillis = millis;
+        for (BaseObservableSnapshotArray<?, ?, ?, ?> array : mArrays.values()) {
+            array.setLingerMillis(millis);
+        }
+    }
+
+    public long getLingerMillis() {
+        return mLingerMillis;
+    }
+
+    /**
+     * @return the number of arrays currently in the registry.
+     */
+    public int size() {
+        return mArrays.size();
+    }
+
+    /**
+     * Get the array registered for {@code key}, or create and register one with {@code factory}.
+     * The array leaves the registry when it stops listening to the server and comes back if it
+     * starts again. If it isn't listened to within the linger period, it leaves the registry too.
+     *
+     * @param key     identifies the query and parser of the array, compared with {@link
+     *                Object#equals(Object)}. It must include everything which affects the
+     *                contents of the array.
+     * @param factory creates the array if there isn't one for {@code key} yet.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public <A extends BaseObservableSnapshotArray<?, ?, ?, ?>> A obtain(
+            @NonNull final Object key, @NonNull Factory<A> factory) {
+        A existing = (A) mArrays.get(key);
+        if (existing != null) {
+            if (!existing.isActive()) {
+                scheduleEviction(key, existing);
+            }
+            return existing;
+        }
+
+        final A array = factory.create();
+        array.setLingerMillis(mLingerMillis);
+        array.setOnActiveChangedCallback(new Runnable() {
+            @Override
+            public void run() {
+                if (array.isListening()) {
+                    cancelEviction(key);
+                    // An adapter still holding on to the array started listening again
+                    if (!mArrays.containsKey(key)) {
+                        mArrays.put(key, array);
+                    }
+                } else if (mArrays.get(key) == array) {
+                    mArrays.remove(key);
+                }
+            }
+        });
+        mArrays.put(key, array);
+        scheduleEviction(key, array);
+        return array;
+    }
+
+    /**
+     * Remove {@code array} after the linger period unless it starts listening by then, so that
+     * arrays built for adapters which never start don't stay registered forever.
+     */
+    private void scheduleEviction(@NonNull final Object key,
+                                  @NonNull final BaseObservableSnapshotArray<?, ?, ?, ?> array) {
+        cancelEviction(key);
+
+        Runnable eviction = new Runnable() {
+            @Override
+            public void run() {
+                mEvictions.remove(key);
+                if (!array.isActive() && mArrays.get(key) == array) {
+                    mArrays.remove(key);
+                }
+            }
+        };
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        mEvictions.put(key, eviction);
+        mHandler.postDelayed(eviction, mLingerMillis);
+    }
+
+    private void cancelEviction(@NonNull Object key) {
+        Runnable eviction = mEvictions.remove(key);
+        if (eviction != null) {
+            mHandler.removeCallbacks(eviction);
+        }
+    }
+
+    /**
+     * Creates a snapshot array for {@link #obtain(Object, Factory)}.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public interface Factory<A extends BaseObservableSnapshotArray<?, ?, ?, ?>> {
+        @NonNull
+        A create();
+    }
+}
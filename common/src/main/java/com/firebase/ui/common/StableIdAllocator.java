@@ -0,0 +1,43 @@
+package com.firebase.ui.common;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out a distinct {@code long} for each snapshot ID. Unlike hashing, two IDs never share a
+ * value, and an ID keeps its value until it is released.
+ */
+final class StableIdAllocator {
+
+    private final Map<String, Long> mIds = new HashMap<>();
+    private long mNextId = 0;
+
+    /**
+     * @return the value assigned to {@code id}, assigning a new one if needed.
+     */
+    public long getId(@NonNull String id) {
+        Long value = mIds.get(id);
+        if (value == null) {
+            value = mNextId++;
+            mIds.put(id, value);
+        }
+        return value;
+    }
+
+    /**
+     * Forget the value assigned to {@code id}. If the ID shows up again, it gets a new value.
+     */
+    public void release(@NonNull String id) {
+        mIds.remove(id);
+    }
+
+    /**
+     * Forget the values of every ID not in {@code ids}.
+     */
+    public void retainAll(@NonNull Collection<String> ids) {
+        mIds.keySet().retainAll(ids);
+    }
+}
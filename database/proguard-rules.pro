@@ -0,0 +1 @@
+-dontwarn com.firebase.ui.database.paging.**
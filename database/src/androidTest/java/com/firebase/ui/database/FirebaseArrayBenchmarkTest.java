@@ -0,0 +1,97 @@
+package com.firebase.ui.database;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Microbenchmark for {@link FirebaseArray} child events. Feeds mock snapshots straight into the
+ * array's {@link com.google.firebase.database.ChildEventListener} callbacks so the numbers only
+ * reflect local bookkeeping, then logs the per-operation cost for increasing list sizes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirebaseArrayBenchmarkTest {
+    private static final String TAG = "FirebaseArrayBenchmark";
+
+    private static final int[] SIZES = {1000, 5000, 20000};
+    private static final int OPERATIONS = 1000;
+
+    @Test
+    public void benchmarkChildEvents() {
+        for (int size : SIZES) {
+            runBenchmark(size);
+        }
+    }
+
+    private void runBenchmark(int size) {
+        FirebaseArray<String> array = new FirebaseArray<>(mock(Query.class), new SnapshotParser<String>() {
+            @Override
+            public String parseSnapshot(DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+
+        List<DataSnapshot> snapshots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            snapshots.add(mockSnapshot(key(i)));
+        }
+        Random random = new Random(size);
+
+        // Initial sync: every child is appended after the previous one
+        long start = System.nanoTime();
+        String previousKey = null;
+        for (DataSnapshot snapshot : snapshots) {
+            array.onChildAdded(snapshot, previousKey);
+            previousKey = snapshot.getKey();
+        }
+        long addNanos = System.nanoTime() - start;
+        assertEquals(size, array.size());
+
+        // Live updates to random children
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            DataSnapshot snapshot = snapshots.get(random.nextInt(size));
+            array.onChildChanged(snapshot, null);
+        }
+        long changeNanos = System.nanoTime() - start;
+
+        // Random reorders
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            DataSnapshot snapshot = array.getSnapshot(random.nextInt(size));
+            DataSnapshot previous = array.getSnapshot(random.nextInt(size));
+            array.onChildMoved(snapshot,
+                    previous == snapshot ? null : previous.getKey());
+        }
+        long moveNanos = System.nanoTime() - start;
+        assertEquals(size, array.size());
+
+        Log.i(TAG, "size=" + size
+                + " add=" + addNanos / size + "ns/op"
+                + " change=" + changeNanos / OPERATIONS + "ns/op"
+                + " move=" + moveNanos / OPERATIONS + "ns/op");
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+
+    private static DataSnapshot mockSnapshot(String key) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        return snapshot;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirebaseArrayLingerTest {
+    private static final int INITIAL_SIZE = 10;
+
+    private Query mQuery;
+    private FirebaseArray<String> mArray;
+    private CountingListener mListener;
+
+    @Before
+    public void setUp() {
+        mQuery = mock(Query.class);
+        mArray = new FirebaseArray<>(mQuery, new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+        mArray.setLingerMillis(60000);
+
+        mListener = new CountingListener();
+        mArray.addChangeEventListener(mListener);
+        String previousKey = null;
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            DataSnapshot snapshot = mock(DataSnapshot.class);
+            when(snapshot.getKey()).thenReturn("key" + i);
+            mArray.onChildAdded(snapshot, previousKey);
+            previousKey = "key" + i;
+        }
+    }
+
+    @Test
+    public void testReattachWithinGracePeriodReplaysFromMemory() {
+        mArray.removeChangeEventListener(mListener);
+        verify(mQuery, never()).removeEventListener(any(ChildEventListener.class));
+        assertEquals(INITIAL_SIZE, mArray.size());
+
+        CountingListener listener = new CountingListener();
+        mArray.addChangeEventListener(listener);
+
+        assertEquals(INITIAL_SIZE, listener.mAdded);
+        verify(mQuery, times(1)).addChildEventListener(any(ChildEventListener.class));
+        assertEquals(1, mArray.getAvoidedTeardownCount());
+        assertEquals(0, mArray.getTeardownCount());
+    }
+
+    @Test
+    public void testDisablingGracePeriodTearsDown() {
+        mArray.removeChangeEventListener(mListener);
+        mArray.setLingerMillis(0);
+
+        verify(mQuery).removeEventListener(any(ChildEventListener.class));
+        assertEquals(0, mArray.size());
+        assertEquals(1, mArray.getTeardownCount());
+    }
+
+    private static class CountingListener implements ChangeEventListener {
+        int mAdded;
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            if (type == ChangeEventType.ADDED) mAdded++;
+        }
+
+        @Override
+        public void onDataChanged() {
+        }
+
+        @Override
+        public void onError(@NonNull DatabaseError e) {
+        }
+    }
+}
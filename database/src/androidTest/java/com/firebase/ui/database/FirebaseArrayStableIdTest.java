@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirebaseArrayStableIdTest {
+    private static final int INITIAL_SIZE = 100;
+
+    private FirebaseArray<String> mArray;
+
+    @Before
+    public void setUp() {
+        mArray = new FirebaseArray<>(mock(Query.class), new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+
+        String previousKey = null;
+        for (int i = 0; i < INITIAL_SIZE; i++) {
+            mArray.onChildAdded(mockSnapshot("key" + i), previousKey);
+            previousKey = "key" + i;
+        }
+    }
+
+    @Test
+    public void testIdsAreUnique() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < mArray.size(); i++) {
+            ids.add(mArray.getStableId(i));
+        }
+        assertEquals(INITIAL_SIZE, ids.size());
+    }
+
+    @Test
+    public void testIdFollowsMovedItem() {
+        long id = mArray.getStableId(10);
+        mArray.onChildMoved(mArray.getSnapshot(10), null);
+
+        assertEquals(id, mArray.getStableId(0));
+    }
+
+    @Test
+    public void testReaddedItemGetsNewId() {
+        DataSnapshot snapshot = mArray.getSnapshot(5);
+        long id = mArray.getStableId(5);
+
+        mArray.onChildRemoved(snapshot);
+        mArray.onChildAdded(snapshot, "key4");
+
+        assertNotEquals(id, mArray.getStableId(5));
+    }
+
+    private static DataSnapshot mockSnapshot(String key) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        return snapshot;
+    }
+}
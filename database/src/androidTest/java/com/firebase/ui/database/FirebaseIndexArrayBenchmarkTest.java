@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Regression benchmark for resolving data positions in {@link FirebaseIndexArray} when part of
+ * the keys have no data. Key and data events are fed straight into the arrays' listeners using
+ * mocks so the numbers only reflect local bookkeeping.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirebaseIndexArrayBenchmarkTest {
+    private static final String TAG = "FirebaseIndexArrayBench";
+
+    private static final int SIZE = 10000;
+    private static final int NULL_EVERY = 5; // 20% of keys have no data
+    private static final int OPERATIONS = 1000;
+
+    @Test
+    public void benchmarkSparseJoin() {
+        Query keyQuery = mock(Query.class);
+        DatabaseReference dataRef = mock(DatabaseReference.class);
+        DatabaseReference childRef = mock(DatabaseReference.class);
+        final List<ValueEventListener> dataListeners = new ArrayList<>();
+        when(dataRef.child(anyString())).thenReturn(childRef);
+        when(childRef.addValueEventListener(any(ValueEventListener.class))).thenAnswer(
+                new Answer<ValueEventListener>() {
+                    @Override
+                    public ValueEventListener answer(InvocationOnMock invocation) {
+                        ValueEventListener listener = invocation.getArgument(0);
+                        dataListeners.add(listener);
+                        return listener;
+                    }
+                });
+
+        FirebaseIndexArray<String> array = new FirebaseIndexArray<>(
+                keyQuery, dataRef, new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+        array.addChangeEventListener(new ChangeEventListener() {
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DataSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex) {
+            }
+
+            @Override
+            public void onDataChanged() {
+            }
+
+            @Override
+            public void onError(@NonNull DatabaseError e) {
+            }
+        });
+
+        ArgumentCaptor<ChildEventListener> captor =
+                ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(keyQuery).addChildEventListener(captor.capture());
+        FirebaseArray<?> keys = (FirebaseArray<?>) captor.getValue();
+
+        List<DataSnapshot> keySnapshots = new ArrayList<>(SIZE);
+        List<DataSnapshot> dataSnapshots = new ArrayList<>(SIZE);
+        List<DataSnapshot> changedSnapshots = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            boolean hasValue = i % NULL_EVERY != 0;
+            keySnapshots.add(mockSnapshot(key(i), key(i)));
+            dataSnapshots.add(mockSnapshot(key(i), hasValue ? key(i) : null));
+            changedSnapshots.add(mockSnapshot(key(i), hasValue ? key(i) + "'" : null));
+        }
+        Random random = new Random(SIZE);
+
+        // Keys sync first, then each join completes in order
+        long start = System.nanoTime();
+        String previousKey = null;
+        for (DataSnapshot snapshot : keySnapshots) {
+            keys.onChildAdded(snapshot, previousKey);
+            previousKey = snapshot.getKey();
+        }
+        for (int i = 0; i < SIZE; i++) {
+            dataListeners.get(i).onDataChange(dataSnapshots.get(i));
+        }
+        long populateNanos = System.nanoTime() - start;
+        assertEquals(SIZE - SIZE / NULL_EVERY, array.size());
+        assertConsistent(keys, array);
+
+        // Live updates to random joined children
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int index = random.nextInt(SIZE);
+            // Alternate values so that each update is an actual change
+            List<DataSnapshot> values = i % 2 == 0 ? changedSnapshots : dataSnapshots;
+            dataListeners.get(index).onDataChange(values.get(index));
+        }
+        long changeNanos = System.nanoTime() - start;
+
+        // Random key reorders, including keys without data
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            DataSnapshot snapshot = keys.getSnapshot(random.nextInt(SIZE));
+            DataSnapshot previous = keys.getSnapshot(random.nextInt(SIZE));
+            keys.onChildMoved(snapshot, previous == snapshot ? null : previous.getKey());
+        }
+        long moveNanos = System.nanoTime() - start;
+        assertConsistent(keys, array);
+
+        Log.i(TAG, "size=" + SIZE
+                + " populate=" + populateNanos / SIZE + "ns/op"
+                + " change=" + changeNanos / OPERATIONS + "ns/op"
+                + " move=" + moveNanos / OPERATIONS + "ns/op");
+    }
+
+    /**
+     * Check that the joined data is exactly the keys with data, in key order.
+     */
+    private static void assertConsistent(FirebaseArray<?> keys, FirebaseIndexArray<?> array) {
+        int dataIndex = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.getSnapshot(i).getKey();
+            if (Integer.parseInt(key.substring(3)) % NULL_EVERY != 0) {
+                assertEquals(key, array.getSnapshot(dataIndex).getKey());
+                dataIndex++;
+            }
+        }
+        assertEquals(dataIndex, array.size());
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+
+    private static DataSnapshot mockSnapshot(String key, String value) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        when(snapshot.getValue()).thenReturn(value);
+        when(snapshot.getValue(true)).thenReturn(value);
+        return snapshot;
+    }
+}
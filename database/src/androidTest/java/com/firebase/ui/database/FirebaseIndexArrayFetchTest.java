@@ -0,0 +1,329 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the fetch limit and listen window of {@link FirebaseIndexArray}. Key and data events are
+ * fed straight into the arrays' listeners using mocks.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirebaseIndexArrayFetchTest {
+    private static final int SIZE = 5;
+
+    private Query mKeyQuery;
+    private DatabaseReference mDataRef;
+    /** The data listener attached last for each key. */
+    private final Map<String, ValueEventListener> mDataListeners = new HashMap<>();
+    /** Keys in the order their data listeners were attached. */
+    private final List<String> mAttached = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mKeyQuery = mock(Query.class);
+        mDataRef = mock(DatabaseReference.class);
+        when(mDataRef.child(anyString())).thenAnswer(new Answer<DatabaseReference>() {
+            @Override
+            public DatabaseReference answer(InvocationOnMock invocation) {
+                return mockChild((String) invocation.getArgument(0));
+            }
+        });
+    }
+
+    @Test
+    public void testConcurrentFetchesAreCapped() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setMaxConcurrentFetches(2);
+        addKeys(array);
+
+        assertEquals(keys(0, 1), mAttached);
+
+        deliver(1);
+        assertEquals(keys(0, 1, 2), mAttached);
+        // Held back until the key before it arrives
+        assertEquals(0, array.size());
+
+        deliver(0);
+        assertEquals(keys(0, 1, 2, 3), mAttached);
+        assertEquals(keys(0, 1), keysOf(array));
+    }
+
+    @Test
+    public void testSlowKeyDoesNotHoldUpFetches() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setMaxConcurrentFetches(2);
+        addKeys(array);
+
+        for (int i = 1; i < SIZE; i++) {
+            deliver(i);
+        }
+        assertEquals(keys(0, 1, 2, 3, 4), mAttached);
+        assertEquals(0, array.size());
+
+        deliver(0);
+        assertEquals(keys(0, 1, 2, 3, 4), keysOf(array));
+    }
+
+    @Test
+    public void testRemovedKeyReleasesItsSlot() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setMaxConcurrentFetches(1);
+        addKeys(array);
+
+        getKeys().onChildRemoved(mockSnapshot(key(0)));
+        assertEquals(keys(0, 1), mAttached);
+
+        deliver(1);
+        assertEquals(keys(1), keysOf(array));
+    }
+
+    @Test
+    public void testListenWindow() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setListenMargin(1);
+        array.setVisibleRange(0, 0);
+        addKeys(array);
+        for (int i = 0; i < SIZE; i++) {
+            deliver(i);
+        }
+
+        // Every key is fetched once, but only positions 0 and 1 stay live
+        assertEquals(keys(0, 1, 2, 3, 4), keysOf(array));
+        assertEquals(2, array.getActiveListenerCount());
+
+        mAttached.clear();
+        array.setVisibleRange(3, 3);
+        assertEquals(3, array.getActiveListenerCount());
+        assertEquals(keys(2, 3, 4), mAttached);
+    }
+
+    @Test
+    public void testKeyWithoutDataStaysLiveInWindow() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setListenMargin(1);
+        array.setVisibleRange(0, 0);
+        addKeys(array);
+        deliver(0, null);
+        for (int i = 1; i < SIZE; i++) {
+            deliver(i);
+        }
+
+        // key0 would be at position 0, so it is still listened to
+        assertEquals(keys(1, 2, 3, 4), keysOf(array));
+        assertEquals(3, array.getActiveListenerCount());
+
+        array.setVisibleRange(3, 3);
+        mAttached.clear();
+        array.setVisibleRange(0, 0);
+        assertEquals(keys(0, 1, 2), mAttached);
+
+        deliver(0);
+        assertEquals(keys(0, 1, 2, 3, 4), keysOf(array));
+    }
+
+    @Test
+    public void testRedeliveredValueDoesNotRebind() {
+        FirebaseIndexArray<String> array = newArray();
+        array.setListenMargin(0);
+        array.setVisibleRange(0, 0);
+        addKeys(array);
+        for (int i = 0; i < SIZE; i++) {
+            deliver(i);
+        }
+
+        CountingListener listener = new CountingListener();
+        array.addChangeEventListener(listener);
+        listener.mChanged = 0;
+        listener.mDataChanged = 0;
+
+        array.setVisibleRange(4, 4);
+        deliver(4);
+        assertEquals(0, listener.mChanged);
+        assertEquals(0, listener.mDataChanged);
+
+        deliver(4, "new value");
+        assertEquals(1, listener.mChanged);
+        assertEquals(1, listener.mDataChanged);
+    }
+
+    @Test
+    public void testOptionsConfigureIndexArray() {
+        FirebaseRecyclerOptions<String> options = new FirebaseRecyclerOptions.Builder<String>()
+                .setIndexedQuery(mKeyQuery, mDataRef, new KeyParser())
+                .setMaxConcurrentFetches(1)
+                .setListenMargin(0)
+                .build();
+        FirebaseIndexArray<String> array = (FirebaseIndexArray<String>) options.getSnapshots();
+        array.addChangeEventListener(new NoopListener());
+        addKeys(array);
+
+        assertEquals(keys(0), mAttached);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOptionsRejectFetchLimitWithoutIndex() {
+        new FirebaseRecyclerOptions.Builder<String>()
+                .setQuery(mKeyQuery, new KeyParser())
+                .setMaxConcurrentFetches(1)
+                .build();
+    }
+
+    private FirebaseIndexArray<String> newArray() {
+        FirebaseIndexArray<String> array =
+                new FirebaseIndexArray<>(mKeyQuery, mDataRef, new KeyParser());
+        array.addChangeEventListener(new NoopListener());
+        return array;
+    }
+
+    private FirebaseArray<?> getKeys() {
+        ArgumentCaptor<ChildEventListener> captor =
+                ArgumentCaptor.forClass(ChildEventListener.class);
+        verify(mKeyQuery).addChildEventListener(captor.capture());
+        return (FirebaseArray<?>) captor.getValue();
+    }
+
+    private void addKeys(FirebaseIndexArray<String> array) {
+        FirebaseArray<?> keys = getKeys();
+        String previousKey = null;
+        for (int i = 0; i < SIZE; i++) {
+            keys.onChildAdded(mockSnapshot(key(i)), previousKey);
+            previousKey = key(i);
+        }
+        keys.onDataChange(mock(DataSnapshot.class));
+    }
+
+    private void deliver(int i) {
+        deliver(i, key(i));
+    }
+
+    private void deliver(int i, String value) {
+        mDataListeners.get(key(i)).onDataChange(mockSnapshot(key(i), value));
+    }
+
+    private DatabaseReference mockChild(final String key) {
+        DatabaseReference child = mock(DatabaseReference.class);
+        when(child.addValueEventListener(any(ValueEventListener.class))).thenAnswer(
+                new Answer<ValueEventListener>() {
+                    @Override
+                    public ValueEventListener answer(InvocationOnMock invocation) {
+                        ValueEventListener listener = invocation.getArgument(0);
+                        mDataListeners.put(key, listener);
+                        mAttached.add(key);
+                        return listener;
+                    }
+                });
+        return child;
+    }
+
+    private static List<String> keysOf(FirebaseIndexArray<String> array) {
+        return new ArrayList<>(array);
+    }
+
+    private static List<String> keys(int... indices) {
+        List<String> keys = new ArrayList<>();
+        for (int i : indices) {
+            keys.add(key(i));
+        }
+        return keys;
+    }
+
+    private static String key(int i) {
+        return "key" + i;
+    }
+
+    private static DataSnapshot mockSnapshot(String key) {
+        return mockSnapshot(key, key);
+    }
+
+    private static DataSnapshot mockSnapshot(String key, String value) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        when(snapshot.getValue()).thenReturn(value);
+        when(snapshot.getValue(true)).thenReturn(value);
+        return snapshot;
+    }
+
+    private static class KeyParser implements SnapshotParser<String> {
+        @NonNull
+        @Override
+        public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+            return snapshot.getKey();
+        }
+    }
+
+    private static class CountingListener extends NoopListener {
+        int mChanged;
+        int mDataChanged;
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            if (type == ChangeEventType.CHANGED) mChanged++;
+        }
+
+        @Override
+        public void onDataChanged() {
+            mDataChanged++;
+        }
+    }
+
+    private static class NoopListener implements ChangeEventListener {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+        }
+
+        @Override
+        public void onDataChanged() {
+        }
+
+        @Override
+        public void onError(@NonNull DatabaseError e) {
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.database.DataSetObserver;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the incremental update mode of {@link FirebaseListAdapter}. The list must be notified
+ * before it can observe a new count, while changes to existing items wait for the next frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirebaseListAdapterTest {
+    private static final long FRAME_TIMEOUT_MILLIS = 1000;
+
+    @Rule
+    public UiThreadTestRule mUiThreadRule = new UiThreadTestRule();
+
+    private FirebaseArray<String> mArray;
+    private FirebaseListAdapter<String> mAdapter;
+    private final Semaphore mNotifications = new Semaphore(0);
+
+    @Before
+    public void setUp() {
+        mArray = new FirebaseArray<>(mock(Query.class), new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+        mAdapter = new FirebaseListAdapter<String>(new FirebaseListOptions.Builder<String>()
+                .setSnapshotArray(mArray)
+                .setLayout(android.R.layout.simple_list_item_1)
+                .setIncrementalUpdatesEnabled(true)
+                .build()) {
+            @Override
+            protected void populateView(View v, String model, int position) {
+            }
+        };
+        mAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                mNotifications.release();
+            }
+        });
+    }
+
+    @Test
+    @UiThreadTest
+    public void testStructuralChangesNotifyImmediately() {
+        mAdapter.startListening();
+
+        mArray.onChildAdded(mockSnapshot("a"), null);
+        assertEquals(1, mNotifications.drainPermits());
+        assertEquals(1, mAdapter.getCount());
+
+        mArray.onChildAdded(mockSnapshot("b"), "a");
+        mArray.onChildMoved(mockSnapshot("b"), null);
+        assertEquals(2, mNotifications.drainPermits());
+        assertEquals("b", mAdapter.getItem(0));
+
+        mArray.onChildRemoved(mockSnapshot("a"));
+        assertEquals(1, mNotifications.drainPermits());
+        assertEquals(1, mAdapter.getCount());
+    }
+
+    @Test
+    @UiThreadTest
+    public void testChangesWaitForNextFrame() {
+        mAdapter.startListening();
+        mArray.onChildAdded(mockSnapshot("a"), null);
+        mNotifications.drainPermits();
+
+        mArray.onChildChanged(mockSnapshot("a"), null);
+        assertEquals(0, mNotifications.drainPermits());
+    }
+
+    @Test
+    public void testChangesAreAppliedOnNextFrame() throws InterruptedException {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.startListening();
+                mArray.onChildAdded(mockSnapshot("a"), null);
+                mArray.onChildAdded(mockSnapshot("b"), "a");
+                mNotifications.drainPermits();
+
+                mArray.onChildChanged(mockSnapshot("a"), null);
+                mArray.onChildChanged(mockSnapshot("b"), "a");
+                mArray.onChildChanged(mockSnapshot("a"), null);
+            }
+        });
+
+        // Without a parent to rebind rows in, the whole list is invalidated once
+        assertTrue(mNotifications.tryAcquire(FRAME_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(mNotifications.tryAcquire(FRAME_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testStructuralChangeDropsPendingChanges() throws InterruptedException {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.startListening();
+                mArray.onChildAdded(mockSnapshot("a"), null);
+                mNotifications.drainPermits();
+
+                mArray.onChildChanged(mockSnapshot("a"), null);
+                mArray.onChildAdded(mockSnapshot("b"), "a");
+            }
+        });
+
+        // The pending frame was cancelled, only the structural change notified
+        assertEquals(1, mNotifications.drainPermits());
+        assertFalse(mNotifications.tryAcquire(FRAME_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @UiThreadTest
+    public void testBatchedArrayKeepsNotifiedCount() {
+        mArray.setBatchingEnabled(true);
+        mAdapter.startListening();
+        mArray.onChildAdded(mockSnapshot("a"), null);
+
+        // Not flushed yet, so the list must still see the old count
+        assertEquals(0, mNotifications.drainPermits());
+        assertEquals(0, mAdapter.getCount());
+
+        mArray.onDataChange(mock(DataSnapshot.class));
+        assertEquals(1, mNotifications.drainPermits());
+        assertEquals(1, mAdapter.getCount());
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private static DataSnapshot mockSnapshot(String key) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        return snapshot;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests how {@link FirebaseRecyclerAdapter} swaps the items of its {@link SnapshotDiskCache} for
+ * the real ones.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FirebaseRecyclerAdapterTest {
+    @Rule
+    public UiThreadTestRule mUiThreadRule = new UiThreadTestRule();
+
+    private FirebaseArray<String> mArray;
+    private SnapshotDiskCache<String> mCache;
+    private TestAdapter mAdapter;
+
+    /** The item count the adapter has notified so far. */
+    private int mNotifiedCount;
+
+    @Before
+    public void setUp() {
+        mArray = new FirebaseArray<>(mock(Query.class), new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DataSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "FirebaseRecyclerAdapterTest");
+        file.delete();
+        mCache = new SnapshotDiskCache<>(file, 10, new StringCodec(), new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                command.run();
+            }
+        });
+        mCache.write(Arrays.asList("a", "b"), Arrays.asList("a", "b"));
+
+        mAdapter = new TestAdapter(new FirebaseRecyclerOptions.Builder<String>()
+                .setSnapshotArray(mArray)
+                .setDiskCache(mCache)
+                .build());
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                mNotifiedCount = mAdapter.getItemCount();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mNotifiedCount += itemCount;
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mNotifiedCount -= itemCount;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+    }
+
+    @Test
+    @UiThreadTest
+    public void testCachedItemsSwappedBeforeDataChanged() {
+        mAdapter.startListening();
+        assertTrue(mAdapter.isShowingCachedItems());
+        assertEquals(2, mAdapter.getItemCount());
+        assertEquals(2, mNotifiedCount);
+
+        mArray.onChildAdded(mockSnapshot("a"), null);
+        mArray.onChildAdded(mockSnapshot("b"), "a");
+        mArray.onChildAdded(mockSnapshot("c"), "b");
+        mArray.onDataChange(mock(DataSnapshot.class));
+
+        assertFalse(mAdapter.mWasShowingCachedItems);
+        assertEquals(3, mAdapter.mCountOnDataChanged);
+        assertEquals(3, mNotifiedCount);
+        assertEquals("c", mAdapter.getItem(2));
+    }
+
+    @Test
+    @UiThreadTest
+    public void testCachedItemsDroppedWhenArrayHasData() {
+        // A shared array which already synced
+        mArray.addChangeEventListener(new FirebaseRecyclerAdapter<String, RecyclerView.ViewHolder>(
+                new FirebaseRecyclerOptions.Builder<String>().setSnapshotArray(mArray).build()) {
+            @NonNull
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                              int viewType) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            protected void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder,
+                                            int position,
+                                            @NonNull String model) {
+            }
+        });
+        mArray.onChildAdded(mockSnapshot("c"), null);
+        mArray.onDataChange(mock(DataSnapshot.class));
+
+        mAdapter.startListening();
+        assertFalse(mAdapter.isShowingCachedItems());
+        assertEquals(1, mAdapter.getItemCount());
+        assertEquals(1, mNotifiedCount);
+        assertEquals(1, mAdapter.mCountOnDataChanged);
+    }
+
+    private static DataSnapshot mockSnapshot(String key) {
+        DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getKey()).thenReturn(key);
+        return snapshot;
+    }
+
+    private static class TestAdapter
+            extends FirebaseRecyclerAdapter<String, RecyclerView.ViewHolder> {
+        boolean mWasShowingCachedItems;
+        int mCountOnDataChanged = -1;
+
+        TestAdapter(@NonNull FirebaseRecyclerOptions<String> options) {
+            super(options);
+        }
+
+        @Override
+        public void onDataChanged() {
+            mWasShowingCachedItems = isShowingCachedItems();
+            mCountOnDataChanged = getItemCount();
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder,
+                                        int position,
+                                        @NonNull String model) {
+        }
+    }
+
+    private static class StringCodec implements SnapshotDiskCache.Codec<String> {
+        @Override
+        public void encode(@NonNull String model, @NonNull DataOutput out) throws IOException {
+            out.writeUTF(model);
+        }
+
+        @NonNull
+        @Override
+        public String decode(@NonNull DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SnapshotDiskCacheTest {
+    private static final int MAX_ITEMS = 3;
+
+    private File mFile;
+    private CountingCodec mCodec;
+    private int mWrites;
+    private SnapshotDiskCache<String> mCache;
+
+    @Before
+    public void setUp() {
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "SnapshotDiskCacheTest");
+        mFile.delete();
+        mCodec = new CountingCodec();
+        mCache = new SnapshotDiskCache<>(mFile, MAX_ITEMS, mCodec, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mWrites++;
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+    }
+
+    @Test
+    public void testReadWithoutFile() {
+        assertTrue(mCache.read().isEmpty());
+    }
+
+    @Test
+    public void testRoundTripKeepsFirstItems() {
+        mCache.write(Arrays.asList("a", "b", "c", "d"), Arrays.asList("A", "B", "C", "D"));
+
+        List<SnapshotDiskCache.Entry<String>> entries = mCache.read();
+        assertEquals(MAX_ITEMS, entries.size());
+        for (int i = 0; i < MAX_ITEMS; i++) {
+            assertEquals(String.valueOf((char) ('a' + i)), entries.get(i).getKey());
+            assertEquals(String.valueOf((char) ('A' + i)), entries.get(i).getModel());
+        }
+    }
+
+    @Test
+    public void testNewInstanceReadsFile() {
+        mCache.write(Arrays.asList("a", "b"), Arrays.asList("A", "B"));
+
+        List<SnapshotDiskCache.Entry<String>> entries =
+                new SnapshotDiskCache<>(mFile, MAX_ITEMS, mCodec).read();
+        assertEquals(2, entries.size());
+        assertEquals("b", entries.get(1).getKey());
+        assertEquals("B", entries.get(1).getModel());
+    }
+
+    @Test
+    public void testUnchangedWriteIsSkipped() {
+        List<String> keys = Arrays.asList("a", "b");
+        List<String> models = Arrays.asList("A", "B");
+
+        mCache.write(keys, models);
+        mCache.write(keys, models);
+
+        assertEquals(1, mWrites);
+        assertEquals(2, mCodec.mEncodeCount);
+    }
+
+    @Test
+    public void testOnlyChangedModelsAreEncoded() {
+        mCache.write(Arrays.asList("a", "b"), Arrays.asList("A", "B"));
+        mCache.write(Arrays.asList("b", "a"), Arrays.asList("B", new String("A2")));
+
+        assertEquals(2, mWrites);
+        assertEquals(3, mCodec.mEncodeCount);
+        assertEquals("b", mCache.read().get(0).getKey());
+        assertEquals("A2", mCache.read().get(1).getModel());
+    }
+
+    @Test
+    public void testCorruptFileIsDiscarded() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        out.close();
+
+        assertTrue(mCache.read().isEmpty());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void testHugeLengthIsDiscarded() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        out.writeInt(0x46554943);
+        out.writeInt(1);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(0);
+        out.close();
+
+        assertTrue(mCache.read().isEmpty());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void testHugeCountIsDiscarded() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        out.writeInt(0x46554943);
+        out.writeInt(1);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+
+        assertTrue(mCache.read().isEmpty());
+        assertFalse(mFile.exists());
+    }
+
+    private static class CountingCodec implements SnapshotDiskCache.Codec<String> {
+        int mEncodeCount;
+
+        @Override
+        public void encode(@NonNull String model, @NonNull DataOutput out) throws IOException {
+            mEncodeCount++;
+            out.writeUTF(model);
+        }
+
+        @NonNull
+        @Override
+        public String decode(@NonNull DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database.paging;
+
+import android.arch.lifecycle.Observer;
+import android.arch.paging.PageKeyedDataSource;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirebaseDataSourceTest {
+
+    private FirebaseDataSource mDataSource;
+
+    @Mock Query mMockQuery;
+    @Mock PageKeyedDataSource.LoadInitialCallback<DataSnapshot, DataSnapshot> mInitialCallback;
+    @Mock PageKeyedDataSource.LoadCallback<DataSnapshot, DataSnapshot> mAfterCallback;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        initMockQuery();
+
+        // Create a testing data source
+        mDataSource = new FirebaseDataSource(mMockQuery, null);
+    }
+
+    @Test
+    public void testLoadInitial_success() throws Exception {
+        List<DataSnapshot> children = newChildren(0, 20);
+        mockQuerySuccess(children);
+
+        TestObserver<LoadingState> observer = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer);
+
+        // Kick off an initial load of 20 items
+        PageKeyedDataSource.LoadInitialParams<DataSnapshot> params =
+                new PageKeyedDataSource.LoadInitialParams<>(20, false);
+        mDataSource.loadInitial(params, mInitialCallback);
+
+        // Should go from LOADING_INITIAL --> LOADED
+        observer.await();
+        observer.assertResults(Arrays.asList(LoadingState.LOADING_INITIAL, LoadingState.LOADED));
+        verify(mMockQuery).limitToFirst(20);
+        verify(mInitialCallback).onResult(children, null, children.get(19));
+    }
+
+    @Test
+    public void testLoadInitial_failure() throws Exception {
+        mockQueryFailure();
+
+        TestObserver<LoadingState> observer = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer);
+
+        // Kick off an initial load of 20 items
+        PageKeyedDataSource.LoadInitialParams<DataSnapshot> params =
+                new PageKeyedDataSource.LoadInitialParams<>(20, false);
+        mDataSource.loadInitial(params, mInitialCallback);
+
+        // Should go from LOADING_INITIAL --> ERROR
+        observer.await();
+        observer.assertResults(Arrays.asList(LoadingState.LOADING_INITIAL, LoadingState.ERROR));
+    }
+
+    @Test
+    public void testLoadAfter_skipsPreviousChild() throws Exception {
+        List<DataSnapshot> children = newChildren(19, 21);
+        mockQuerySuccess(children);
+
+        TestObserver<LoadingState> observer = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer);
+
+        // Load the page after child 19
+        PageKeyedDataSource.LoadParams<DataSnapshot> params =
+                new PageKeyedDataSource.LoadParams<>(children.get(0), 20);
+        mDataSource.loadAfter(params, mAfterCallback);
+
+        // Should go from LOADING_MORE --> LOADED
+        observer.await();
+        observer.assertResults(Arrays.asList(LoadingState.LOADING_MORE, LoadingState.LOADED));
+        verify(mMockQuery).startAt("key19");
+        verify(mMockQuery).limitToFirst(21);
+
+        List<DataSnapshot> page = children.subList(1, 21);
+        verify(mAfterCallback).onResult(page, page.get(19));
+    }
+
+    @Test
+    public void testLoadAfter_orderByChild() throws Exception {
+        mDataSource = new FirebaseDataSource(mMockQuery, "score");
+
+        DataSnapshot last = newChild(19);
+        DataSnapshot score = mock(DataSnapshot.class);
+        when(score.getValue()).thenReturn(42L);
+        when(last.child("score")).thenReturn(score);
+        mockQuerySuccess(Collections.singletonList(last));
+
+        TestObserver<LoadingState> observer = new TestObserver<>(3);
+        mDataSource.getLoadingState().observeForever(observer);
+
+        PageKeyedDataSource.LoadParams<DataSnapshot> params =
+                new PageKeyedDataSource.LoadParams<>(last, 20);
+        mDataSource.loadAfter(params, mAfterCallback);
+
+        // Only the previous child came back, so there is nothing left to load
+        observer.await();
+        observer.assertResults(Arrays.asList(
+                LoadingState.LOADING_MORE, LoadingState.LOADED, LoadingState.FINISHED));
+        verify(mMockQuery).startAt(42.0, "key19");
+        verify(mAfterCallback).onResult(Collections.<DataSnapshot>emptyList(), null);
+    }
+
+    @Test
+    public void testLoadAfter_orderByChildDouble() {
+        mDataSource = new FirebaseDataSource(mMockQuery, "score");
+
+        DataSnapshot last = newChild(19);
+        DataSnapshot score = mock(DataSnapshot.class);
+        when(score.getValue()).thenReturn(4.5);
+        when(last.child("score")).thenReturn(score);
+        mockQuerySuccess(Collections.singletonList(last));
+
+        mDataSource.loadAfter(new PageKeyedDataSource.LoadParams<>(last, 20), mAfterCallback);
+        verify(mMockQuery).startAt(4.5, "key19");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLoadAfter_orderByChildUnsafeLong() {
+        mDataSource = new FirebaseDataSource(mMockQuery, "score");
+
+        DataSnapshot last = newChild(19);
+        DataSnapshot score = mock(DataSnapshot.class);
+        when(score.getValue()).thenReturn((1L << 53) + 1);
+        when(last.child("score")).thenReturn(score);
+
+        // Rounding to a double would skip or repeat children
+        mDataSource.loadAfter(new PageKeyedDataSource.LoadParams<>(last, 20), mAfterCallback);
+    }
+
+    @Test
+    public void testLoadAfter_retry() throws Exception {
+        mockQueryFailure();
+
+        TestObserver<LoadingState> observer1 = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer1);
+
+        // Kick off a load of 20 items
+        PageKeyedDataSource.LoadParams<DataSnapshot> params =
+                new PageKeyedDataSource.LoadParams<>(newChild(0), 20);
+        mDataSource.loadAfter(params, mAfterCallback);
+
+        // Should go from LOADING_MORE --> ERROR
+        observer1.await();
+        observer1.assertResults(Arrays.asList(LoadingState.LOADING_MORE, LoadingState.ERROR));
+
+        // Create a new observer
+        TestObserver<LoadingState> observer2 = new TestObserver<>(3);
+        mDataSource.getLoadingState().observeForever(observer2);
+
+        // Retry the load
+        mockQuerySuccess(newChildren(0, 21));
+        mDataSource.retry();
+
+        // Should go from ERROR --> LOADING_MORE --> SUCCESS
+        observer2.await();
+        observer2.assertResults(
+                Arrays.asList(LoadingState.ERROR, LoadingState.LOADING_MORE, LoadingState.LOADED));
+    }
+
+    private void initMockQuery() {
+        when(mMockQuery.startAt(anyString())).thenReturn(mMockQuery);
+        when(mMockQuery.startAt(anyDouble(), anyString())).thenReturn(mMockQuery);
+        when(mMockQuery.limitToFirst(anyInt())).thenReturn(mMockQuery);
+    }
+
+    private static DataSnapshot newChild(int index) {
+        DataSnapshot child = mock(DataSnapshot.class);
+        when(child.getKey()).thenReturn("key" + index);
+        return child;
+    }
+
+    private static List<DataSnapshot> newChildren(int start, int count) {
+        List<DataSnapshot> children = new ArrayList<>();
+        for (int i = start; i < start + count; i++) {
+            children.add(newChild(i));
+        }
+        return children;
+    }
+
+    private void mockQuerySuccess(final List<DataSnapshot> children) {
+        final DataSnapshot snapshot = mock(DataSnapshot.class);
+        when(snapshot.getChildren()).thenReturn(children);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                final ValueEventListener listener = invocation.getArgument(0);
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDataChange(snapshot);
+                    }
+                });
+                return null;
+            }
+        }).when(mMockQuery).addListenerForSingleValueEvent(any(ValueEventListener.class));
+    }
+
+    private void mockQueryFailure() {
+        final DatabaseError error = DatabaseError.fromCode(DatabaseError.NETWORK_ERROR);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                final ValueEventListener listener = invocation.getArgument(0);
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onCancelled(error);
+                    }
+                });
+                return null;
+            }
+        }).when(mMockQuery).addListenerForSingleValueEvent(any(ValueEventListener.class));
+    }
+
+    /**
+     * Like the database, deliver results on the main thread.
+     */
+    private static void runOnMainThread(Runnable runnable) {
+        new Handler(Looper.getMainLooper()).post(runnable);
+    }
+
+    private static class TestObserver<T> implements Observer<T> {
+
+        private final List<T> mResults = new ArrayList<>();
+        private final CountDownLatch mLatch;
+
+        public TestObserver(int expectedCount) {
+            mLatch = new CountDownLatch(expectedCount);
+        }
+
+        @Override
+        public void onChanged(@Nullable T t) {
+            if (t != null) {
+                mResults.add(t);
+                mLatch.countDown();
+            }
+        }
+
+        public void await() throws InterruptedException {
+            mLatch.await();
+        }
+
+        public void assertResults(List<T> expected) {
+            assertEquals(expected.size(), mResults.size());
+
+            for (int i = 0; i < mResults.size(); i++) {
+                assertEquals(mResults.get(i), expected.get(i));
+            }
+        }
+
+    }
+}
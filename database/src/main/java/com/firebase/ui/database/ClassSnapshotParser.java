@@ -28,4 +28,18 @@ public class ClassSnapshotParser<T> implements SnapshotParser<T> {
         // ones. Hence the nullability discrepancy.
         return snapshot.getValue(mClass);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ClassSnapshotParser<?> parser = (ClassSnapshotParser<?>) o;
+        return mClass.equals(parser.mClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return mClass.hashCode();
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.database;
+
+import java.util.Arrays;
+
+/**
+ * A list of ints supporting point updates and prefix sums in O(log N) using a binary indexed
+ * tree.
+ * <p>
+ * Values can be appended to or removed from the end without touching the rest of the tree. Other
+ * insertions, removals, and moves shift the values and rebuild the tree in O(N) the next time a
+ * sum is needed, so a burst of them only pays for one rebuild.
+ */
+final class FenwickTree {
+    private int[] mValues = new int[16];
+    /** 1-based tree nodes, node {@code i} holds the sum of values in {@code (i - lowbit(i), i]}. */
+    private int[] mTree = new int[17];
+    private int mSize;
+    private boolean mIsStale;
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+        mIsStale = true;
+    }
+
+    public int get(int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    public void set(int index, int value) {
+        int delta = value - get(index);
+        mValues[index] = value;
+        if (mIsStale) return;
+
+        for (int node = index + 1; node <= mSize; node += node & -node) {
+            mTree[node] += delta;
+        }
+    }
+
+    public void insert(int index, int value) {
+        if (index < 0 || index > mSize) throw new IndexOutOfBoundsException("Index: " + index);
+        if (mSize == mValues.length) {
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+            mTree = Arrays.copyOf(mTree, mSize * 2 + 1);
+        }
+
+        System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+        mValues[index] = value;
+        mSize++;
+
+        if (index == mSize - 1 && !mIsStale) {
+            // The new node covers the new value plus the existing values right before it
+            int node = mSize;
+            mTree[node] = value + prefixSum(node - 1) - prefixSum(node - (node & -node));
+        } else {
+            mIsStale = true;
+        }
+    }
+
+    public int remove(int index) {
+        int value = get(index);
+        System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        mSize--;
+
+        // Nodes only cover values at or before their own position so removing the last value
+        // leaves the remaining nodes intact.
+        if (index != mSize) mIsStale = true;
+        return value;
+    }
+
+    public void move(int fromIndex, int toIndex) {
+        insert(toIndex, remove(fromIndex));
+    }
+
+    /**
+     * @return the sum of all values before {@code index}.
+     */
+    public int prefixSum(int index) {
+        if (index < 0 || index > mSize) throw new IndexOutOfBoundsException("Index: " + index);
+        if (mIsStale) rebuild();
+
+        int sum = 0;
+        for (int node = index; node > 0; node -= node & -node) {
+            sum += mTree[node];
+        }
+        return sum;
+    }
+
+    private void rebuild() {
+        System.arraycopy(mValues, 0, mTree, 1, mSize);
+        for (int node = 1; node <= mSize; node++) {
+            int parent = node + (node & -node);
+            if (parent <= mSize) mTree[parent] += mTree[node];
+        }
+        mIsStale = false;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) throw new IndexOutOfBoundsException("Index: " + index);
+    }
+}
@@ -17,6 +17,7 @@ package com.firebase.ui.database;
 import android.support.annotation.NonNull;
 
 import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.SnapshotArrayRegistry;
 import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
@@ -24,7 +25,10 @@ import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class implements a collection on top of a Firebase location.
@@ -34,6 +38,15 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
     private final Query mQuery;
     private final List<DataSnapshot> mSnapshots = new ArrayList<>();
 
+    /**
+     * Cache of each key's position in {@link #mSnapshots}. Entries for positions before {@link
+     * #mFirstStaleIndex} are guaranteed to be correct, anything at or after it is repaired lazily
+     * the next time a lookup needs it. Since child events usually arrive in order, this makes the
+     * common case of appending to the list O(1) instead of a full scan.
+     */
+    private final Map<String, Integer> mKeyIndices = new HashMap<>();
+    private int mFirstStaleIndex;
+
     /**
      * Create a new FirebaseArray with a custom {@link SnapshotParser}.
      *
@@ -47,6 +60,24 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
         mQuery = query;
     }
 
+    /**
+     * Get the array for {@code query} and {@code parser} from the {@link SnapshotArrayRegistry},
+     * creating it if it isn't registered yet.
+     */
+    @NonNull
+    static <T> FirebaseArray<T> obtainShared(@NonNull final Query query,
+                                             @NonNull final SnapshotParser<T> parser) {
+        return SnapshotArrayRegistry.getInstance().obtain(
+                Arrays.asList(FirebaseArray.class, query, parser),
+                new SnapshotArrayRegistry.Factory<FirebaseArray<T>>() {
+                    @NonNull
+                    @Override
+                    public FirebaseArray<T> create() {
+                        return new FirebaseArray<>(query, parser);
+                    }
+                });
+    }
+
     @Override
     protected void onCreate() {
         super.onCreate();
@@ -59,6 +90,9 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
         super.onDestroy();
         mQuery.removeEventListener((ValueEventListener) this);
         mQuery.removeEventListener((ChildEventListener) this);
+
+        mKeyIndices.clear();
+        mFirstStaleIndex = 0;
     }
 
     @Override
@@ -69,6 +103,7 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
         }
 
         mSnapshots.add(index, snapshot);
+        invalidateIndicesFrom(index);
         notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
     }
 
@@ -85,6 +120,8 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
         int index = getIndexForKey(snapshot.getKey());
 
         mSnapshots.remove(index);
+        mKeyIndices.remove(snapshot.getKey());
+        invalidateIndicesFrom(index);
         notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, index, -1);
     }
 
@@ -92,9 +129,12 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
     public void onChildMoved(DataSnapshot snapshot, String previousChildKey) {
         int oldIndex = getIndexForKey(snapshot.getKey());
         mSnapshots.remove(oldIndex);
+        mKeyIndices.remove(snapshot.getKey());
+        invalidateIndicesFrom(oldIndex);
 
         int newIndex = previousChildKey == null ? 0 : getIndexForKey(previousChildKey) + 1;
         mSnapshots.add(newIndex, snapshot);
+        invalidateIndicesFrom(newIndex);
 
         notifyOnChildChanged(ChangeEventType.MOVED, snapshot, newIndex, oldIndex);
     }
@@ -109,16 +149,34 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
         notifyOnError(error);
     }
 
-    private int getIndexForKey(String key) {
-        int index = 0;
-        for (DataSnapshot snapshot : mSnapshots) {
-            if (snapshot.getKey().equals(key)) {
-                return index;
-            } else {
-                index++;
-            }
+    /**
+     * @return the position of the snapshot with the given key.
+     * @throws IllegalArgumentException if no snapshot has the key.
+     */
+    int getIndexForKey(String key) {
+        Integer index = mKeyIndices.get(key);
+        if (index != null && index < mFirstStaleIndex) {
+            return index;
+        }
+
+        // Repair everything from the first stale position onwards
+        for (int i = mFirstStaleIndex; i < mSnapshots.size(); i++) {
+            mKeyIndices.put(mSnapshots.get(i).getKey(), i);
+        }
+        mFirstStaleIndex = mSnapshots.size();
+
+        index = mKeyIndices.get(key);
+        if (index == null) {
+            throw new IllegalArgumentException("Key not found");
         }
-        throw new IllegalArgumentException("Key not found");
+        return index;
+    }
+
+    /**
+     * Mark the cached index of every snapshot at or after {@code index} as potentially stale.
+     */
+    private void invalidateIndicesFrom(int index) {
+        mFirstStaleIndex = Math.min(mFirstStaleIndex, index);
     }
 
     @NonNull
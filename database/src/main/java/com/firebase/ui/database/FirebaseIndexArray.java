@@ -27,15 +27,20 @@ import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
         implements ChangeEventListener {
     private static final String TAG = "FirebaseIndexArray";
 
     private final DatabaseReference mDataRef;
-    private final Map<DatabaseReference, ValueEventListener> mRefs = new HashMap<>();
+    private final Map<String, DataRefListener> mRefs = new HashMap<>();
 
     private final FirebaseArray<String> mKeySnapshots;
     private final List<DataSnapshot> mDataSnapshots = new ArrayList<>();
@@ -45,7 +50,7 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
      * contains keys that exist in the backing {@link FirebaseArray}, but their data hasn't been
      * downloaded yet in this array.
      */
-    private final List<String> mKeysWithPendingUpdate = new ArrayList<>();
+    private final Set<String> mKeysWithPendingUpdate = new HashSet<>();
     /**
      * Moves or deletions don't need to fetch new data so they can be performed instantly once the
      * backing {@link FirebaseArray} is done updating. This will be true if the backing {@link
@@ -53,6 +58,42 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
      */
     private boolean mHasPendingMoveOrDelete;
 
+    /**
+     * Holds a 1 for each key position in {@link #mKeySnapshots} whose data is in this array. Since
+     * keys with null data are skipped, the prefix sum at a key's position is the position of its
+     * data in this array.
+     */
+    private final FenwickTree mDataPresence = new FenwickTree();
+
+    /**
+     * Keys waiting for a free fetch slot, in the order they were added, mapped to their key index
+     * at that time.
+     */
+    private final Map<String, Integer> mQueuedKeys = new LinkedHashMap<>();
+    /**
+     * Keys whose listener is attached but whose first value hasn't arrived yet. Each one holds a
+     * fetch slot.
+     */
+    private final Set<String> mInFlightKeys = new HashSet<>();
+    /**
+     * Keys whose first value hasn't been delivered yet, in the order they were fetched.
+     */
+    private final Set<String> mUndeliveredKeys = new LinkedHashSet<>();
+    /**
+     * First values which arrived before the values of keys fetched earlier. They are held back so
+     * joined results are always delivered in fetch order, but no longer hold a fetch slot.
+     */
+    private final Map<String, DataSnapshot> mArrivedSnapshots = new HashMap<>();
+    private int mMaxConcurrentFetches = Integer.MAX_VALUE;
+
+    /**
+     * Number of positions around the visible range for which joined data stays live, or -1 if all
+     * joined data should stay live.
+     */
+    private int mListenMargin = -1;
+    private int mVisibleFirst = 0;
+    private int mVisibleLast = -1;
+
     /**
      * Create a new FirebaseIndexArray with a custom {@link SnapshotParser}.
      *
@@ -88,10 +129,64 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
         super.onDestroy();
         mKeySnapshots.removeChangeEventListener(this);
 
-        for (DatabaseReference ref : mRefs.keySet()) {
-            ref.removeEventListener(mRefs.get(ref));
+        for (String key : mRefs.keySet()) {
+            mDataRef.child(key).removeEventListener(mRefs.get(key));
         }
         mRefs.clear();
+
+        mKeysWithPendingUpdate.clear();
+        mDataPresence.clear();
+        mQueuedKeys.clear();
+        mInFlightKeys.clear();
+        mUndeliveredKeys.clear();
+        mArrivedSnapshots.clear();
+    }
+
+    /**
+     * Limit how many joined children are fetched at once. Remaining keys are queued and fetched in
+     * key order as earlier fetches complete. By default, all keys are fetched immediately.
+     * <p>
+     * Results are still delivered in key order: a value which arrives before those of keys
+     * fetched earlier frees its slot immediately but is held back until they arrive.
+     *
+     * @param maxConcurrentFetches the maximum number of keys waiting for their first value.
+     */
+    public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+        if (maxConcurrentFetches <= 0) {
+            throw new IllegalArgumentException("Max concurrent fetches must be positive.");
+        }
+
+        mMaxConcurrentFetches = maxConcurrentFetches;
+        dispatchQueuedKeys();
+    }
+
+    /**
+     * Only keep joined data live for items within {@code margin} positions of the range reported
+     * through {@link #setVisibleRange(int, int)}. Every key is still fetched once so that it can be
+     * displayed, but listeners for items far off-screen are removed and re-attached when the items
+     * come back into range.
+     *
+     * @param margin the number of positions on each side of the visible range to keep live, or -1
+     *               to keep all joined data live (the default).
+     */
+    public void setListenMargin(int margin) {
+        mListenMargin = margin < 0 ? -1 : margin;
+        updateListenWindow();
+    }
+
+    /**
+     * @return the number of listeners currently attached to children of the data reference.
+     */
+    public int getActiveListenerCount() {
+        return mRefs.size();
+    }
+
+    @Override
+    public void setVisibleRange(int first, int last) {
+        super.setVisibleRange(first, last);
+        mVisibleFirst = first;
+        mVisibleLast = last;
+        if (mListenMargin != -1) updateListenWindow();
     }
 
     @Override
@@ -136,126 +231,273 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
     }
 
     private int returnOrFindIndexForKey(int index, String key) {
-        int realIndex;
         if (isKeyAtIndex(key, index)) {
             // To optimize this query, if the expected item position is accurate, we simply return
             // it instead of searching for it in our keys all over again. This ensures developers
             // correctly indexing their data (i.e. no null values) don't take a performance hit.
-            realIndex = index;
+            return index;
         } else {
-            int dataCount = size();
-            int dataIndex = 0;
-            int keyIndex = 0;
-
-            while (dataIndex < dataCount && keyIndex < mKeySnapshots.size()) {
-                String superKey = mKeySnapshots.get(keyIndex);
-                if (key.equals(superKey)) {
-                    break;
-                } else if (mDataSnapshots.get(dataIndex).getKey().equals(superKey)) {
-                    // Only increment the data index if we aren't passing over a null value snapshot.
-                    dataIndex++;
-                }
-                keyIndex++;
-            }
-
-            realIndex = dataIndex;
+            return mDataPresence.prefixSum(mKeySnapshots.getIndexForKey(key));
         }
-        return realIndex;
     }
 
-    /**
-     * Determines if a DataSnapshot with the given key is present at the given index.
-     */
+    private void setHasData(String key, boolean hasData) {
+        mDataPresence.set(mKeySnapshots.getIndexForKey(key), hasData ? 1 : 0);
+    }
+
     private boolean isKeyAtIndex(String key, int index) {
         return index >= 0 && index < size() && mDataSnapshots.get(index).getKey().equals(key);
     }
 
     private void onKeyAdded(DataSnapshot data, int newIndex) {
         String key = data.getKey();
-        DatabaseReference ref = mDataRef.child(key);
 
+        mDataPresence.insert(newIndex, 0);
         mKeysWithPendingUpdate.add(key);
-        // Start listening
-        mRefs.put(ref, ref.addValueEventListener(new DataRefListener(newIndex)));
+        mQueuedKeys.put(key, newIndex);
+        dispatchQueuedKeys();
+    }
+
+    /**
+     * Start fetching queued keys, in order, until the concurrent fetch limit is reached.
+     */
+    private void dispatchQueuedKeys() {
+        Iterator<Map.Entry<String, Integer>> it = mQueuedKeys.entrySet().iterator();
+        while (mInFlightKeys.size() < mMaxConcurrentFetches && it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            it.remove();
+
+            mInFlightKeys.add(entry.getKey());
+            mUndeliveredKeys.add(entry.getKey());
+            attachListener(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void attachListener(String key, int index) {
+        DataRefListener listener = new DataRefListener(key, index);
+        mRefs.put(key, listener);
+        mDataRef.child(key).addValueEventListener(listener);
+    }
+
+    private void detachListener(String key) {
+        ValueEventListener listener = mRefs.remove(key);
+        if (listener != null) mDataRef.child(key).removeEventListener(listener);
+    }
+
+    /**
+     * Deliver held back first values for as long as the earliest undelivered key has one.
+     */
+    private void deliverArrivedSnapshots() {
+        Iterator<String> it = mUndeliveredKeys.iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            DataSnapshot snapshot = mArrivedSnapshots.remove(key);
+            if (snapshot == null) break;
+
+            it.remove();
+            DataRefListener listener = mRefs.get(key);
+            if (listener != null) onDataArrived(snapshot, listener);
+        }
+    }
+
+    /**
+     * Make sure exactly the keys near the visible range keep live listeners.
+     */
+    private void updateListenWindow() {
+        if (!isListening()) return;
+
+        int start = 0;
+        int end = mKeySnapshots.size() - 1;
+        if (mListenMargin != -1) {
+            // Drop settled listeners which are no longer in range
+            Iterator<Map.Entry<String, DataRefListener>> it = mRefs.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, DataRefListener> entry = it.next();
+                String key = entry.getKey();
+                if (!mUndeliveredKeys.contains(key) && !isInListenWindow(key)) {
+                    mDataRef.child(key).removeEventListener(entry.getValue());
+                    it.remove();
+                }
+            }
+
+            // Keys are in range by the position of their data, or where it would be if they have
+            // none, so the key range is bounded by the data just outside the window
+            int first = mVisibleFirst - mListenMargin;
+            int last = mVisibleLast + mListenMargin;
+            if (first > size()) return;
+            if (first > 0) {
+                start = mKeySnapshots.getIndexForKey(mDataSnapshots.get(first - 1).getKey()) + 1;
+            }
+            if (last + 1 < size()) {
+                end = mKeySnapshots.getIndexForKey(mDataSnapshots.get(last + 1).getKey()) - 1;
+            }
+        }
+
+        // Re-attach listeners which came back into range, including keys without data so their
+        // data shows up if it is added later
+        for (int i = start; i <= end; i++) {
+            String key = mKeySnapshots.getSnapshot(i).getKey();
+            if (!mRefs.containsKey(key) && !mQueuedKeys.containsKey(key)) {
+                attachListener(key, mDataPresence.prefixSum(i));
+            }
+        }
+    }
+
+    /**
+     * @return whether a key is within the listen margin of the visible range, by the position of
+     * its data or the position its data would have if it has none.
+     */
+    private boolean isInListenWindow(String key) {
+        if (mListenMargin == -1) return true;
+
+        int position = mDataPresence.prefixSum(mKeySnapshots.getIndexForKey(key));
+        return position >= mVisibleFirst - mListenMargin
+                && position <= mVisibleLast + mListenMargin;
     }
 
     private void onKeyMoved(DataSnapshot data, int index, int oldIndex) {
         String key = data.getKey();
 
-        // We can't use `returnOrFindIndexForKey(...)` for `oldIndex` or it might find the updated
-        // index instead of the old one. Unfortunately, this does mean move events will be
-        // incorrectly ignored if our list is a subset of the key list e.g. a key has null data.
-        if (isKeyAtIndex(key, oldIndex)) {
-            DataSnapshot snapshot = mDataSnapshots.remove(oldIndex);
-            int realIndex = returnOrFindIndexForKey(index, key);
-            mHasPendingMoveOrDelete = true;
+        // Count the keys with data in front of this one both before and after the move. The
+        // presence bits still have the old key layout at this point.
+        boolean hasData = mDataPresence.get(oldIndex) == 1;
+        int realOldIndex = mDataPresence.prefixSum(oldIndex);
+        mDataPresence.move(oldIndex, index);
+        if (!hasData) return;
 
-            mDataSnapshots.add(realIndex, snapshot);
-            notifyOnChildChanged(ChangeEventType.MOVED, snapshot, realIndex, oldIndex);
-        }
+        DataSnapshot snapshot = mDataSnapshots.remove(realOldIndex);
+        int realIndex = mDataPresence.prefixSum(index);
+        mHasPendingMoveOrDelete = true;
+
+        mDataSnapshots.add(realIndex, snapshot);
+        notifyOnChildChanged(ChangeEventType.MOVED, snapshot, realIndex, realOldIndex);
     }
 
     private void onKeyRemoved(DataSnapshot data, int index) {
         String key = data.getKey();
-        ValueEventListener listener = mRefs.remove(mDataRef.getRef().child(key));
-        if (listener != null) mDataRef.child(key).removeEventListener(listener);
+        detachListener(key);
+
+        mQueuedKeys.remove(key);
+        mArrivedSnapshots.remove(key);
+        mKeysWithPendingUpdate.remove(key);
 
-        int realIndex = returnOrFindIndexForKey(index, key);
-        if (isKeyAtIndex(key, realIndex)) {
+        int realIndex = mDataPresence.prefixSum(index);
+        if (mDataPresence.remove(index) == 1) {
             DataSnapshot snapshot = mDataSnapshots.remove(realIndex);
             mHasPendingMoveOrDelete = true;
             notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, realIndex, -1);
         }
+
+        if (mUndeliveredKeys.remove(key)) {
+            // This key might have been holding back later results
+            deliverArrivedSnapshots();
+        }
+        if (mInFlightKeys.remove(key)) {
+            dispatchQueuedKeys();
+        }
+    }
+
+    /**
+     * Apply a value of the joined child data to this array.
+     */
+    private void onDataArrived(DataSnapshot snapshot, DataRefListener listener) {
+        String key = snapshot.getKey();
+        int index = listener.currentIndex = returnOrFindIndexForKey(listener.currentIndex, key);
+        boolean wasPending = mKeysWithPendingUpdate.remove(key);
+        boolean isChanged = true;
+
+        if (snapshot.getValue() != null) {
+            if (isKeyAtIndex(key, index)) {
+                if (isSameData(mDataSnapshots.get(index), snapshot)) {
+                    // Delivered again after re-attaching, don't rebind the item
+                    isChanged = false;
+                } else {
+                    // We already know about this data, just update it
+                    mDataSnapshots.set(index, snapshot);
+                    notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1);
+                }
+            } else {
+                // We don't already know about this data, add it
+                mDataSnapshots.add(index, snapshot);
+                setHasData(key, true);
+                notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
+            }
+        } else {
+            if (isKeyAtIndex(key, index)) {
+                // This data has disappeared, remove it
+                mDataSnapshots.remove(index);
+                setHasData(key, false);
+                notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, index, -1);
+            } else {
+                // Data does not exist
+                isChanged = false;
+                if (wasPending) Log.w(TAG, "Key not found at ref: " + snapshot.getRef());
+            }
+        }
+
+        // Stop listening to data far away from what's on screen
+        if (!isInListenWindow(key)) {
+            detachListener(key);
+        }
+
+        // In theory, we would only want to pop the queue if this listener was just added
+        // i.e. `snapshot.value != null && isKeyAtIndex(...)`. However, if the developer makes a
+        // mistake and `snapshot.value == null`, we will never pop the queue and
+        // `notifyOnDataChanged()` will never be called. Thus, we pop the queue anytime
+        // an update is received.
+        if ((isChanged || wasPending) && mKeysWithPendingUpdate.isEmpty()) notifyOnDataChanged();
+    }
+
+    private static boolean isSameData(DataSnapshot a, DataSnapshot b) {
+        // The export format includes the priority, which getValue() leaves out
+        Object value = a.getValue(true);
+        return value == null ? b.getValue(true) == null : value.equals(b.getValue(true));
     }
 
     /**
      * A ValueEventListener attached to the joined child data.
      */
     private final class DataRefListener implements ValueEventListener {
+        private final String key;
         /** Cached index to skip searching for the current index on each update */
         private int currentIndex;
 
-        public DataRefListener(int index) {
+        public DataRefListener(String key, int index) {
+            this.key = key;
             currentIndex = index;
         }
 
         @Override
         public void onDataChange(DataSnapshot snapshot) {
-            String key = snapshot.getKey();
-            int index = currentIndex = returnOrFindIndexForKey(currentIndex, key);
-
-            if (snapshot.getValue() != null) {
-                if (isKeyAtIndex(key, index)) {
-                    // We already know about this data, just update it
-                    mDataSnapshots.set(index, snapshot);
-                    notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1);
-                } else {
-                    // We don't already know about this data, add it
-                    mDataSnapshots.add(index, snapshot);
-                    notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
-                }
+            if (mRefs.get(key) != this) return; // Detached while the event was in flight
+
+            if (mUndeliveredKeys.contains(key)) {
+                // Free up the slot right away so a slow key ahead of this one doesn't hold up
+                // fetching the keys behind it, only delivering them
+                mInFlightKeys.remove(key);
+                mArrivedSnapshots.put(key, snapshot);
+                deliverArrivedSnapshots();
+                dispatchQueuedKeys();
             } else {
-                if (isKeyAtIndex(key, index)) {
-                    // This data has disappeared, remove it
-                    mDataSnapshots.remove(index);
-                    notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, index, -1);
-                } else {
-                    // Data does not exist
-                    Log.w(TAG, "Key not found at ref: " + snapshot.getRef());
-                }
+                onDataArrived(snapshot, this);
             }
-
-            // In theory, we would only want to pop the queue if this listener was just added
-            // i.e. `snapshot.value != null && isKeyAtIndex(...)`. However, if the developer makes a
-            // mistake and `snapshot.value == null`, we will never pop the queue and
-            // `notifyOnDataChanged()` will never be called. Thus, we pop the queue anytime
-            // an update is received.
-            mKeysWithPendingUpdate.remove(key);
-            if (mKeysWithPendingUpdate.isEmpty()) notifyOnDataChanged();
         }
 
         @Override
         public void onCancelled(DatabaseError error) {
+            if (mRefs.get(key) == this) {
+                // No value will ever arrive, don't let this key block the ones after it
+                mRefs.remove(key);
+                mKeysWithPendingUpdate.remove(key);
+                mArrivedSnapshots.remove(key);
+                if (mUndeliveredKeys.remove(key)) {
+                    deliverArrivedSnapshots();
+                }
+                if (mInFlightKeys.remove(key)) {
+                    dispatchQueuedKeys();
+                }
+            }
+
             notifyOnError(error);
         }
     }
@@ -5,16 +5,26 @@ import android.arch.lifecycle.LifecycleOwner;
 import android.arch.lifecycle.OnLifecycleEvent;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.BaseAdapter;
+import android.widget.ListView;
 
+import com.firebase.ui.common.BatchChangeEventListener;
+import com.firebase.ui.common.ChangeEvent;
 import com.firebase.ui.common.ChangeEventType;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * This class is a generic way of backing an Android {@link android.widget.ListView} with a Firebase
  * location. It handles all of the child events at the given Firebase location. It marshals received
@@ -26,15 +36,32 @@ import com.google.firebase.database.DatabaseReference;
  * @param <T> The class type to use as a model for the data contained in the children of the given
  *            Firebase location
  */
-public abstract class FirebaseListAdapter<T> extends BaseAdapter implements FirebaseAdapter<T> {
+public abstract class FirebaseListAdapter<T> extends BaseAdapter
+        implements FirebaseAdapter<T>, BatchChangeEventListener {
     private static final String TAG = "FirebaseListAdapter";
 
     private final ObservableSnapshotArray<T> mSnapshots;
     protected final int mLayout;
 
+    private final boolean mIncrementalUpdatesEnabled;
+    /** Positions of changed items waiting for the next frame. */
+    private final Set<Integer> mChangedPositions = new HashSet<>();
+    private boolean mUpdateScheduled;
+    /** The list we were last asked to create views for, used to find rows to rebind. */
+    private WeakReference<AdapterView<?>> mParent;
+
+    private final Choreographer.FrameCallback mUpdateCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mUpdateScheduled = false;
+            applyPendingUpdates();
+        }
+    };
+
     public FirebaseListAdapter(@NonNull FirebaseListOptions<T> options) {
         mSnapshots = options.getSnapshots();
         mLayout = options.getLayout();
+        mIncrementalUpdatesEnabled = options.isIncrementalUpdatesEnabled();
 
         if (options.getOwner() != null) {
             options.getOwner().getLifecycle().addObserver(this);
@@ -53,6 +80,7 @@ public abstract class FirebaseListAdapter<T> extends BaseAdapter implements Fire
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void stopListening() {
         mSnapshots.removeChangeEventListener(this);
+        clearPendingUpdates();
         notifyDataSetChanged();
     }
 
@@ -66,9 +94,97 @@ public abstract class FirebaseListAdapter<T> extends BaseAdapter implements Fire
                                @NonNull DataSnapshot snapshot,
                                int newIndex,
                                int oldIndex) {
+        if (!mIncrementalUpdatesEnabled) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        if (type == ChangeEventType.CHANGED) {
+            mChangedPositions.add(newIndex);
+            scheduleUpdate();
+        } else {
+            onStructuralChange();
+        }
+    }
+
+    @Override
+    public void onChildrenChanged(@NonNull List<ChangeEvent> events) {
+        if (!mIncrementalUpdatesEnabled) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (ChangeEvent event : events) {
+            if (event.getType() != ChangeEventType.CHANGED) {
+                onStructuralChange();
+                return;
+            }
+        }
+
+        for (ChangeEvent event : events) {
+            for (int i = 0; i < event.getCount(); i++) {
+                mChangedPositions.add(event.getIndex() + i);
+            }
+        }
+        scheduleUpdate();
+    }
+
+    /**
+     * The count and positions changed, which the list must hear about before it next lays out.
+     * Pending rebinds are dropped since their positions are stale and every row is rebound anyway.
+     */
+    private void onStructuralChange() {
+        clearPendingUpdates();
         notifyDataSetChanged();
     }
 
+    private void scheduleUpdate() {
+        if (!mUpdateScheduled) {
+            Choreographer.getInstance().postFrameCallback(mUpdateCallback);
+            mUpdateScheduled = true;
+        }
+    }
+
+    private void applyPendingUpdates() {
+        AdapterView<?> parent = mParent == null ? null : mParent.get();
+        if (parent == null || !rebindChangedRows(parent)) {
+            notifyDataSetChanged();
+        }
+        clearPendingUpdates();
+    }
+
+    /**
+     * Rebind the visible rows whose items changed. Rows which aren't visible will be bound with
+     * the new data when they're scrolled into view.
+     *
+     * @return false if the whole list should be invalidated instead
+     */
+    private boolean rebindChangedRows(AdapterView<?> parent) {
+        int childCount = parent.getChildCount();
+        if (mChangedPositions.size() > childCount) return false;
+
+        int firstPosition = parent.getFirstVisiblePosition();
+        if (parent instanceof ListView) {
+            firstPosition -= ((ListView) parent).getHeaderViewsCount();
+        }
+        for (int position : mChangedPositions) {
+            int childIndex = position - firstPosition;
+            if (childIndex < 0 || childIndex >= childCount) continue;
+
+            View child = parent.getChildAt(childIndex);
+            if (getView(position, child, parent) != child) return false;
+        }
+        return true;
+    }
+
+    private void clearPendingUpdates() {
+        if (mUpdateScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mUpdateCallback);
+            mUpdateScheduled = false;
+        }
+        mChangedPositions.clear();
+    }
+
     @Override
     public void onDataChanged() {
     }
@@ -87,28 +203,33 @@ public abstract class FirebaseListAdapter<T> extends BaseAdapter implements Fire
     @NonNull
     @Override
     public T getItem(int position) {
-        return mSnapshots.get(position);
+        return mSnapshots.getNotified(position);
     }
 
     @NonNull
     @Override
     public DatabaseReference getRef(int position) {
-        return mSnapshots.getSnapshot(position).getRef();
+        return mSnapshots.getNotifiedSnapshot(position).getRef();
     }
 
     @Override
     public int getCount() {
-        return mSnapshots.size();
+        return mSnapshots.getNotifiedSize();
     }
 
     @Override
     public long getItemId(int i) {
         // http://stackoverflow.com/questions/5100071/whats-the-purpose-of-item-ids-in-android-listview-adapter
-        return mSnapshots.getSnapshot(i).getKey().hashCode();
+        return mSnapshots.getNotifiedStableId(i);
     }
 
     @Override
     public View getView(int position, View view, ViewGroup viewGroup) {
+        if (mIncrementalUpdatesEnabled && viewGroup instanceof AdapterView
+                && (mParent == null || mParent.get() != viewGroup)) {
+            mParent = new WeakReference<AdapterView<?>>((AdapterView<?>) viewGroup);
+        }
+
         if (view == null) {
             view = LayoutInflater.from(viewGroup.getContext()).inflate(mLayout, viewGroup, false);
         }
@@ -5,6 +5,7 @@ import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.firebase.ui.common.SnapshotArrayRegistry;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 
@@ -20,17 +21,22 @@ public final class FirebaseListOptions<T> {
 
     private static final String ERR_SNAPSHOTS_SET = "Snapshot array already set. " +
             "Call only one of setSnapshotArray, setQuery, or setIndexedQuery.";
+    private static final String ERR_NOT_INDEXED = "Fetch limits only apply to indexed queries. " +
+            "Call setIndexedQuery.";
 
     private final ObservableSnapshotArray<T> mSnapshots;
     private final @LayoutRes int mLayout;
     private final LifecycleOwner mOwner;
+    private final boolean mIncrementalUpdatesEnabled;
 
     private FirebaseListOptions(ObservableSnapshotArray<T> snapshots,
                                 @LayoutRes int layout,
-                                LifecycleOwner owner) {
+                                LifecycleOwner owner,
+                                boolean incrementalUpdatesEnabled) {
         mSnapshots = snapshots;
         mLayout = layout;
         mOwner = owner;
+        mIncrementalUpdatesEnabled = incrementalUpdatesEnabled;
     }
 
     /**
@@ -57,6 +63,13 @@ public final class FirebaseListOptions<T> {
         return mOwner;
     }
 
+    /**
+     * Whether the adapter coalesces changes within a frame and rebinds only affected rows.
+     */
+    public boolean isIncrementalUpdatesEnabled() {
+        return mIncrementalUpdatesEnabled;
+    }
+
     /**
      * Builder for {@link FirebaseListOptions}.
      *
@@ -67,6 +80,8 @@ public final class FirebaseListOptions<T> {
         private ObservableSnapshotArray<T> mSnapshots;
         private @LayoutRes Integer mLayout;
         private LifecycleOwner mOwner;
+        private boolean mIncrementalUpdatesEnabled;
+        private Integer mMaxConcurrentFetches;
 
         /**
          * Directly set the {@link ObservableSnapshotArray} to observe.
@@ -103,6 +118,37 @@ public final class FirebaseListOptions<T> {
             return setQuery(query, new ClassSnapshotParser<>(modelClass));
         }
 
+        /**
+         * Like {@link #setQuery(Query, SnapshotParser)}, but share the snapshot array with every
+         * other adapter built from an equal query and parser through the {@link
+         * SnapshotArrayRegistry}. Shared adapters hold a single copy of the data and a single
+         * server listener, which is kept alive for a while after the last adapter stops listening.
+         * <p>
+         * Queries are compared with {@code equals()}: pass the same {@link Query} instance or a
+         * {@link DatabaseReference} to the same location. Parsers need to be equal as well, a
+         * {@link ClassSnapshotParser} is equal to another one for the same class. Settings applied
+         * to the array, such as the cache policy, are shared too.
+         * <p>
+         * Do not call this method after calling {@link #setSnapshotArray(ObservableSnapshotArray)}.
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull SnapshotParser<T> parser) {
+            assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+
+            mSnapshots = FirebaseArray.obtainShared(query, parser);
+            return this;
+        }
+
+        /**
+         * Like {@link #setQuery(Query, Class)}, but share the snapshot array with other adapters.
+         *
+         * @see #setSharedQuery(Query, SnapshotParser)
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull Class<T> modelClass) {
+            return setSharedQuery(query, new ClassSnapshotParser<>(modelClass));
+        }
+
         /**
          * Set an indexed query to listen on and a {@link SnapshotParser} to parse data snapshots.
          * The keyQuery is used to find a list of IDs, which are then queried at the dataRef.
@@ -133,6 +179,22 @@ public final class FirebaseListOptions<T> {
             return setIndexedQuery(keyQuery, dataRef, new ClassSnapshotParser<>(modelClass));
         }
 
+        /**
+         * Limit how many children of the {@code dataRef} of an indexed query are fetched at once.
+         * By default, every key is fetched as soon as it is found.
+         *
+         * @see FirebaseIndexArray#setMaxConcurrentFetches(int)
+         */
+        @NonNull
+        public Builder<T> setMaxConcurrentFetches(int maxConcurrentFetches) {
+            if (maxConcurrentFetches <= 0) {
+                throw new IllegalArgumentException("Max concurrent fetches must be positive.");
+            }
+
+            mMaxConcurrentFetches = maxConcurrentFetches;
+            return this;
+        }
+
         /**
          * Set the resource ID for the item layout.
          */
@@ -152,6 +214,21 @@ public final class FirebaseListOptions<T> {
             return this;
         }
 
+        /**
+         * Coalesce changes to existing items within a frame. When there are no more of them than
+         * visible rows, the affected rows are rebound in place instead of invalidating the whole
+         * list. Additions, removals, and moves still invalidate the list right away, since the
+         * list must not see the item count change before it is notified. Disabled by default.
+         * <p>
+         * This mode relies on {@link android.view.Choreographer} so the adapter must only be used
+         * from the main thread.
+         */
+        @NonNull
+        public Builder<T> setIncrementalUpdatesEnabled(boolean enabled) {
+            mIncrementalUpdatesEnabled = enabled;
+            return this;
+        }
+
         /**
          * Build a {@link FirebaseListOptions} from the provided arguments.
          */
@@ -161,8 +238,15 @@ public final class FirebaseListOptions<T> {
                     "Call setQuery or setSnapshotArray.");
             assertNonNull(mLayout, "Layout cannot be null. " +
                     "Call setLayout.");
-
-            return new FirebaseListOptions<>(mSnapshots, mLayout, mOwner);
+            if (mMaxConcurrentFetches != null) {
+                if (!(mSnapshots instanceof FirebaseIndexArray)) {
+                    throw new IllegalStateException(ERR_NOT_INDEXED);
+                }
+                ((FirebaseIndexArray<T>) mSnapshots).setMaxConcurrentFetches(mMaxConcurrentFetches);
+            }
+
+            return new FirebaseListOptions<>(
+                    mSnapshots, mLayout, mOwner, mIncrementalUpdatesEnabled);
         }
 
     }
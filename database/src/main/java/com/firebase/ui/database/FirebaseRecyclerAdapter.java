@@ -4,14 +4,23 @@ import android.arch.lifecycle.Lifecycle;
 import android.arch.lifecycle.LifecycleOwner;
 import android.arch.lifecycle.OnLifecycleEvent;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 
+import com.firebase.ui.common.BatchChangeEventListener;
+import com.firebase.ui.common.ChangeEvent;
 import com.firebase.ui.common.ChangeEventType;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class is a generic way of backing a {@link RecyclerView} with a Firebase location. It
  * handles all of the child events at the given Firebase location and marshals received data into
@@ -25,10 +34,69 @@ import com.google.firebase.database.DatabaseReference;
  *             is shown for each object.
  */
 public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHolder>
-        extends RecyclerView.Adapter<VH> implements FirebaseAdapter<T> {
+        extends RecyclerView.Adapter<VH>
+        implements FirebaseAdapter<T>, BatchChangeEventListener {
     private static final String TAG = "FirebaseRecyclerAdapter";
 
     private final ObservableSnapshotArray<T> mSnapshots;
+    @Nullable private final SnapshotDiskCache<T> mDiskCache;
+
+    /**
+     * Items read from the disk cache, shown until the snapshot array has data.
+     */
+    private List<SnapshotDiskCache.Entry<T>> mCachedItems = Collections.emptyList();
+
+    /**
+     * Swaps cached items for real ones and keeps the disk cache up to date. Kept apart from the
+     * adapter's own callbacks, which are often overridden without calling through, and registered
+     * before the adapter so that the swap is done by the time {@link #onDataChanged()} runs.
+     */
+    private final ChangeEventListener mDiskCacheListener = new ChangeEventListener() {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {}
+
+        @Override
+        public void onDataChanged() {
+            if (!mCachedItems.isEmpty()) {
+                if (mSnapshots.isListening(FirebaseRecyclerAdapter.this)) {
+                    replaceCachedItems();
+                } else {
+                    // The array already had data, which the adapter is about to be caught up with
+                    int count = mCachedItems.size();
+                    mCachedItems = Collections.emptyList();
+                    notifyItemRangeRemoved(0, count);
+                }
+            }
+            writeDiskCache();
+        }
+
+        @Override
+        public void onError(@NonNull DatabaseError error) {}
+    };
+
+    /**
+     * Reports the visible range to the backing snapshot array as the list scrolls.
+     */
+    private final RecyclerView.OnScrollListener mVisibleRangeListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    RecyclerView.LayoutManager manager = recyclerView.getLayoutManager();
+                    if (!(manager instanceof LinearLayoutManager)) {
+                        return;
+                    }
+
+                    LinearLayoutManager linearManager = (LinearLayoutManager) manager;
+                    int first = linearManager.findFirstVisibleItemPosition();
+                    if (first != RecyclerView.NO_POSITION) {
+                        mSnapshots.setVisibleRange(
+                                first, linearManager.findLastVisibleItemPosition());
+                    }
+                }
+            };
 
     /**
      * Initialize a {@link RecyclerView.Adapter} that listens to a Firebase query. See
@@ -36,6 +104,7 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
      */
     public FirebaseRecyclerAdapter(@NonNull FirebaseRecyclerOptions<T> options) {
         mSnapshots = options.getSnapshots();
+        mDiskCache = options.getDiskCache();
 
         if (options.getOwner() != null) {
             options.getOwner().getLifecycle().addObserver(this);
@@ -46,6 +115,16 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void startListening() {
         if (!mSnapshots.isListening(this)) {
+            if (mDiskCache != null) {
+                mCachedItems = mDiskCache.read();
+                if (!mCachedItems.isEmpty()) {
+                    notifyItemRangeInserted(0, mCachedItems.size());
+                }
+            }
+
+            if (mDiskCache != null) {
+                mSnapshots.addChangeEventListener(mDiskCacheListener);
+            }
             mSnapshots.addChangeEventListener(this);
         }
     }
@@ -53,10 +132,20 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
     @Override
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void stopListening() {
+        mSnapshots.removeChangeEventListener(mDiskCacheListener);
         mSnapshots.removeChangeEventListener(this);
+        mCachedItems = Collections.emptyList();
         notifyDataSetChanged();
     }
 
+    /**
+     * @return true if the items shown come from the {@link SnapshotDiskCache} because no data has
+     * arrived yet. Cached items have no {@link DatabaseReference}.
+     */
+    public boolean isShowingCachedItems() {
+        return !mCachedItems.isEmpty();
+    }
+
     @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
     void cleanup(LifecycleOwner source) {
         source.getLifecycle().removeObserver(this);
@@ -67,6 +156,11 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
                                @NonNull DataSnapshot snapshot,
                                int newIndex,
                                int oldIndex) {
+        if (isShowingCachedItems()) {
+            // Applied all at once when the cached items are replaced
+            return;
+        }
+
         switch (type) {
             case ADDED:
                 notifyItemInserted(newIndex);
@@ -85,6 +179,32 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
         }
     }
 
+    @Override
+    public void onChildrenChanged(@NonNull List<ChangeEvent> events) {
+        if (isShowingCachedItems()) {
+            return;
+        }
+
+        for (ChangeEvent event : events) {
+            switch (event.getType()) {
+                case ADDED:
+                    notifyItemRangeInserted(event.getIndex(), event.getCount());
+                    break;
+                case CHANGED:
+                    notifyItemRangeChanged(event.getIndex(), event.getCount());
+                    break;
+                case REMOVED:
+                    notifyItemRangeRemoved(event.getIndex(), event.getCount());
+                    break;
+                case MOVED:
+                    notifyItemMoved(event.getOldIndex(), event.getIndex());
+                    break;
+                default:
+                    throw new IllegalStateException("Incomplete case statement");
+            }
+        }
+    }
+
     @Override
     public void onDataChanged() {
     }
@@ -103,18 +223,56 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
     @NonNull
     @Override
     public T getItem(int position) {
-        return mSnapshots.get(position);
+        if (isShowingCachedItems()) {
+            return mCachedItems.get(position).getModel();
+        }
+        return mSnapshots.getNotified(position);
     }
 
+    /**
+     * @throws IllegalStateException if {@link #isShowingCachedItems()}.
+     */
     @NonNull
     @Override
     public DatabaseReference getRef(int position) {
-        return mSnapshots.getSnapshot(position).getRef();
+        if (isShowingCachedItems()) {
+            throw new IllegalStateException("Cached items have no reference.");
+        }
+        return mSnapshots.getNotifiedSnapshot(position).getRef();
     }
 
     @Override
     public int getItemCount() {
-        return mSnapshots.isListening(this) ? mSnapshots.size() : 0;
+        if (isShowingCachedItems()) {
+            return mCachedItems.size();
+        }
+        return mSnapshots.isListening(this) ? mSnapshots.getNotifiedSize() : 0;
+    }
+
+    /**
+     * Returns the stable ID of the item, see {@link ObservableSnapshotArray#getStableId(int)}.
+     * Call {@link #setHasStableIds(boolean)} to let the {@link RecyclerView} reuse view holders
+     * across moves and resyncs.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (isShowingCachedItems()) {
+            // Cached items keep their views when the real ones arrive
+            return mSnapshots.getStableIdForKey(mCachedItems.get(position).getKey());
+        }
+        return mSnapshots.getNotifiedStableId(position);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.addOnScrollListener(mVisibleRangeListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnScrollListener(mVisibleRangeListener);
     }
 
     @Override
@@ -122,6 +280,54 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
         onBindViewHolder(holder, position, getItem(position));
     }
 
+    /**
+     * Swap the cached items for the real ones, only notifying the differences.
+     */
+    private void replaceCachedItems() {
+        final List<SnapshotDiskCache.Entry<T>> cached = mCachedItems;
+        mCachedItems = Collections.emptyList();
+
+        // Only the start of the list can match cached items, the rest is inserted after them
+        final int compared = Math.min(cached.size(), mSnapshots.size());
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return cached.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return compared;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return cached.get(oldPosition).getKey()
+                        .equals(mSnapshots.getSnapshot(newPosition).getKey());
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return cached.get(oldPosition).getModel().equals(mSnapshots.get(newPosition));
+            }
+        }, false).dispatchUpdatesTo(this);
+
+        if (mSnapshots.size() > compared) {
+            notifyItemRangeInserted(compared, mSnapshots.size() - compared);
+        }
+    }
+
+    private void writeDiskCache() {
+        int count = Math.min(mDiskCache.getMaxItems(), mSnapshots.size());
+        List<String> keys = new ArrayList<>(count);
+        List<T> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(mSnapshots.getSnapshot(i).getKey());
+            models.add(mSnapshots.get(i));
+        }
+        mDiskCache.write(keys, models);
+    }
+
     /**
      * @param model the model object containing the data that should be used to populate the view.
      * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
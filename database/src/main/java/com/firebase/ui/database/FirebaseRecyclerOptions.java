@@ -4,9 +4,13 @@ import android.arch.lifecycle.LifecycleOwner;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.firebase.ui.common.CachePolicy;
+import com.firebase.ui.common.SnapshotArrayRegistry;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 
+import java.util.concurrent.Executor;
+
 import static com.firebase.ui.common.Preconditions.assertNonNull;
 import static com.firebase.ui.common.Preconditions.assertNull;
 
@@ -21,14 +25,19 @@ public final class FirebaseRecyclerOptions<T> {
             "Call only one of setSnapshotArray, setQuery, or setIndexedQuery.";
     private static final String ERR_SNAPSHOTS_NULL = "Snapshot array cannot be null. " +
             "Call one of setSnapshotArray, setQuery, or setIndexedQuery.";
+    private static final String ERR_NOT_INDEXED = "Fetch limits only apply to indexed queries. " +
+            "Call setIndexedQuery.";
 
     private final ObservableSnapshotArray<T> mSnapshots;
     private final LifecycleOwner mOwner;
+    private final SnapshotDiskCache<T> mDiskCache;
 
     private FirebaseRecyclerOptions(ObservableSnapshotArray<T> snapshots,
-                                    @Nullable LifecycleOwner owner) {
+                                    @Nullable LifecycleOwner owner,
+                                    @Nullable SnapshotDiskCache<T> diskCache) {
         mSnapshots = snapshots;
         mOwner = owner;
+        mDiskCache = diskCache;
     }
 
     /**
@@ -48,6 +57,14 @@ public final class FirebaseRecyclerOptions<T> {
         return mOwner;
     }
 
+    /**
+     * Get the (optional) cache of items shown before the first data arrives.
+     */
+    @Nullable
+    public SnapshotDiskCache<T> getDiskCache() {
+        return mDiskCache;
+    }
+
     /**
      * Builder for a {@link FirebaseRecyclerOptions}.
      *
@@ -57,6 +74,13 @@ public final class FirebaseRecyclerOptions<T> {
 
         private ObservableSnapshotArray<T> mSnapshots;
         private LifecycleOwner mOwner;
+        private Executor mParseExecutor;
+        private CachePolicy<T> mCachePolicy;
+        private Long mLingerMillis;
+        private SnapshotDiskCache<T> mDiskCache;
+        private boolean mBatchingEnabled;
+        private Integer mMaxConcurrentFetches;
+        private Integer mListenMargin;
 
         /**
          * Directly set the {@link ObservableSnapshotArray} to be listened to.
@@ -98,6 +122,37 @@ public final class FirebaseRecyclerOptions<T> {
         }
 
 
+        /**
+         * Like {@link #setQuery(Query, SnapshotParser)}, but share the snapshot array with every
+         * other adapter built from an equal query and parser through the {@link
+         * SnapshotArrayRegistry}. Shared adapters hold a single copy of the data and a single
+         * server listener, which is kept alive for a while after the last adapter stops listening.
+         * <p>
+         * Queries are compared with {@code equals()}: pass the same {@link Query} instance or a
+         * {@link DatabaseReference} to the same location. Parsers need to be equal as well, a
+         * {@link ClassSnapshotParser} is equal to another one for the same class. Settings applied
+         * to the array, such as the cache policy, are shared too.
+         * <p>
+         * Do not call this method after calling {@link #setSnapshotArray(ObservableSnapshotArray)}.
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull SnapshotParser<T> parser) {
+            assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+
+            mSnapshots = FirebaseArray.obtainShared(query, parser);
+            return this;
+        }
+
+        /**
+         * Like {@link #setQuery(Query, Class)}, but share the snapshot array with other adapters.
+         *
+         * @see #setSharedQuery(Query, SnapshotParser)
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull Class<T> modelClass) {
+            return setSharedQuery(query, new ClassSnapshotParser<>(modelClass));
+        }
+
         /**
          * Set an indexed Firebase query to listen to, along with a {@link SnapshotParser} to parse
          * snapshots into model objects. Keys are identified by the {@code keyQuery} and then data
@@ -129,6 +184,34 @@ public final class FirebaseRecyclerOptions<T> {
             return setIndexedQuery(keyQuery, dataRef, new ClassSnapshotParser<>(modelClass));
         }
 
+        /**
+         * Limit how many children of the {@code dataRef} of an indexed query are fetched at once.
+         * By default, every key is fetched as soon as it is found.
+         *
+         * @see FirebaseIndexArray#setMaxConcurrentFetches(int)
+         */
+        @NonNull
+        public Builder<T> setMaxConcurrentFetches(int maxConcurrentFetches) {
+            if (maxConcurrentFetches <= 0) {
+                throw new IllegalArgumentException("Max concurrent fetches must be positive.");
+            }
+
+            mMaxConcurrentFetches = maxConcurrentFetches;
+            return this;
+        }
+
+        /**
+         * Only keep children of the {@code dataRef} of an indexed query live within {@code margin}
+         * positions of the items on screen. By default, all of them stay live.
+         *
+         * @see FirebaseIndexArray#setListenMargin(int)
+         */
+        @NonNull
+        public Builder<T> setListenMargin(int margin) {
+            mListenMargin = margin;
+            return this;
+        }
+
         /**
          * Set the (optional) {@link LifecycleOwner}. Listens will start and stop after the
          * appropriate lifecycle events.
@@ -139,14 +222,100 @@ public final class FirebaseRecyclerOptions<T> {
             return this;
         }
 
+        /**
+         * Set an optional {@link Executor} used to parse snapshots into model objects in the
+         * background as soon as they arrive, instead of on the main thread while binding. The
+         * {@link SnapshotParser} must be thread safe when this is set.
+         *
+         * @see ObservableSnapshotArray#setParseExecutor(Executor)
+         */
+        @NonNull
+        public Builder<T> setParseExecutor(@Nullable Executor executor) {
+            mParseExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set an optional {@link CachePolicy} for parsed model objects. By default, up to 100
+         * models are cached.
+         *
+         * @see ObservableSnapshotArray#getCacheStats()
+         */
+        @NonNull
+        public Builder<T> setCachePolicy(@NonNull CachePolicy<T> policy) {
+            mCachePolicy = policy;
+            return this;
+        }
+
+        /**
+         * Set an optional grace period during which the snapshot array keeps its data and server
+         * listener after the adapter stops listening, so that restarting the adapter, for example
+         * after a rotation, doesn't reload everything.
+         *
+         * @see ObservableSnapshotArray#setLingerMillis(long)
+         */
+        @NonNull
+        public Builder<T> setLingerMillis(long millis) {
+            mLingerMillis = millis;
+            return this;
+        }
+
+        /**
+         * Set an optional {@link SnapshotDiskCache} holding the first items of the list. The
+         * adapter then shows the cached items as soon as it starts listening, replaces them with
+         * the real ones once the first data arrives, and keeps the cache up to date afterwards.
+         */
+        @NonNull
+        public Builder<T> setDiskCache(@Nullable SnapshotDiskCache<T> cache) {
+            mDiskCache = cache;
+            return this;
+        }
+
+        /**
+         * Deliver changes to the adapter in merged ranges once per frame instead of one by one,
+         * which avoids redundant layout passes when many items change at once.
+         *
+         * @see ObservableSnapshotArray#setBatchingEnabled(boolean)
+         */
+        @NonNull
+        public Builder<T> setBatchingEnabled(boolean enabled) {
+            mBatchingEnabled = enabled;
+            return this;
+        }
+
         /**
          * Build a {@link FirebaseRecyclerOptions} from the provided arguments.
          */
         @NonNull
         public FirebaseRecyclerOptions<T> build() {
             assertNonNull(mSnapshots, ERR_SNAPSHOTS_NULL);
+            if (mParseExecutor != null) {
+                mSnapshots.setParseExecutor(mParseExecutor);
+            }
+            if (mCachePolicy != null) {
+                mSnapshots.setCachePolicy(mCachePolicy);
+            }
+            if (mLingerMillis != null) {
+                mSnapshots.setLingerMillis(mLingerMillis);
+            }
+            if (mBatchingEnabled) {
+                mSnapshots.setBatchingEnabled(true);
+            }
+            if (mMaxConcurrentFetches != null || mListenMargin != null) {
+                if (!(mSnapshots instanceof FirebaseIndexArray)) {
+                    throw new IllegalStateException(ERR_NOT_INDEXED);
+                }
+
+                FirebaseIndexArray<T> array = (FirebaseIndexArray<T>) mSnapshots;
+                if (mMaxConcurrentFetches != null) {
+                    array.setMaxConcurrentFetches(mMaxConcurrentFetches);
+                }
+                if (mListenMargin != null) {
+                    array.setListenMargin(mListenMargin);
+                }
+            }
 
-            return new FirebaseRecyclerOptions<>(mSnapshots, mOwner);
+            return new FirebaseRecyclerOptions<>(mSnapshots, mOwner, mDiskCache);
         }
     }
 
@@ -0,0 +1,370 @@
+package com.firebase.ui.database;
+
+import android.os.AsyncTask;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.RestrictTo;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.firebase.ui.common.Preconditions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small on-disk copy of the first items of a list, so that a {@link FirebaseRecyclerAdapter}
+ * can show them as soon as it starts, before the database delivers any data. This works whether or
+ * not database persistence is enabled.
+ * <p>
+ * Items are stored as their key and their model, serialized with a {@link Codec}. Models are only
+ * serialized again when they change, and the file is replaced atomically in the background.
+ *
+ * @param <T> the model class.
+ * @see FirebaseRecyclerOptions.Builder#setDiskCache(SnapshotDiskCache)
+ */
+public class SnapshotDiskCache<T> {
+    private static final String TAG = "SnapshotDiskCache";
+
+    private static final int MAGIC = 0x46554943;
+    private static final int VERSION = 1;
+    /** The smallest entry: the lengths of an empty key and model. */
+    private static final int MIN_ENTRY_SIZE = 8;
+
+    /**
+     * Serializes models to and from the cache file.
+     *
+     * @param <T> the model class.
+     */
+    public interface Codec<T> {
+        void encode(@NonNull T model, @NonNull DataOutput out) throws IOException;
+
+        @NonNull
+        T decode(@NonNull DataInput in) throws IOException;
+    }
+
+    /**
+     * An item read from the cache.
+     *
+     * @param <T> the model class.
+     */
+    public static final class Entry<T> {
+        private final String mKey;
+        private final T mModel;
+
+        public Entry(@NonNull String key, @NonNull T model) {
+            mKey = key;
+            mModel = model;
+        }
+
+        @NonNull
+        public String getKey() {
+            return mKey;
+        }
+
+        @NonNull
+        public T getModel() {
+            return mModel;
+        }
+    }
+
+    private final AtomicFile mFile;
+    private final int mMaxItems;
+    private final Codec<T> mCodec;
+    private final Executor mExecutor;
+
+    /** Serialized models of the last written items, reused while the model doesn't change. */
+    private Map<String, Encoded<T>> mEncoded = new HashMap<>();
+    private List<String> mWrittenKeys = Collections.emptyList();
+    /**
+     * The contents last passed to the writer, which are at least as new as the file. Reads use
+     * them instead of waiting for a write in progress.
+     */
+    private volatile byte[] mLastContents;
+
+    private final Lock mWriteLock = new ReentrantLock();
+    private final AtomicReference<byte[]> mPendingWrite = new AtomicReference<>();
+    private final AtomicBoolean mWriteScheduled = new AtomicBoolean();
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mWriteScheduled.set(false);
+            mWriteLock.lock();
+            try {
+                // Taken under the lock so that an older write never lands after a newer one
+                byte[] contents = mPendingWrite.getAndSet(null);
+                if (contents != null) {
+                    writeFile(contents);
+                }
+            } finally {
+                mWriteLock.unlock();
+            }
+        }
+    };
+
+    /**
+     * @param file     the file to store items in. Use a different file for each list.
+     * @param maxItems the number of items from the start of the list to store, usually a few
+     *                 screens worth.
+     */
+    public SnapshotDiskCache(@NonNull File file, int maxItems, @NonNull Codec<T> codec) {
+        this(file, maxItems, codec, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public SnapshotDiskCache(@NonNull File file,
+                             int maxItems,
+                             @NonNull Codec<T> codec,
+                             @NonNull Executor executor) {
+        if (maxItems <= 0) {
+            throw new IllegalArgumentException("maxItems must be positive: " + maxItems);
+        }
+
+        mFile = new AtomicFile(Preconditions.checkNotNull(file));
+        mMaxItems = maxItems;
+        mCodec = Preconditions.checkNotNull(codec);
+        mExecutor = Preconditions.checkNotNull(executor);
+    }
+
+    /**
+     * @return the number of items stored.
+     */
+    public int getMaxItems() {
+        return mMaxItems;
+    }
+
+    /**
+     * Read the stored items. The file is memory mapped rather than copied, and items written by
+     * this instance are read from memory without waiting for the file to be written, so this is
+     * fast enough to call on the main thread before the first frame.
+     *
+     * @return the stored items, or an empty list if there are none or they can't be read.
+     */
+    @NonNull
+    public List<Entry<T>> read() {
+        byte[] contents = mLastContents;
+        if (contents != null) {
+            try {
+                return decode(ByteBuffer.wrap(contents));
+            } catch (IOException | RuntimeException e) {
+                // Written by this class, so only a broken codec gets here
+                Log.w(TAG, "Discarding unreadable cache", e);
+                return Collections.emptyList();
+            }
+        }
+
+        if (!mWriteLock.tryLock()) {
+            // Only a write started before clear() can hold the lock here, never wait for it
+            return Collections.emptyList();
+        }
+        FileInputStream stream = null;
+        try {
+            stream = mFile.openRead();
+            FileChannel channel = stream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return decode(buffer);
+        } catch (FileNotFoundException e) {
+            return Collections.emptyList();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable cache", e);
+            mFile.delete();
+            return Collections.emptyList();
+        } finally {
+            closeQuietly(stream);
+            mWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Store the first items of the list, replacing the previous ones. Models which didn't change
+     * since the last call are not serialized again, and nothing is written if no item changed.
+     *
+     * @param keys   the keys of the items, in order.
+     * @param models the models of the items, in the same order.
+     */
+    @MainThread
+    public void write(@NonNull List<String> keys, @NonNull List<T> models) {
+        int count = Math.min(mMaxItems, keys.size());
+        Map<String, Encoded<T>> encoded = new HashMap<>(count * 2);
+        boolean changed = count != mWrittenKeys.size();
+        for (int i = 0; i < count; i++) {
+            String key = keys.get(i);
+            T model = models.get(i);
+
+            Encoded<T> previous = mEncoded.get(key);
+            if (previous != null && previous.mModel == model) {
+                encoded.put(key, previous);
+            } else {
+                encoded.put(key, new Encoded<>(model, encode(model)));
+                changed = true;
+            }
+            if (!changed && !key.equals(mWrittenKeys.get(i))) {
+                changed = true;
+            }
+        }
+
+        mEncoded = encoded;
+        if (!changed) {
+            return;
+        }
+        mWrittenKeys = new ArrayList<>(keys.subList(0, count));
+
+        byte[] contents = getContents(mWrittenKeys, encoded);
+        mLastContents = contents;
+        mPendingWrite.set(contents);
+        if (mWriteScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(mWriteRunnable);
+        }
+    }
+
+    /**
+     * Delete the stored items.
+     */
+    @MainThread
+    public void clear() {
+        mEncoded = new HashMap<>();
+        mWrittenKeys = Collections.emptyList();
+        mLastContents = null;
+        mWriteLock.lock();
+        try {
+            mPendingWrite.set(null);
+            mFile.delete();
+        } finally {
+            mWriteLock.unlock();
+        }
+    }
+
+    @NonNull
+    private List<Entry<T>> decode(@NonNull ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a cache file");
+        }
+
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / MIN_ENTRY_SIZE) {
+            throw new IOException("Invalid item count: " + count);
+        }
+
+        // The file may hold more items if maxItems was lowered since it was written
+        count = Math.min(count, mMaxItems);
+        List<Entry<T>> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] key = readBytes(buffer);
+            byte[] model = readBytes(buffer);
+
+            entries.add(new Entry<>(new String(key, "UTF-8"),
+                    mCodec.decode(new DataInputStream(new ByteArrayInputStream(model)))));
+        }
+        return entries;
+    }
+
+    /**
+     * Read a length prefixed array, checking the length so that a corrupt file can't make this
+     * allocate more than the file holds.
+     */
+    @NonNull
+    private static byte[] readBytes(@NonNull ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @NonNull
+    private byte[] encode(@NonNull T model) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            mCodec.encode(model, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // Writing to memory doesn't fail, only the codec can
+            throw new IllegalStateException("Could not encode " + model, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @NonNull
+    private static <T> byte[] getContents(@NonNull List<String> keys,
+                                          @NonNull Map<String, Encoded<T>> encoded) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                byte[] keyBytes = key.getBytes("UTF-8");
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+
+                byte[] model = encoded.get(key).mBytes;
+                out.writeInt(model.length);
+                out.write(model);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeFile(@NonNull byte[] contents) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            stream.write(contents);
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write cache", e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+
+    private static void closeQuietly(FileInputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // Nothing was written
+        }
+    }
+
+    private static final class Encoded<T> {
+        final T mModel;
+        final byte[] mBytes;
+
+        Encoded(T model, byte[] bytes) {
+            mModel = model;
+            mBytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.firebase.ui.database.paging;
+
+import android.support.annotation.RestrictTo;
+import android.support.v7.util.DiffUtil;
+
+import com.firebase.ui.database.SnapshotParser;
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * Default diff callback implementation for Realtime Database snapshots.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<DataSnapshot> {
+
+    private final SnapshotParser<T> mParser;
+
+    public DefaultSnapshotDiffCallback(SnapshotParser<T> parser) {
+        mParser = parser;
+    }
+
+    @Override
+    public boolean areItemsTheSame(DataSnapshot oldItem, DataSnapshot newItem) {
+        return oldItem.getKey().equals(newItem.getKey());
+    }
+
+    @Override
+    public boolean areContentsTheSame(DataSnapshot oldItem, DataSnapshot newItem) {
+        T oldModel = mParser.parseSnapshot(oldItem);
+        T newModel = mParser.parseSnapshot(newItem);
+
+        return oldModel.equals(newModel);
+    }
+}
@@ -0,0 +1,262 @@
+package com.firebase.ui.database.paging;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.paging.DataSource;
+import android.arch.paging.PageKeyedDataSource;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.util.Log;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data source to power a {@link FirebasePagingAdapter}. Pages are keyed by the last child of the
+ * page before them, and each page is loaded with a single value event starting at that child.
+ *
+ * Note: although loadInitial, loadBefore, and loadAfter are not called on the main thread by the
+ *       paging library, we treat them as if they were so that we can facilitate retry without
+ *       managing our own thread pool or requiring the user to pass us an executor.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class FirebaseDataSource extends PageKeyedDataSource<DataSnapshot, DataSnapshot> {
+
+    private static final String TAG = "FirebaseDataSource";
+
+    /** The largest magnitude up to which every long is exactly representable as a double. */
+    private static final long MAX_SAFE_INTEGER = 1L << 53;
+
+    public static class Factory extends DataSource.Factory<DataSnapshot, DataSnapshot> {
+
+        private final Query mQuery;
+        private final String mOrderByChild;
+
+        /**
+         * @see FirebaseDataSource#FirebaseDataSource(Query, String)
+         */
+        public Factory(@NonNull Query query, @Nullable String orderByChild) {
+            mQuery = query;
+            mOrderByChild = orderByChild;
+        }
+
+        @Override
+        public DataSource<DataSnapshot, DataSnapshot> create() {
+            return new FirebaseDataSource(mQuery, mOrderByChild);
+        }
+    }
+
+    private final MutableLiveData<LoadingState> mLoadingState = new MutableLiveData<>();
+
+    private final Query mBaseQuery;
+    private final String mOrderByChild;
+
+    private Runnable mRetryRunnable;
+
+    /**
+     * @param baseQuery    the query to page through, ordered by key or by {@code orderByChild}.
+     * @param orderByChild the child path {@code baseQuery} is ordered by, or null if it is ordered
+     *                     by key.
+     */
+    public FirebaseDataSource(@NonNull Query baseQuery, @Nullable String orderByChild) {
+        mBaseQuery = baseQuery;
+        mOrderByChild = orderByChild;
+    }
+
+    @Override
+    public void loadInitial(@NonNull final LoadInitialParams<DataSnapshot> params,
+                            @NonNull final LoadInitialCallback<DataSnapshot, DataSnapshot> callback) {
+
+        // Set initial loading state
+        mLoadingState.postValue(LoadingState.LOADING_INITIAL);
+
+        mBaseQuery.limitToFirst(params.requestedLoadSize)
+                .addListenerForSingleValueEvent(new PageListener(params.requestedLoadSize, null) {
+                    @Override
+                    protected void setResult(@NonNull List<DataSnapshot> data,
+                                             @Nullable DataSnapshot nextPage) {
+                        callback.onResult(data, null, nextPage);
+                    }
+
+                    @Override
+                    protected Runnable getRetryRunnable() {
+                        return getRetryLoadInitial(params, callback);
+                    }
+                });
+    }
+
+    @Override
+    public void loadBefore(@NonNull LoadParams<DataSnapshot> params,
+                           @NonNull LoadCallback<DataSnapshot, DataSnapshot> callback) {
+        // Ignored, since we only ever append to the initial load.
+    }
+
+    @Override
+    public void loadAfter(@NonNull final LoadParams<DataSnapshot> params,
+                          @NonNull final LoadCallback<DataSnapshot, DataSnapshot> callback) {
+        final DataSnapshot key = params.key;
+
+        // Set loading state
+        mLoadingState.postValue(LoadingState.LOADING_MORE);
+
+        // startAt() includes the last child of the previous page, so ask for one more
+        getPageQuery(key)
+                .limitToFirst(params.requestedLoadSize + 1)
+                .addListenerForSingleValueEvent(
+                        new PageListener(params.requestedLoadSize, key.getKey()) {
+                            @Override
+                            protected void setResult(@NonNull List<DataSnapshot> data,
+                                                     @Nullable DataSnapshot nextPage) {
+                                callback.onResult(data, nextPage);
+                            }
+
+                            @Override
+                            protected Runnable getRetryRunnable() {
+                                return getRetryLoadAfter(params, callback);
+                            }
+                        });
+    }
+
+    /**
+     * @return the base query, starting at {@code last}.
+     */
+    @NonNull
+    private Query getPageQuery(@NonNull DataSnapshot last) {
+        if (mOrderByChild == null) {
+            return mBaseQuery.startAt(last.getKey());
+        }
+
+        // Children with the same value are ordered by key
+        Object value = last.child(mOrderByChild).getValue();
+        if (value == null) {
+            return mBaseQuery.startAt((String) null, last.getKey());
+        } else if (value instanceof String) {
+            return mBaseQuery.startAt((String) value, last.getKey());
+        } else if (value instanceof Double) {
+            return mBaseQuery.startAt((Double) value, last.getKey());
+        } else if (value instanceof Long) {
+            // Queries only take doubles, which can't hold every long exactly
+            long number = (Long) value;
+            if (number > MAX_SAFE_INTEGER || number < -MAX_SAFE_INTEGER) {
+                throw new IllegalStateException("Cannot page past child " + last.getKey()
+                        + " since the value of " + mOrderByChild + " is too large to be"
+                        + " represented exactly in a query: " + number);
+            }
+            return mBaseQuery.startAt((double) number, last.getKey());
+        } else if (value instanceof Boolean) {
+            return mBaseQuery.startAt((Boolean) value, last.getKey());
+        } else {
+            throw new IllegalStateException("Cannot page past child " + last.getKey()
+                    + " since the value of " + mOrderByChild + " is not a primitive: " + value);
+        }
+    }
+
+    public LiveData<LoadingState> getLoadingState() {
+        return mLoadingState;
+    }
+
+    public void retry() {
+        LoadingState currentState = mLoadingState.getValue();
+        if (currentState != LoadingState.ERROR) {
+            Log.w(TAG, "retry() not valid when in state: " + currentState);
+            return;
+        }
+
+        if (mRetryRunnable == null) {
+            Log.w(TAG, "retry() called with no eligible retry runnable.");
+            return;
+        }
+
+        mRetryRunnable.run();
+    }
+
+    @NonNull
+    private Runnable getRetryLoadAfter(@NonNull final LoadParams<DataSnapshot> params,
+                                       @NonNull final LoadCallback<DataSnapshot, DataSnapshot> callback) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                loadAfter(params, callback);
+            }
+        };
+    }
+
+    @NonNull
+    private Runnable getRetryLoadInitial(@NonNull final LoadInitialParams<DataSnapshot> params,
+                                         @NonNull final LoadInitialCallback<DataSnapshot, DataSnapshot> callback) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                loadInitial(params, callback);
+            }
+        };
+    }
+
+    /**
+     * Listener for a single page which sets the loading state and sets up retry. Database
+     * callbacks run on the main thread, so states are set right away rather than posted, which
+     * would only deliver the last of several states.
+     */
+    private abstract class PageListener implements ValueEventListener {
+
+        private final int mPageSize;
+        private final String mPreviousKey;
+
+        /**
+         * @param previousKey the key of the last child of the previous page, which is skipped if
+         *                    the page starts with it.
+         */
+        public PageListener(int pageSize, @Nullable String previousKey) {
+            mPageSize = pageSize;
+            mPreviousKey = previousKey;
+        }
+
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            List<DataSnapshot> data = new ArrayList<>(mPageSize);
+            for (DataSnapshot child : snapshot.getChildren()) {
+                if (data.isEmpty() && child.getKey().equals(mPreviousKey)) {
+                    continue;
+                }
+                if (data.size() == mPageSize) {
+                    // The previous child was removed, this one will start the next page
+                    break;
+                }
+                data.add(child);
+            }
+
+            // A page which isn't full is the last one
+            boolean finished = data.size() < mPageSize;
+            setResult(data, finished ? null : data.get(data.size() - 1));
+            mLoadingState.setValue(LoadingState.LOADED);
+            if (finished) {
+                mLoadingState.setValue(LoadingState.FINISHED);
+            }
+
+            mRetryRunnable = null;
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.w(TAG, "load:onCancelled", error.toException());
+
+            // On error we do NOT post any value to the PagedList, we just tell
+            // the developer that we are now in the error state.
+            mLoadingState.setValue(LoadingState.ERROR);
+
+            // Set the retry action
+            mRetryRunnable = getRetryRunnable();
+        }
+
+        protected abstract void setResult(@NonNull List<DataSnapshot> data,
+                                          @Nullable DataSnapshot nextPage);
+
+        protected abstract Runnable getRetryRunnable();
+    }
+}
@@ -0,0 +1,140 @@
+package com.firebase.ui.database.paging;
+
+import android.arch.core.util.Function;
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.arch.lifecycle.Transformations;
+import android.arch.paging.PagedList;
+import android.arch.paging.PagedListAdapter;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.firebase.ui.database.SnapshotParser;
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * Paginated RecyclerView Adapter for a Realtime Database query. Only the pages the user scrolls
+ * through are downloaded, unlike {@link com.firebase.ui.database.FirebaseRecyclerAdapter} which
+ * loads the whole query. Pages are loaded once and don't receive realtime updates.
+ *
+ * Configured with {@link FirebasePagingOptions}.
+ */
+public abstract class FirebasePagingAdapter<T, VH extends RecyclerView.ViewHolder>
+        extends PagedListAdapter<DataSnapshot, VH>
+        implements LifecycleObserver {
+
+    private static final String TAG = "FirebasePagingAdapter";
+
+    private final SnapshotParser<T> mParser;
+
+    private final LiveData<PagedList<DataSnapshot>> mSnapshots;
+    private final LiveData<LoadingState> mLoadingState;
+
+    private final Observer<LoadingState> mStateObserver =
+            new Observer<LoadingState>() {
+                @Override
+                public void onChanged(@Nullable LoadingState state) {
+                    if (state == null) {
+                        return;
+                    }
+
+                    onLoadingStateChanged(state);
+                }
+            };
+
+    private final Observer<PagedList<DataSnapshot>> mDataObserver =
+            new Observer<PagedList<DataSnapshot>>() {
+                @Override
+                public void onChanged(@Nullable PagedList<DataSnapshot> snapshots) {
+                    if (snapshots == null) {
+                        return;
+                    }
+
+                    submitList(snapshots);
+                }
+            };
+
+    /**
+     * Construct a new FirebasePagingAdapter from the given {@link FirebasePagingOptions}.
+     */
+    public FirebasePagingAdapter(@NonNull FirebasePagingOptions<T> options) {
+        super(options.getDiffCallback());
+
+        mSnapshots = options.getData();
+
+        mLoadingState = Transformations.switchMap(mSnapshots,
+                new Function<PagedList<DataSnapshot>, LiveData<LoadingState>>() {
+                    @Override
+                    public LiveData<LoadingState> apply(PagedList<DataSnapshot> input) {
+                        FirebaseDataSource dataSource = (FirebaseDataSource) input.getDataSource();
+                        return dataSource.getLoadingState();
+                    }
+                });
+
+        mParser = options.getParser();
+
+        if (options.getOwner() != null) {
+            options.getOwner().getLifecycle().addObserver(this);
+        }
+    }
+
+    /**
+     * If {@link #onLoadingStateChanged(LoadingState)} indicates error state, call this method
+     * to attempt to retry the most recent failure.
+     */
+    public void retry() {
+        PagedList<DataSnapshot> list = getCurrentList();
+        if (list == null) {
+            Log.w(TAG, "Called retry() when FirebaseDataSource is null!");
+            return;
+        }
+
+        ((FirebaseDataSource) list.getDataSource()).retry();
+    }
+
+    /**
+     * Start listening to paging / scrolling events and populating adapter data.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    public void startListening() {
+        mSnapshots.observeForever(mDataObserver);
+        mLoadingState.observeForever(mStateObserver);
+    }
+
+    /**
+     * Unsubscribe from paging / scrolling events, no more data will be populated, but the existing
+     * data will remain.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+    public void stopListening() {
+        mSnapshots.removeObserver(mDataObserver);
+        mLoadingState.removeObserver(mStateObserver);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position) {
+        DataSnapshot snapshot = getItem(position);
+        onBindViewHolder(holder, position, mParser.parseSnapshot(snapshot));
+    }
+
+    /**
+     * @param model the model object containing the data that should be used to populate the view.
+     * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
+     */
+    protected abstract void onBindViewHolder(@NonNull VH holder, int position, @NonNull T model);
+
+    /**
+     * Called whenever the loading state of the adapter changes.
+     *
+     * When the state is {@link LoadingState#ERROR} the adapter will stop loading any data unless
+     * {@link #retry()} is called.
+     */
+    protected void onLoadingStateChanged(@NonNull LoadingState state) {
+        // For overriding
+    }
+}
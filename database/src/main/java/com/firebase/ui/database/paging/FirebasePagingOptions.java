@@ -0,0 +1,192 @@
+package com.firebase.ui.database.paging;
+
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LiveData;
+import android.arch.paging.LivePagedListBuilder;
+import android.arch.paging.PagedList;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+
+import com.firebase.ui.database.ClassSnapshotParser;
+import com.firebase.ui.database.SnapshotParser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.Query;
+
+/**
+ * Options to configure an {@link FirebasePagingAdapter}.
+ *
+ * Use {@link Builder} to create a new instance.
+ */
+public final class FirebasePagingOptions<T> {
+
+    private final LiveData<PagedList<DataSnapshot>> mData;
+    private final SnapshotParser<T> mParser;
+    private final DiffUtil.ItemCallback<DataSnapshot> mDiffCallback;
+    private final LifecycleOwner mOwner;
+
+    private FirebasePagingOptions(@NonNull LiveData<PagedList<DataSnapshot>> data,
+                                  @NonNull SnapshotParser<T> parser,
+                                  @NonNull DiffUtil.ItemCallback<DataSnapshot> diffCallback,
+                                  @Nullable LifecycleOwner owner) {
+        mData = data;
+        mParser = parser;
+        mDiffCallback = diffCallback;
+        mOwner = owner;
+    }
+
+    @NonNull
+    public LiveData<PagedList<DataSnapshot>> getData() {
+        return mData;
+    }
+
+    @NonNull
+    public SnapshotParser<T> getParser() {
+        return mParser;
+    }
+
+    @NonNull
+    public DiffUtil.ItemCallback<DataSnapshot> getDiffCallback() {
+        return mDiffCallback;
+    }
+
+    @Nullable
+    public LifecycleOwner getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Builder for {@link FirebasePagingOptions}.
+     */
+    public static final class Builder<T> {
+
+        private LiveData<PagedList<DataSnapshot>> mData;
+        private SnapshotParser<T> mParser;
+        private LifecycleOwner mOwner;
+        private DiffUtil.ItemCallback<DataSnapshot> mDiffCallback;
+
+        /**
+         * Sets the query using a {@link ClassSnapshotParser} based on the given class.
+         *
+         * See {@link #setQuery(Query, PagedList.Config, SnapshotParser)}.
+         */
+        @NonNull
+        public Builder<T> setQuery(@NonNull Query query,
+                                   @NonNull PagedList.Config config,
+                                   @NonNull Class<T> modelClass) {
+            return setQuery(query, config, new ClassSnapshotParser<>(modelClass));
+        }
+
+        /**
+         * Sets the query to paginate, ordering children by key.
+         *
+         * @param query  the location to paginate, usually a {@link
+         *               com.google.firebase.database.DatabaseReference}. This query must not be
+         *               ordered or contain any startAt(), endAt(), equalTo() or limit clauses.
+         * @param config paging configuration, passed directly to the support paging library.
+         * @param parser the {@link SnapshotParser} to parse {@link DataSnapshot} into model
+         *               objects.
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setQuery(@NonNull Query query,
+                                   @NonNull PagedList.Config config,
+                                   @NonNull SnapshotParser<T> parser) {
+            return setOrderedQuery(query.orderByKey(), null, config, parser);
+        }
+
+        /**
+         * Sets the query using a {@link ClassSnapshotParser} based on the given class.
+         *
+         * See {@link #setQuery(Query, String, PagedList.Config, SnapshotParser)}.
+         */
+        @NonNull
+        public Builder<T> setQuery(@NonNull Query query,
+                                   @NonNull String orderByChild,
+                                   @NonNull PagedList.Config config,
+                                   @NonNull Class<T> modelClass) {
+            return setQuery(query, orderByChild, config, new ClassSnapshotParser<>(modelClass));
+        }
+
+        /**
+         * Sets the query to paginate, ordering children by the value of a descendant.
+         *
+         * @param query        the location to paginate, see {@link #setQuery(Query,
+         *                     PagedList.Config, SnapshotParser)}.
+         * @param orderByChild the path of the descendant to order by, as passed to {@link
+         *                     Query#orderByChild(String)}. Its values must be strings, numbers,
+         *                     booleans or null.
+         * @param config       paging configuration, passed directly to the support paging
+         *                     library.
+         * @param parser       the {@link SnapshotParser} to parse {@link DataSnapshot} into model
+         *                     objects.
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setQuery(@NonNull Query query,
+                                   @NonNull String orderByChild,
+                                   @NonNull PagedList.Config config,
+                                   @NonNull SnapshotParser<T> parser) {
+            return setOrderedQuery(query.orderByChild(orderByChild), orderByChild, config, parser);
+        }
+
+        @NonNull
+        private Builder<T> setOrderedQuery(@NonNull Query orderedQuery,
+                                           @Nullable String orderByChild,
+                                           @NonNull PagedList.Config config,
+                                           @NonNull SnapshotParser<T> parser) {
+            // Build paged list
+            FirebaseDataSource.Factory factory =
+                    new FirebaseDataSource.Factory(orderedQuery, orderByChild);
+            mData = new LivePagedListBuilder<>(factory, config).build();
+
+            mParser = parser;
+            return this;
+        }
+
+        /**
+         * Sets an optional custom {@link DiffUtil.ItemCallback} to compare {@link DataSnapshot}
+         * objects.
+         *
+         * The default implementation is {@link DefaultSnapshotDiffCallback}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setDiffCallback(@NonNull DiffUtil.ItemCallback<DataSnapshot> diffCallback) {
+            mDiffCallback = diffCallback;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link LifecycleOwner} to control the lifecycle of the adapter. Otherwise,
+         * you must manually call {@link FirebasePagingAdapter#startListening()}
+         * and {@link FirebasePagingAdapter#stopListening()}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setLifecycleOwner(@NonNull LifecycleOwner owner) {
+            mOwner = owner;
+            return this;
+        }
+
+        /**
+         * Build the {@link FirebasePagingOptions} object.
+         */
+        @NonNull
+        public FirebasePagingOptions<T> build() {
+            if (mData == null || mParser == null) {
+                throw new IllegalStateException("Must call setQuery() before calling build().");
+            }
+
+            if (mDiffCallback == null) {
+                mDiffCallback = new DefaultSnapshotDiffCallback<T>(mParser);
+            }
+
+            return new FirebasePagingOptions<>(mData, mParser, mDiffCallback, mOwner);
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.firebase.ui.database.paging;
+
+/**
+ * Loading state exposed by {@link FirebasePagingAdapter}.
+ */
+public enum LoadingState {
+    /**
+     * Loading initial data.
+     */
+    LOADING_INITIAL,
+
+    /**
+     * Loading a page other than the first page.
+     */
+    LOADING_MORE,
+
+    /**
+     * Not currently loading any pages, at least one page loaded.
+     */
+    LOADED,
+
+    /**
+     * The last page loaded wasn't full, and therefore no further pages will be loaded.
+     */
+    FINISHED,
+
+    /**
+     * The most recent load encountered an error.
+     */
+    ERROR
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirestoreArrayMetadataTest {
+    private final List<String> mEvents = new ArrayList<>();
+    private int mParseCount;
+
+    private FirestoreArray<String> mArray;
+
+    @Before
+    public void setUp() {
+        mArray = new FirestoreArray<>(mock(Query.class), MetadataChanges.INCLUDE,
+                new SnapshotParser<String>() {
+                    @NonNull
+                    @Override
+                    public String parseSnapshot(@NonNull DocumentSnapshot snapshot) {
+                        mParseCount++;
+                        return String.valueOf(snapshot.getData());
+                    }
+                });
+        mArray.addChangeEventListener(new Listener());
+
+        QueryDocumentSnapshot document = newDocument(Collections.singletonMap("field", 1));
+        mArray.onEvent(newSnapshot(newChange(document)), null);
+        mArray.get(0);
+        mEvents.clear();
+        mParseCount = 0;
+    }
+
+    @Test
+    public void testMetadataChangeIsReportedAsChangeByDefault() {
+        QueryDocumentSnapshot document = newDocument(Collections.singletonMap("field", 1));
+        mArray.onEvent(newSnapshot(newChange(document)), null);
+
+        assertEquals(Collections.singletonList("CHANGED 0"), mEvents);
+        mArray.get(0);
+        assertEquals(1, mParseCount);
+    }
+
+    @Test
+    public void testSeparatedMetadataChangeKeepsModel() {
+        mArray.setSeparateMetadataChanges(true);
+
+        QueryDocumentSnapshot document = newDocument(Collections.singletonMap("field", 1));
+        mArray.onEvent(newSnapshot(newChange(document)), null);
+
+        assertEquals(Collections.singletonList("METADATA 0"), mEvents);
+        assertSame(document, mArray.getSnapshot(0));
+        mArray.get(0);
+        assertEquals(0, mParseCount);
+    }
+
+    @Test
+    public void testSeparatedDataChangeIsStillReported() {
+        mArray.setSeparateMetadataChanges(true);
+
+        QueryDocumentSnapshot document = newDocument(Collections.singletonMap("field", 2));
+        mArray.onEvent(newSnapshot(newChange(document)), null);
+
+        assertEquals(Collections.singletonList("CHANGED 0"), mEvents);
+        assertEquals("{field=2}", mArray.get(0));
+    }
+
+    private static QueryDocumentSnapshot newDocument(Map<String, Object> data) {
+        QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+        when(document.getId()).thenReturn("doc");
+        when(document.getData()).thenReturn(data);
+        return document;
+    }
+
+    private static DocumentChange newChange(QueryDocumentSnapshot document) {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getDocument()).thenReturn(document);
+        when(change.getNewIndex()).thenReturn(0);
+        // The first change adds the document, later ones modify it
+        when(change.getType()).thenReturn(DocumentChange.Type.MODIFIED);
+        when(change.getOldIndex()).thenReturn(0);
+        return change;
+    }
+
+    private QuerySnapshot newSnapshot(DocumentChange change) {
+        if (mArray.size() == 0) {
+            when(change.getType()).thenReturn(DocumentChange.Type.ADDED);
+            when(change.getOldIndex()).thenReturn(-1);
+        }
+
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges(any(MetadataChanges.class)))
+                .thenReturn(Collections.singletonList(change));
+        return snapshot;
+    }
+
+    private class Listener implements ChangeEventListener, MetadataChangeListener {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            mEvents.add(type + " " + newIndex);
+        }
+
+        @Override
+        public void onMetadataChanged(@NonNull DocumentSnapshot snapshot, int index) {
+            mEvents.add("METADATA " + index);
+        }
+
+        @Override
+        public void onDataChanged() {}
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {}
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirestoreArrayReorderTest {
+    private static final int SIZE = 100;
+
+    private static final SnapshotParser<String> PARSER = new SnapshotParser<String>() {
+        @NonNull
+        @Override
+        public String parseSnapshot(@NonNull DocumentSnapshot snapshot) {
+            return snapshot.getId();
+        }
+    };
+
+    private final List<QueryDocumentSnapshot> mDocuments = new ArrayList<>();
+    private final List<String> mEvents = new ArrayList<>();
+    private FirestoreArray<String> mArray;
+
+    @Before
+    public void setUp() {
+        List<DocumentChange> changes = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+            when(document.getId()).thenReturn("doc" + i);
+            mDocuments.add(document);
+            changes.add(newChange(DocumentChange.Type.ADDED, document, -1, i));
+        }
+
+        mArray = new FirestoreArray<>(mock(Query.class), PARSER);
+        mArray.addChangeEventListener(new ChangeEventListener() {
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DocumentSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex) {
+                mEvents.add(type + " " + snapshot.getId() + " " + oldIndex + "->" + newIndex);
+            }
+
+            @Override
+            public void onDataChanged() {}
+
+            @Override
+            public void onError(@NonNull FirebaseFirestoreException e) {}
+        });
+        mArray.onEvent(newSnapshot(mDocuments, changes), null);
+        mEvents.clear();
+    }
+
+    @Test
+    public void testReorderUsesFewestMoves() {
+        // doc50 jumps to the top, and doc98 and doc99 swap places
+        List<QueryDocumentSnapshot> documents = new ArrayList<>(mDocuments);
+        documents.add(0, documents.remove(50));
+        Collections.swap(documents, 98, 99);
+
+        List<DocumentChange> changes = new ArrayList<>();
+        changes.add(newChange(DocumentChange.Type.MODIFIED, mDocuments.get(50), 50, 0));
+        changes.add(newChange(DocumentChange.Type.MODIFIED, mDocuments.get(99), 99, 98));
+        mArray.onEvent(newSnapshot(documents, changes), null);
+
+        assertOrder(documents);
+        assertEquals(4, mEvents.size());
+        assertEquals("MOVED doc50 50->0", mEvents.get(0));
+        assertTrue(mEvents.get(1).startsWith("MOVED"));
+        assertEquals("CHANGED doc50 0->0", mEvents.get(2));
+        assertEquals("CHANGED doc99 98->98", mEvents.get(3));
+    }
+
+    @Test
+    public void testShuffle() {
+        List<QueryDocumentSnapshot> documents = new ArrayList<>(mDocuments);
+        Collections.shuffle(documents, new Random(42));
+
+        List<DocumentChange> changes = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            changes.add(newChange(DocumentChange.Type.MODIFIED, documents.get(i), -1, i));
+        }
+        mArray.onEvent(newSnapshot(documents, changes), null);
+
+        assertOrder(documents);
+        for (int i = 0; i < SIZE; i++) {
+            String id = documents.get(i).getId();
+            assertEquals("CHANGED " + id + " " + i + "->" + i,
+                    mEvents.get(mEvents.size() - SIZE + i));
+        }
+    }
+
+    @Test
+    public void testChunkedListMatchesArrayList() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        List<Integer> actual = new ChunkedList<>();
+        for (int i = 0; i < 20000; i++) {
+            int size = expected.size();
+            int op = random.nextInt(10);
+            if (op < 6 || size == 0) {
+                int index = random.nextInt(size + 1);
+                expected.add(index, i);
+                actual.add(index, i);
+            } else if (op < 9) {
+                int index = random.nextInt(size);
+                assertEquals(expected.remove(index), actual.remove(index));
+            } else {
+                int index = random.nextInt(size);
+                assertEquals(expected.set(index, -i), actual.set(index, -i));
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    private void assertOrder(List<QueryDocumentSnapshot> documents) {
+        assertEquals(documents.size(), mArray.size());
+        for (int i = 0; i < documents.size(); i++) {
+            assertEquals(documents.get(i).getId(), mArray.get(i));
+        }
+    }
+
+    private static DocumentChange newChange(DocumentChange.Type type,
+                                            QueryDocumentSnapshot document,
+                                            int oldIndex,
+                                            int newIndex) {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(type);
+        when(change.getDocument()).thenReturn(document);
+        when(change.getOldIndex()).thenReturn(oldIndex);
+        when(change.getNewIndex()).thenReturn(newIndex);
+        return change;
+    }
+
+    private static QuerySnapshot newSnapshot(List<QueryDocumentSnapshot> documents,
+                                             List<DocumentChange> changes) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(new ArrayList<DocumentSnapshot>(documents));
+        when(snapshot.getDocumentChanges(any(MetadataChanges.class))).thenReturn(changes);
+        return snapshot;
+    }
+}
@@ -3,6 +3,7 @@ package com.firebase.ui.firestore;
 import android.arch.lifecycle.Observer;
 import android.arch.paging.PageKeyedDataSource;
 import android.support.annotation.Nullable;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.firebase.ui.firestore.paging.FirestoreDataSource;
@@ -10,6 +11,8 @@ import com.firebase.ui.firestore.paging.LoadingState;
 import com.firebase.ui.firestore.paging.PageKey;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.Source;
@@ -17,23 +20,34 @@ import com.google.firebase.firestore.Source;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(AndroidJUnit4.class)
 public class FirestoreDataSourceTest {
 
+    private static final int TIMEOUT = 1000;
+
     private FirestoreDataSource mDataSource;
 
     @Mock Query mMockQuery;
@@ -150,9 +164,178 @@ public class FirestoreDataSourceTest {
                 Arrays.asList(LoadingState.ERROR, LoadingState.LOADING_MORE, LoadingState.LOADED));
     }
 
+    @Test
+    public void testLoadBefore_reversesPage() throws Exception {
+        Query reverseQuery = mock(Query.class);
+        when(reverseQuery.startAfter(any(DocumentSnapshot.class))).thenReturn(reverseQuery);
+        when(reverseQuery.limit(anyLong())).thenReturn(reverseQuery);
+        List<DocumentSnapshot> page = mockDocuments("b", "a");
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(page);
+        when(reverseQuery.get(Source.DEFAULT)).thenReturn(Tasks.forResult(snapshot));
+
+        mDataSource = new FirestoreDataSource(
+                mMockQuery, reverseQuery, Source.DEFAULT, false,
+                FirestoreDataSource.REALTIME_DISABLED);
+        mDataSource.loadBefore(new PageKeyedDataSource.LoadParams<>(
+                new PageKey(mockDocument("c"), null), 2), mAfterCallback);
+
+        verify(mAfterCallback, timeout(TIMEOUT))
+                .onResult(eq(Arrays.asList(page.get(1), page.get(0))), any(PageKey.class));
+    }
+
+    @Test
+    public void testMaxSize_reanchorsAtLastBoundItem() throws Exception {
+        FirestoreDataSource.Factory factory = new FirestoreDataSource.Factory(
+                mMockQuery, mock(Query.class), Source.DEFAULT, false,
+                FirestoreDataSource.REALTIME_DISABLED, 3);
+        mDataSource = (FirestoreDataSource) factory.create();
+
+        List<DocumentSnapshot> first = mockDocuments("a", "b");
+        mockQuerySuccess(first);
+        TestObserver<LoadingState> initialObserver = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(initialObserver);
+        mDataSource.loadInitial(
+                new PageKeyedDataSource.LoadInitialParams<PageKey>(2, false), mInitialCallback);
+        initialObserver.await();
+        assertFalse(mDataSource.isInvalid());
+
+        List<DocumentSnapshot> second = mockDocuments("c", "d");
+        mockQuerySuccess(second);
+        mDataSource.onItemBound(3, second.get(1));
+        TestObserver<LoadingState> afterObserver = new TestObserver<>(3);
+        mDataSource.getLoadingState().observeForever(afterObserver);
+        mDataSource.loadAfter(new PageKeyedDataSource.LoadParams<>(
+                new PageKey(first.get(1), null), 2), mAfterCallback);
+        afterObserver.await();
+        assertTrue(mDataSource.isInvalid());
+
+        // The next data source starts a page before the last bound item
+        FirestoreDataSource next = (FirestoreDataSource) factory.create();
+        next.loadInitial(
+                new PageKeyedDataSource.LoadInitialParams<PageKey>(2, false), mInitialCallback);
+        verify(mMockQuery).startAt(first.get(1));
+    }
+
+    @Test
+    public void testCacheFirst_keepsPageMatchingServer() throws Exception {
+        List<DocumentSnapshot> page = mockDocuments("a", "b");
+        loadCacheFirstInitial(page, page);
+
+        verify(mInitialCallback).onResult(eq(page), (PageKey) any(), any(PageKey.class));
+        assertFalse(mDataSource.isInvalid());
+    }
+
+    @Test
+    public void testCacheFirst_invalidatesWhenServerDiffers() throws Exception {
+        List<DocumentSnapshot> page = mockDocuments("a", "b");
+        loadCacheFirstInitial(page, page.subList(0, 1));
+
+        assertTrue(mDataSource.isInvalid());
+    }
+
+    private void loadCacheFirstInitial(List<DocumentSnapshot> cached,
+                                       List<DocumentSnapshot> server) throws Exception {
+        QuerySnapshot cachedSnapshot = mock(QuerySnapshot.class);
+        when(cachedSnapshot.getDocuments()).thenReturn(cached);
+        when(mMockQuery.get(Source.CACHE)).thenReturn(Tasks.forResult(cachedSnapshot));
+        QuerySnapshot serverSnapshot = mock(QuerySnapshot.class);
+        when(serverSnapshot.getDocuments()).thenReturn(server);
+        when(mMockQuery.get(Source.SERVER)).thenReturn(Tasks.forResult(serverSnapshot));
+
+        mDataSource = new FirestoreDataSource(
+                mMockQuery, null, Source.DEFAULT, true, FirestoreDataSource.REALTIME_DISABLED);
+        TestObserver<LoadingState> observer = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer);
+        mDataSource.loadInitial(
+                new PageKeyedDataSource.LoadInitialParams<PageKey>(2, false), mInitialCallback);
+        observer.await();
+
+        // Let the server result arrive
+        verify(mMockQuery, timeout(TIMEOUT)).get(Source.SERVER);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    @Test
+    public void testRealtime_editNotifiesPosition() throws Exception {
+        List<DocumentSnapshot> page = mockDocuments("a", "b", "c");
+        EventListener<QuerySnapshot> listener = loadRealtimeInitial(page);
+
+        TestObserver<Integer> observer = new TestObserver<>(1);
+        mDataSource.getChangedPosition().observeForever(observer);
+
+        final DocumentSnapshot edited = mockDocument("b");
+        when(edited.getData()).thenReturn(Collections.<String, Object>singletonMap("v", 1));
+        deliver(listener, Arrays.asList(page.get(0), edited, page.get(2)));
+
+        observer.await();
+        observer.assertResults(Collections.singletonList(1));
+        assertSame(edited, mDataSource.getLatestSnapshot(page.get(1)));
+        assertFalse(mDataSource.isInvalid());
+    }
+
+    @Test
+    public void testRealtime_removalInvalidates() throws Exception {
+        List<DocumentSnapshot> page = mockDocuments("a", "b", "c");
+        EventListener<QuerySnapshot> listener = loadRealtimeInitial(page);
+
+        deliver(listener, Arrays.asList(page.get(0), page.get(2)));
+
+        assertTrue(mDataSource.isInvalid());
+    }
+
+    @SuppressWarnings("unchecked")
+    private EventListener<QuerySnapshot> loadRealtimeInitial(List<DocumentSnapshot> page)
+            throws Exception {
+        mDataSource = new FirestoreDataSource(mMockQuery, null, Source.DEFAULT, false, 1);
+        mockQuerySuccess(page);
+
+        TestObserver<LoadingState> observer = new TestObserver<>(2);
+        mDataSource.getLoadingState().observeForever(observer);
+        mDataSource.loadInitial(
+                new PageKeyedDataSource.LoadInitialParams<PageKey>(20, false), mInitialCallback);
+        observer.await();
+
+        ArgumentCaptor<EventListener> captor = ArgumentCaptor.forClass(EventListener.class);
+        verify(mMockQuery, timeout(TIMEOUT)).addSnapshotListener(captor.capture());
+        return captor.getValue();
+    }
+
+    private void deliver(final EventListener<QuerySnapshot> listener,
+                         List<DocumentSnapshot> documents) {
+        final QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(documents);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                listener.onEvent(snapshot, null);
+            }
+        });
+    }
+
+    private static List<DocumentSnapshot> mockDocuments(String... ids) {
+        List<DocumentSnapshot> documents = new ArrayList<>();
+        for (String id : ids) {
+            documents.add(mockDocument(id));
+        }
+        return documents;
+    }
+
+    private static DocumentSnapshot mockDocument(String id) {
+        DocumentSnapshot document = mock(DocumentSnapshot.class);
+        when(document.getId()).thenReturn(id);
+        when(document.getData()).thenReturn(Collections.<String, Object>emptyMap());
+        return document;
+    }
+
     private void initMockQuery() {
         when(mMockQuery.startAfter(any())).thenReturn(mMockQuery);
         when(mMockQuery.endBefore(any())).thenReturn(mMockQuery);
+        when(mMockQuery.endAt(any(DocumentSnapshot.class))).thenReturn(mMockQuery);
+        when(mMockQuery.startAt(any(DocumentSnapshot.class))).thenReturn(mMockQuery);
+        when(mMockQuery.addSnapshotListener(ArgumentMatchers.<EventListener<QuerySnapshot>>any()))
+                .thenReturn(mock(ListenerRegistration.class));
         when(mMockQuery.limit(anyLong())).thenReturn(mMockQuery);
     }
 
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore;
+
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class WindowedFirestoreArrayTest {
+    private static final int SIZE = 10000;
+    private static final int MARGIN = 20;
+
+    private static final SnapshotParser<String> PARSER = new SnapshotParser<String>() {
+        @NonNull
+        @Override
+        public String parseSnapshot(@NonNull DocumentSnapshot snapshot) {
+            return snapshot.getId();
+        }
+    };
+
+    @Test
+    public void testOnlyWindowIsMaterialized() {
+        final WindowedFirestoreArray<String> array = newArray();
+        final CollectionReference collection = newCachedCollection();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.onEvent(newQuerySnapshot(collection), null);
+            }
+        });
+        assertEquals(SIZE, array.size());
+        assertTrue(array.getMaterializedCount() <= MARGIN + 1);
+
+        // Scroll through the whole list, binding every visible row
+        for (int first = 0; first < SIZE; first += 10) {
+            final int visible = first;
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    array.setVisibleRange(visible, visible + 9);
+                }
+            });
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+            for (int i = first; i < first + 10; i++) {
+                assertTrue(array.isLoaded(i));
+                assertEquals("doc" + i, array.getSnapshot(i).getId());
+            }
+            assertTrue(array.getMaterializedCount() <= 2 * MARGIN + 10);
+        }
+    }
+
+    @Test
+    public void testReleasedDocumentsAreLoadedFromCache() {
+        final WindowedFirestoreArray<String> array = newArray();
+        final CollectionReference collection = newCachedCollection();
+        final RecordingListener listener = new RecordingListener();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.addChangeEventListener(listener);
+                array.onEvent(newQuerySnapshot(collection), null);
+                array.setVisibleRange(SIZE - 10, SIZE - 1);
+            }
+        });
+        assertFalse(array.isLoaded(0));
+        assertEquals("doc0", array.getSnapshotId(0));
+        assertEquals(array.getStableIdForKey("doc0"), array.getStableId(0));
+
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        for (int i = SIZE - 10; i < SIZE; i++) {
+            assertTrue(array.isLoaded(i));
+            assertEquals("doc" + i, array.get(i));
+            assertTrue(listener.mChanged.contains(i));
+        }
+        assertFalse(array.isLoaded(0));
+    }
+
+    @Test
+    public void testUnloadedSnapshotThrows() {
+        final CollectionReference collection = mock(CollectionReference.class);
+        when(collection.document(anyString())).thenAnswer(new Answer<DocumentReference>() {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation) {
+                DocumentReference reference = mock(DocumentReference.class);
+                when(reference.get(eq(Source.CACHE)))
+                        .thenReturn(new TaskCompletionSource<DocumentSnapshot>().getTask());
+                return reference;
+            }
+        });
+
+        final WindowedFirestoreArray<String> array = newArray();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.onEvent(newQuerySnapshot(collection), null);
+                array.setVisibleRange(SIZE - 10, SIZE - 1);
+            }
+        });
+
+        assertFalse(array.isLoaded(SIZE - 1));
+        try {
+            array.getSnapshot(SIZE - 1);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Unloaded documents must be checked with isLoaded(int)
+        }
+    }
+
+    @Test
+    public void testOnlyBatchListenersWhileUnloaded() {
+        final WindowedFirestoreArray<String> array = newArray();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.onEvent(newQuerySnapshot(newCachedCollection()), null);
+                array.setVisibleRange(SIZE - 10, SIZE - 1);
+            }
+        });
+
+        try {
+            array.addChangeEventListener(new RecordingListener());
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Catching up item by item would need every document
+        }
+    }
+
+    @Test
+    public void testJumpReleasesPreviousWindow() {
+        final WindowedFirestoreArray<String> array = newArray();
+        final CollectionReference collection = newCachedCollection();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.onEvent(newQuerySnapshot(collection), null);
+                array.setVisibleRange(0, 9);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        final int first = SIZE / 2;
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                array.setVisibleRange(first, first + 9);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+        // Only documents within the margin of the new range are held
+        assertTrue(array.getMaterializedCount() <= 2 * MARGIN + 10);
+        for (int i = 0; i < SIZE; i++) {
+            boolean isNearRange = i >= first - MARGIN && i <= first + 9 + MARGIN;
+            if (!isNearRange) {
+                assertFalse(array.isLoaded(i));
+            }
+        }
+        for (int i = first; i < first + 10; i++) {
+            assertTrue(array.isLoaded(i));
+        }
+    }
+
+    private static WindowedFirestoreArray<String> newArray() {
+        return new WindowedFirestoreArray<>(
+                mock(Query.class), MetadataChanges.EXCLUDE, PARSER, MARGIN);
+    }
+
+    /**
+     * A query snapshot adding {@link #SIZE} documents of the given collection.
+     */
+    private static QuerySnapshot newQuerySnapshot(CollectionReference collection) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getParent()).thenReturn(collection);
+
+        List<DocumentChange> changes = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+            when(document.getId()).thenReturn("doc" + i);
+            when(document.getReference()).thenReturn(reference);
+
+            DocumentChange change = mock(DocumentChange.class);
+            when(change.getType()).thenReturn(DocumentChange.Type.ADDED);
+            when(change.getDocument()).thenReturn(document);
+            when(change.getNewIndex()).thenReturn(i);
+            when(change.getOldIndex()).thenReturn(-1);
+            changes.add(change);
+        }
+
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges(any(MetadataChanges.class))).thenReturn(changes);
+        return snapshot;
+    }
+
+    /**
+     * A collection whose documents are all in the local cache.
+     */
+    private static CollectionReference newCachedCollection() {
+        CollectionReference collection = mock(CollectionReference.class);
+        when(collection.document(anyString())).thenAnswer(new Answer<DocumentReference>() {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation) {
+                String id = invocation.getArgument(0);
+                DocumentSnapshot document = mock(DocumentSnapshot.class);
+                when(document.getId()).thenReturn(id);
+                when(document.exists()).thenReturn(true);
+
+                DocumentReference reference = mock(DocumentReference.class);
+                when(reference.get(eq(Source.CACHE))).thenReturn(Tasks.forResult(document));
+                return reference;
+            }
+        });
+        return collection;
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+
+    private static class RecordingListener implements ChangeEventListener {
+        final Set<Integer> mChanged = new HashSet<>();
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            if (type == ChangeEventType.CHANGED) {
+                mChanged.add(newIndex);
+            }
+        }
+
+        @Override
+        public void onDataChanged() {
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+        }
+    }
+}
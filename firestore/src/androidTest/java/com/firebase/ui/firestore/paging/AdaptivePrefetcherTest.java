@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore.paging;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class AdaptivePrefetcherTest {
+    private static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private AdaptivePrefetcher mPrefetcher;
+
+    @Before
+    public void setUp() {
+        mPrefetcher = new AdaptivePrefetcher(PREFETCH_DISTANCE);
+    }
+
+    @Test
+    public void testSlowScrollKeepsRequestedSize() {
+        scroll(1, 100);
+        mPrefetcher.onPageLoaded(200);
+
+        assertEquals(PAGE_SIZE, mPrefetcher.getPageSize(PAGE_SIZE));
+        assertFalse(mPrefetcher.shouldPrefetch());
+    }
+
+    @Test
+    public void testFlingGrowsPagesAndPrefetches() {
+        // One item every 5ms with pages taking 500ms to load: 150 items per load with margin
+        scroll(1, 5);
+        mPrefetcher.onPageLoaded(500);
+
+        assertEquals(PAGE_SIZE * 4, mPrefetcher.getPageSize(PAGE_SIZE));
+        assertTrue(mPrefetcher.shouldPrefetch());
+    }
+
+    @Test
+    public void testPauseResetsVelocity() {
+        scroll(1, 5);
+        mPrefetcher.onPageLoaded(500);
+        mPrefetcher.onItemBound(100, 10000);
+
+        assertEquals(PAGE_SIZE, mPrefetcher.getPageSize(PAGE_SIZE));
+    }
+
+    private void scroll(int itemsPerStep, long millisPerStep) {
+        for (int i = 0; i < 50; i++) {
+            mPrefetcher.onItemBound(i * itemsPerStep, i * millisPerStep);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.firebase.ui.firestore.SnapshotParser;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class DefaultSnapshotDiffCallbackTest {
+    private int mParseCount;
+    private DefaultSnapshotDiffCallback<String> mCallback;
+
+    @Before
+    public void setUp() {
+        mCallback = new DefaultSnapshotDiffCallback<>(new SnapshotParser<String>() {
+            @NonNull
+            @Override
+            public String parseSnapshot(@NonNull DocumentSnapshot snapshot) {
+                mParseCount++;
+                return (String) snapshot.get("value");
+            }
+        });
+    }
+
+    @Test
+    public void testEqualSnapshotsAreNotParsed() {
+        DocumentSnapshot snapshot = mockSnapshot("a", "1");
+
+        assertTrue(mCallback.areContentsTheSame(snapshot, snapshot));
+        assertEquals(0, mParseCount);
+    }
+
+    @Test
+    public void testModelsAreParsedOnce() {
+        DocumentSnapshot old = mockSnapshot("a", "1");
+        DocumentSnapshot same = mockSnapshot("a", "1");
+        DocumentSnapshot changed = mockSnapshot("a", "2");
+
+        assertTrue(mCallback.areContentsTheSame(old, same));
+        assertFalse(mCallback.areContentsTheSame(old, changed));
+        assertFalse(mCallback.areContentsTheSame(same, changed));
+
+        assertEquals(3, mParseCount);
+    }
+
+    private static DocumentSnapshot mockSnapshot(String id, String value) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.get("value")).thenReturn(value);
+        return snapshot;
+    }
+}
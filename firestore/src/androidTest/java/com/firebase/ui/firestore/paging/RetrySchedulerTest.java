@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RetrySchedulerTest {
+    private static final long INITIAL_DELAY = 1000;
+    private static final long MAX_DELAY = 8000;
+
+    private FakeTimer mTimer;
+    private RetryScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setInitialDelayMillis(INITIAL_DELAY)
+                .setMaxDelayMillis(MAX_DELAY)
+                .setMaxAttempts(3)
+                .setMaxConcurrentRetries(2)
+                .build();
+
+        mTimer = new FakeTimer();
+        mScheduler = new RetryScheduler(policy, mTimer, new Random(42), null);
+    }
+
+    @Test
+    public void testDelayGrowsAndIsCapped() {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long cap = Math.min(MAX_DELAY, INITIAL_DELAY << attempt);
+            for (int i = 0; i < 100; i++) {
+                long delay = mScheduler.getDelayMillis(attempt);
+                assertTrue(delay >= cap / 2);
+                assertTrue(delay <= cap);
+            }
+        }
+    }
+
+    @Test
+    public void testRetryRunsAfterDelay() {
+        CountingRunnable retry = new CountingRunnable();
+        mScheduler.schedule(retry, 0);
+
+        assertEquals(0, retry.mCount);
+        assertEquals(1, mTimer.mPosted.size());
+
+        mTimer.runAll();
+        assertEquals(1, retry.mCount);
+    }
+
+    @Test
+    public void testConcurrentRetriesAreCapped() {
+        CountingRunnable first = new CountingRunnable();
+        CountingRunnable second = new CountingRunnable();
+        CountingRunnable third = new CountingRunnable();
+        mScheduler.schedule(first, 0);
+        mScheduler.schedule(second, 0);
+        mScheduler.schedule(third, 0);
+
+        // Only two may wait on the timer at once
+        assertEquals(2, mTimer.mPosted.size());
+
+        // Running one frees a slot for the third
+        mTimer.runFirst();
+        assertEquals(1, first.mCount);
+        assertEquals(2, mTimer.mPosted.size());
+
+        mTimer.runAll();
+        assertEquals(1, second.mCount);
+        assertEquals(1, third.mCount);
+    }
+
+    @Test
+    public void testCancelFreesSlot() {
+        CountingRunnable first = new CountingRunnable();
+        CountingRunnable second = new CountingRunnable();
+        CountingRunnable third = new CountingRunnable();
+        mScheduler.schedule(first, 0);
+        mScheduler.schedule(second, 0);
+        mScheduler.schedule(third, 0);
+
+        mScheduler.cancel(first);
+        assertEquals(2, mTimer.mPosted.size());
+
+        mTimer.runAll();
+        assertEquals(0, first.mCount);
+        assertEquals(1, second.mCount);
+        assertEquals(1, third.mCount);
+    }
+
+    @Test
+    public void testExhaustedRetryWaitsForManualRetry() {
+        CountingRunnable retry = new CountingRunnable();
+        mScheduler.schedule(retry, 3);
+
+        assertEquals(0, mTimer.mPosted.size());
+
+        mScheduler.retryAllNow();
+        assertEquals(1, retry.mCount);
+    }
+
+    @Test
+    public void testRetryAllNow() {
+        CountingRunnable first = new CountingRunnable();
+        CountingRunnable second = new CountingRunnable();
+        CountingRunnable third = new CountingRunnable();
+        mScheduler.schedule(first, 0);
+        mScheduler.schedule(second, 1);
+        mScheduler.schedule(third, 2);
+
+        mScheduler.retryAllNow();
+        assertEquals(0, mTimer.mPosted.size());
+        assertEquals(1, first.mCount);
+        assertEquals(1, second.mCount);
+        assertEquals(1, third.mCount);
+
+        // Nothing runs twice
+        mTimer.runAll();
+        assertEquals(1, first.mCount);
+    }
+
+    private static class CountingRunnable implements Runnable {
+        int mCount;
+
+        @Override
+        public void run() {
+            mCount++;
+        }
+    }
+
+    private static class FakeTimer implements RetryScheduler.Timer {
+        final Map<Runnable, Long> mPosted = new LinkedHashMap<>();
+
+        @Override
+        public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+            mPosted.put(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable runnable) {
+            mPosted.remove(runnable);
+        }
+
+        void runFirst() {
+            Runnable runnable = mPosted.keySet().iterator().next();
+            mPosted.remove(runnable);
+            runnable.run();
+        }
+
+        void runAll() {
+            while (!mPosted.isEmpty()) {
+                List<Runnable> runnables = new ArrayList<>(mPosted.keySet());
+                mPosted.clear();
+                for (Runnable runnable : runnables) {
+                    runnable.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.firebase.ui.firestore;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list stored as a sequence of small chunks, so that inserting or removing anywhere only shifts
+ * the elements of one chunk instead of every element after the affected position.
+ * <p>
+ * Lookups binary search the start position of each chunk. Starts are recomputed lazily, from the
+ * first chunk changed since the last lookup.
+ */
+final class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+    /** Chunks are split once they grow past twice this size. */
+    private static final int CHUNK_SIZE = 64;
+
+    private final List<List<E>> mChunks = new ArrayList<>();
+    private int[] mStarts = new int[8];
+    /** The number of leading chunks whose start is up to date. */
+    private int mValidStarts;
+    private int mSize;
+
+    @Override
+    public E get(int index) {
+        checkIndex(index, mSize);
+        int chunk = findChunk(index);
+        return mChunks.get(chunk).get(index - mStarts[chunk]);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        checkIndex(index, mSize);
+        int chunk = findChunk(index);
+        return mChunks.get(chunk).set(index - mStarts[chunk], element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        checkIndex(index, mSize + 1);
+        if (mChunks.isEmpty()) {
+            mChunks.add(new ArrayList<E>());
+        }
+
+        int chunk = findChunk(index);
+        List<E> target = mChunks.get(chunk);
+        target.add(index - mStarts[chunk], element);
+        mSize++;
+        modCount++;
+        invalidateStarts(chunk + 1);
+
+        if (target.size() > 2 * CHUNK_SIZE) {
+            List<E> tail = target.subList(CHUNK_SIZE, target.size());
+            mChunks.add(chunk + 1, new ArrayList<>(tail));
+            tail.clear();
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        checkIndex(index, mSize);
+        int chunk = findChunk(index);
+        List<E> target = mChunks.get(chunk);
+        E removed = target.remove(index - mStarts[chunk]);
+        mSize--;
+        modCount++;
+
+        if (target.isEmpty()) {
+            mChunks.remove(chunk);
+            invalidateStarts(chunk);
+        } else {
+            invalidateStarts(chunk + 1);
+
+            // Keep chunks from fragmenting after many removals
+            if (chunk + 1 < mChunks.size() && target.size() < CHUNK_SIZE / 2) {
+                List<E> next = mChunks.get(chunk + 1);
+                if (target.size() + next.size() <= CHUNK_SIZE) {
+                    target.addAll(next);
+                    mChunks.remove(chunk + 1);
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        mChunks.clear();
+        mValidStarts = 0;
+        mSize = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the last chunk starting at or before {@code index}.
+     */
+    private int findChunk(int index) {
+        updateStarts();
+
+        int low = 0;
+        int high = mChunks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mStarts[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void updateStarts() {
+        int count = mChunks.size();
+        if (mStarts.length < count) {
+            mStarts = Arrays.copyOf(mStarts, count * 2);
+        }
+
+        for (int i = mValidStarts; i < count; i++) {
+            mStarts[i] = i == 0 ? 0 : mStarts[i - 1] + mChunks.get(i - 1).size();
+        }
+        mValidStarts = count;
+    }
+
+    private void invalidateStarts(int firstChunk) {
+        mValidStarts = Math.min(mValidStarts, firstChunk);
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -23,4 +23,17 @@ public class ClassSnapshotParser<T> implements SnapshotParser<T> {
         return snapshot.toObject(mModelClass);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ClassSnapshotParser<?> parser = (ClassSnapshotParser<?>) o;
+        return mModelClass.equals(parser.mModelClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return mModelClass.hashCode();
+    }
 }
@@ -3,6 +3,7 @@ package com.firebase.ui.firestore;
 import android.support.annotation.NonNull;
 
 import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.SnapshotArrayRegistry;
 import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
@@ -13,8 +14,10 @@ import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Exposes a Firestore query as an observable list of objects.
@@ -25,7 +28,7 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
     private final MetadataChanges mMetadataChanges;
     private ListenerRegistration mRegistration;
 
-    private final List<DocumentSnapshot> mSnapshots = new ArrayList<>();
+    private final List<DocumentSnapshot> mSnapshots = new ChunkedList<>();
 
     /**
      * Create a new FirestoreArray.
@@ -50,6 +53,25 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
         mMetadataChanges = changes;
     }
 
+    /**
+     * Get the array for {@code query}, {@code changes}, and {@code parser} from the {@link
+     * SnapshotArrayRegistry}, creating it if it isn't registered yet.
+     */
+    @NonNull
+    static <T> FirestoreArray<T> obtainShared(@NonNull final Query query,
+                                              @NonNull final MetadataChanges changes,
+                                              @NonNull final SnapshotParser<T> parser) {
+        return SnapshotArrayRegistry.getInstance().obtain(
+                Arrays.asList(FirestoreArray.class, query, changes, parser),
+                new SnapshotArrayRegistry.Factory<FirestoreArray<T>>() {
+                    @NonNull
+                    @Override
+                    public FirestoreArray<T> create() {
+                        return new FirestoreArray<>(query, changes, parser);
+                    }
+                });
+    }
+
     @NonNull
     @Override
     protected List<DocumentSnapshot> getSnapshots() {
@@ -76,8 +98,17 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
             return;
         }
 
-        // Break down each document event
         List<DocumentChange> changes = snapshots.getDocumentChanges(mMetadataChanges);
+        if (isReorder(changes)) {
+            List<DocumentSnapshot> documents = snapshots.getDocuments();
+            if (documents.size() == mSnapshots.size()) {
+                onDocumentsReordered(documents, changes);
+                notifyOnDataChanged();
+                return;
+            }
+        }
+
+        // Break down each document event
         for (DocumentChange change : changes) {
             switch (change.getType()) {
                 case ADDED:
@@ -111,9 +142,13 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
         QueryDocumentSnapshot snapshot = change.getDocument();
         if (change.getOldIndex() == change.getNewIndex()) {
             // Document modified only
-            mSnapshots.set(change.getNewIndex(), snapshot);
-            notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
-                    change.getNewIndex(), change.getNewIndex());
+            DocumentSnapshot previous = mSnapshots.set(change.getNewIndex(), snapshot);
+            if (isMetadataChange(previous, snapshot)) {
+                notifyOnMetadataChanged(snapshot, change.getNewIndex());
+            } else {
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
+                        change.getNewIndex(), change.getNewIndex());
+            }
         } else {
             // Document moved and possibly also modified
             mSnapshots.remove(change.getOldIndex());
@@ -125,4 +160,127 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
                     change.getNewIndex(), change.getNewIndex());
         }
     }
+
+    /**
+     * @return true if {@code changes} only modify existing documents, and move more than one.
+     */
+    private static boolean isReorder(List<DocumentChange> changes) {
+        int moves = 0;
+        for (DocumentChange change : changes) {
+            if (change.getType() != DocumentChange.Type.MODIFIED) {
+                return false;
+            }
+            if (change.getOldIndex() != change.getNewIndex()) {
+                moves++;
+            }
+        }
+        return moves > 1;
+    }
+
+    /**
+     * Apply a snapshot which only modifies documents in one pass. Rather than replaying each
+     * change's move, the documents which keep their relative order are left in place and only the
+     * others are moved, which is the fewest moves possible. Changes are then reported in order of
+     * position so that adjacent ones can be merged into ranges.
+     */
+    private void onDocumentsReordered(List<DocumentSnapshot> documents,
+                                      List<DocumentChange> changes) {
+        int size = documents.size();
+        Map<String, Integer> newIndexes = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            newIndexes.put(documents.get(i).getId(), i);
+        }
+
+        // The new index of each document, in current order, and the current index of each
+        // document, by new index
+        int[] order = new int[size];
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = newIndexes.get(mSnapshots.get(i).getId());
+            positions[order[i]] = i;
+        }
+
+        boolean[] inPlace = findLongestIncreasingSubsequence(order);
+        for (int newIndex = 0; newIndex < size; newIndex++) {
+            if (inPlace[newIndex]) {
+                continue;
+            }
+
+            // Move the document right after the one which precedes it in the new order
+            int from = positions[newIndex];
+            int to = newIndex == 0 ? 0 : positions[newIndex - 1] + 1;
+            if (from < to) {
+                to--;
+            }
+            if (from == to) {
+                continue;
+            }
+
+            if (from < to) {
+                System.arraycopy(order, from + 1, order, from, to - from);
+            } else {
+                System.arraycopy(order, to, order, to + 1, from - to);
+            }
+            order[to] = newIndex;
+            for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+                positions[order[i]] = i;
+            }
+
+            DocumentSnapshot snapshot = documents.get(newIndex);
+            mSnapshots.remove(from);
+            mSnapshots.add(to, snapshot);
+            notifyOnChildChanged(ChangeEventType.MOVED, snapshot, to, from);
+        }
+
+        int[] changed = new int[changes.size()];
+        for (int i = 0; i < changed.length; i++) {
+            changed[i] = newIndexes.get(changes.get(i).getDocument().getId());
+        }
+        Arrays.sort(changed);
+        for (int index : changed) {
+            // Moved documents were already replaced, and always count as changed
+            DocumentSnapshot snapshot = documents.get(index);
+            DocumentSnapshot previous = mSnapshots.set(index, snapshot);
+            if (isMetadataChange(previous, snapshot)) {
+                notifyOnMetadataChanged(snapshot, index);
+            } else {
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, index);
+            }
+        }
+    }
+
+    /**
+     * @param order a permutation of the numbers from 0 to {@code order.length - 1}.
+     * @return indexed by value, whether each value is part of a longest increasing subsequence of
+     * {@code order}.
+     */
+    private static boolean[] findLongestIncreasingSubsequence(int[] order) {
+        int[] tails = new int[order.length];
+        int[] previous = new int[order.length];
+        int length = 0;
+        for (int i = 0; i < order.length; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (order[tails[mid]] < order[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            previous[i] = low == 0 ? -1 : tails[low - 1];
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] inRun = new boolean[order.length];
+        for (int i = length == 0 ? -1 : tails[length - 1]; i != -1; i = previous[i]) {
+            inRun[order[i]] = true;
+        }
+        return inRun;
+    }
 }
@@ -5,13 +5,18 @@ import android.arch.lifecycle.LifecycleObserver;
 import android.arch.lifecycle.LifecycleOwner;
 import android.arch.lifecycle.OnLifecycleEvent;
 import android.support.annotation.NonNull;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 
+import com.firebase.ui.common.BatchChangeEventListener;
+import com.firebase.ui.common.ChangeEvent;
 import com.firebase.ui.common.ChangeEventType;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 
+import java.util.List;
+
 /**
  * RecyclerView adapter that listens to a {@link FirestoreArray} and displays its data in real
  * time.
@@ -21,12 +26,41 @@ import com.google.firebase.firestore.FirebaseFirestoreException;
  */
 public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHolder>
         extends RecyclerView.Adapter<VH>
-        implements ChangeEventListener, LifecycleObserver {
+        implements ChangeEventListener, BatchChangeEventListener, MetadataChangeListener,
+        LifecycleObserver {
+
+    /**
+     * Payload of the item change notified when only the metadata of its document changed.
+     *
+     * @see #onBindMetadata(RecyclerView.ViewHolder, int, DocumentSnapshot)
+     */
+    public static final Object PAYLOAD_METADATA = new Object();
 
     private static final String TAG = "FirestoreRecycler";
 
     private final ObservableSnapshotArray<T> mSnapshots;
 
+    /**
+     * Reports the visible range to the backing snapshot array as the list scrolls.
+     */
+    private final RecyclerView.OnScrollListener mVisibleRangeListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                    RecyclerView.LayoutManager manager = recyclerView.getLayoutManager();
+                    if (!(manager instanceof LinearLayoutManager)) {
+                        return;
+                    }
+
+                    LinearLayoutManager linearManager = (LinearLayoutManager) manager;
+                    int first = linearManager.findFirstVisibleItemPosition();
+                    if (first != RecyclerView.NO_POSITION) {
+                        mSnapshots.setVisibleRange(
+                                first, linearManager.findLastVisibleItemPosition());
+                    }
+                }
+            };
+
     /**
      * Create a new RecyclerView adapter that listens to a Firestore Query.  See {@link
      * FirestoreRecyclerOptions} for configuration options.
@@ -76,16 +110,16 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
     /**
      * Gets the item at the specified position from the backing snapshot array.
      *
-     * @see ObservableSnapshotArray#get(int)
+     * @see ObservableSnapshotArray#getNotified(int)
      */
     @NonNull
     public T getItem(int position) {
-        return mSnapshots.get(position);
+        return mSnapshots.getNotified(position);
     }
 
     @Override
     public int getItemCount() {
-        return mSnapshots.isListening(this) ? mSnapshots.size() : 0;
+        return mSnapshots.isListening(this) ? mSnapshots.getNotifiedSize() : 0;
     }
 
     @Override
@@ -111,6 +145,33 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
         }
     }
 
+    @Override
+    public void onChildrenChanged(@NonNull List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            switch (event.getType()) {
+                case ADDED:
+                    notifyItemRangeInserted(event.getIndex(), event.getCount());
+                    break;
+                case CHANGED:
+                    notifyItemRangeChanged(event.getIndex(), event.getCount());
+                    break;
+                case REMOVED:
+                    notifyItemRangeRemoved(event.getIndex(), event.getCount());
+                    break;
+                case MOVED:
+                    notifyItemMoved(event.getOldIndex(), event.getIndex());
+                    break;
+                default:
+                    throw new IllegalStateException("Incomplete case statement");
+            }
+        }
+    }
+
+    @Override
+    public void onMetadataChanged(@NonNull DocumentSnapshot snapshot, int index) {
+        notifyItemChanged(index, PAYLOAD_METADATA);
+    }
+
     @Override
     public void onDataChanged() {
     }
@@ -120,11 +181,82 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
         Log.w(TAG, "onError", e);
     }
 
+    /**
+     * Returns the stable ID of the item, see {@link ObservableSnapshotArray#getStableId(int)}.
+     * Call {@link #setHasStableIds(boolean)} to let the {@link RecyclerView} reuse view holders
+     * across moves and resyncs.
+     */
+    @Override
+    public long getItemId(int position) {
+        return mSnapshots.getNotifiedStableId(position);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        recyclerView.addOnScrollListener(mVisibleRangeListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        recyclerView.removeOnScrollListener(mVisibleRangeListener);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
+        if (!mSnapshots.isNotifiedLoaded(position)) {
+            onBindPlaceholder(holder, position);
+            return;
+        }
         onBindViewHolder(holder, position, getItem(position));
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull VH holder,
+                                 int position,
+                                 @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            super.onBindViewHolder(holder, position, payloads);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_METADATA) {
+                super.onBindViewHolder(holder, position, payloads);
+                return;
+            }
+        }
+
+        if (!mSnapshots.isNotifiedLoaded(position)) {
+            onBindPlaceholder(holder, position);
+            return;
+        }
+        onBindMetadata(holder, position, mSnapshots.getNotifiedSnapshot(position));
+    }
+
+    /**
+     * Called instead of {@link #onBindViewHolder(RecyclerView.ViewHolder, int, Object)} while the
+     * document at {@code position} isn't loaded, see {@link ObservableSnapshotArray#isLoaded(int)}.
+     * The item is bound again once it is. Override to show a placeholder; by default, the view is
+     * left as it is.
+     */
+    protected void onBindPlaceholder(@NonNull VH holder, int position) {
+    }
+
+    /**
+     * Called instead of a full bind when only the metadata of the document at {@code position}
+     * changed, see {@link ObservableSnapshotArray#setSeparateMetadataChanges(boolean)}. Override
+     * to update indicators such as pending writes without binding the whole item. By default, the
+     * item is bound again from its cached model.
+     *
+     * @param snapshot the document with its new metadata.
+     */
+    protected void onBindMetadata(@NonNull VH holder,
+                                  int position,
+                                  @NonNull DocumentSnapshot snapshot) {
+        onBindViewHolder(holder, position);
+    }
+
     /**
      * @param model the model object containing the data that should be used to populate the view.
      * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
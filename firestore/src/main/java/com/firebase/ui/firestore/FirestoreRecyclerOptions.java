@@ -4,9 +4,13 @@ import android.arch.lifecycle.LifecycleOwner;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.firebase.ui.common.CachePolicy;
+import com.firebase.ui.common.SnapshotArrayRegistry;
 import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.Query;
 
+import java.util.concurrent.Executor;
+
 import static com.firebase.ui.common.Preconditions.assertNonNull;
 import static com.firebase.ui.common.Preconditions.assertNull;
 
@@ -56,6 +60,11 @@ public final class FirestoreRecyclerOptions<T> {
 
         private ObservableSnapshotArray<T> mSnapshots;
         private LifecycleOwner mOwner;
+        private Executor mParseExecutor;
+        private CachePolicy<T> mCachePolicy;
+        private Long mLingerMillis;
+        private boolean mSeparateMetadataChanges;
+        private boolean mBatchingEnabled;
 
         /**
          * Directly set the {@link ObservableSnapshotArray}.
@@ -114,6 +123,109 @@ public final class FirestoreRecyclerOptions<T> {
             return this;
         }
 
+        /**
+         * Calls {@link #setSharedQuery(Query, MetadataChanges, SnapshotParser)} with metadata
+         * changes excluded.
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull SnapshotParser<T> parser) {
+            return setSharedQuery(query, MetadataChanges.EXCLUDE, parser);
+        }
+
+        /**
+         * Calls {@link #setSharedQuery(Query, MetadataChanges, Class)} with metadata changes
+         * excluded.
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query, @NonNull Class<T> modelClass) {
+            return setSharedQuery(query, MetadataChanges.EXCLUDE, modelClass);
+        }
+
+        /**
+         * Like {@link #setQuery(Query, MetadataChanges, Class)}, but share the snapshot array
+         * with other adapters.
+         *
+         * @see #setSharedQuery(Query, MetadataChanges, SnapshotParser)
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query,
+                                         @NonNull MetadataChanges changes,
+                                         @NonNull Class<T> modelClass) {
+            return setSharedQuery(query, changes, new ClassSnapshotParser<>(modelClass));
+        }
+
+        /**
+         * Like {@link #setQuery(Query, MetadataChanges, SnapshotParser)}, but share the snapshot
+         * array with every other adapter built from an equal query, metadata option, and parser
+         * through the {@link SnapshotArrayRegistry}. Shared adapters hold a single copy of the
+         * data and a single server listener, which is kept alive for a while after the last
+         * adapter stops listening.
+         * <p>
+         * A {@link ClassSnapshotParser} is equal to another one for the same class. Settings
+         * applied to the array, such as the cache policy, are shared too.
+         * <p>
+         * Do not call this method after calling {@link #setSnapshotArray(ObservableSnapshotArray)}.
+         */
+        @NonNull
+        public Builder<T> setSharedQuery(@NonNull Query query,
+                                         @NonNull MetadataChanges changes,
+                                         @NonNull SnapshotParser<T> parser) {
+            assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+
+            mSnapshots = FirestoreArray.obtainShared(query, changes, parser);
+            return this;
+        }
+
+        /**
+         * Calls {@link #setWindowedQuery(Query, MetadataChanges, SnapshotParser, int)} with
+         * metadata changes excluded.
+         */
+        @NonNull
+        public Builder<T> setWindowedQuery(@NonNull Query query,
+                                           @NonNull SnapshotParser<T> parser,
+                                           int margin) {
+            return setWindowedQuery(query, MetadataChanges.EXCLUDE, parser, margin);
+        }
+
+        /**
+         * Calls {@link #setWindowedQuery(Query, MetadataChanges, SnapshotParser, int)} with
+         * metadata changes excluded and a {@link ClassSnapshotParser}.
+         */
+        @NonNull
+        public Builder<T> setWindowedQuery(@NonNull Query query,
+                                           @NonNull Class<T> modelClass,
+                                           int margin) {
+            return setWindowedQuery(
+                    query, MetadataChanges.EXCLUDE, new ClassSnapshotParser<>(modelClass), margin);
+        }
+
+        /**
+         * Like {@link #setQuery(Query, MetadataChanges, SnapshotParser)}, but only keep full
+         * snapshots for the {@code margin} positions on each side of the visible range. Use this
+         * for very long lists where holding every snapshot is too expensive.
+         * <p>
+         * Documents outside the window are read back from the local cache when they are scrolled
+         * to, and {@link FirestoreRecyclerAdapter#onBindPlaceholder} is called for them in the
+         * meantime. This also turns on {@link
+         * #setBatchingEnabled(boolean) batching}, which the adapter needs to be caught up without
+         * loading every document.
+         * <p>
+         * Do not call this method after calling {@link #setSnapshotArray(ObservableSnapshotArray)}.
+         *
+         * @see WindowedFirestoreArray
+         */
+        @NonNull
+        public Builder<T> setWindowedQuery(@NonNull Query query,
+                                           @NonNull MetadataChanges changes,
+                                           @NonNull SnapshotParser<T> parser,
+                                           int margin) {
+            assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+
+            mSnapshots = new WindowedFirestoreArray<>(query, changes, parser, margin);
+            mBatchingEnabled = true;
+            return this;
+        }
+
         /**
          * Set a {@link LifecycleOwner} for the adapter. Listening will stop/start after the
          * appropriate lifecycle events.
@@ -124,12 +236,90 @@ public final class FirestoreRecyclerOptions<T> {
             return this;
         }
 
+        /**
+         * Set an optional {@link Executor} used to parse snapshots into model objects in the
+         * background as soon as they arrive, instead of on the main thread while binding. The
+         * {@link SnapshotParser} must be thread safe when this is set.
+         *
+         * @see ObservableSnapshotArray#setParseExecutor(Executor)
+         */
+        @NonNull
+        public Builder<T> setParseExecutor(@Nullable Executor executor) {
+            mParseExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Set an optional {@link CachePolicy} for parsed model objects. By default, up to 100
+         * models are cached.
+         *
+         * @see ObservableSnapshotArray#getCacheStats()
+         */
+        @NonNull
+        public Builder<T> setCachePolicy(@NonNull CachePolicy<T> policy) {
+            mCachePolicy = policy;
+            return this;
+        }
+
+        /**
+         * Set an optional grace period during which the snapshot array keeps its data and server
+         * listener after the adapter stops listening, so that restarting the adapter, for example
+         * after a rotation, doesn't reload everything.
+         *
+         * @see ObservableSnapshotArray#setLingerMillis(long)
+         */
+        @NonNull
+        public Builder<T> setLingerMillis(long millis) {
+            mLingerMillis = millis;
+            return this;
+        }
+
+        /**
+         * Report changes which only affect the metadata of documents, such as pending writes,
+         * through {@link FirestoreRecyclerAdapter#onBindMetadata} instead of parsing and binding
+         * the item again. Only useful with {@link MetadataChanges#INCLUDE}.
+         *
+         * @see ObservableSnapshotArray#setSeparateMetadataChanges(boolean)
+         */
+        @NonNull
+        public Builder<T> setSeparateMetadataChanges(boolean separate) {
+            mSeparateMetadataChanges = separate;
+            return this;
+        }
+
+        /**
+         * Deliver changes to the adapter in merged ranges once per frame instead of one by one,
+         * which avoids redundant layout passes when many items change at once.
+         *
+         * @see ObservableSnapshotArray#setBatchingEnabled(boolean)
+         */
+        @NonNull
+        public Builder<T> setBatchingEnabled(boolean enabled) {
+            mBatchingEnabled = enabled;
+            return this;
+        }
+
         /**
          * Build a {@link FirestoreRecyclerOptions} from the provided arguments.
          */
         @NonNull
         public FirestoreRecyclerOptions<T> build() {
             assertNonNull(mSnapshots, ERR_SNAPSHOTS_NULL);
+            if (mParseExecutor != null) {
+                mSnapshots.setParseExecutor(mParseExecutor);
+            }
+            if (mCachePolicy != null) {
+                mSnapshots.setCachePolicy(mCachePolicy);
+            }
+            if (mLingerMillis != null) {
+                mSnapshots.setLingerMillis(mLingerMillis);
+            }
+            if (mSeparateMetadataChanges) {
+                mSnapshots.setSeparateMetadataChanges(true);
+            }
+            if (mBatchingEnabled) {
+                mSnapshots.setBatchingEnabled(true);
+            }
 
             return new FirestoreRecyclerOptions<>(mSnapshots, mOwner);
         }
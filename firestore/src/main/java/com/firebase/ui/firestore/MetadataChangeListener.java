@@ -0,0 +1,26 @@
+package com.firebase.ui.firestore;
+
+import android.support.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+/**
+ * Optional interface for {@link ChangeEventListener}s that want to hear about changes which only
+ * affect the metadata of a document, such as whether it has pending writes or comes from the
+ * cache.
+ * <p>
+ * Only called when metadata changes are separated, and in that case replaces the {@link
+ * com.firebase.ui.common.ChangeEventType#CHANGED} event the listener would otherwise receive.
+ *
+ * @see ObservableSnapshotArray#setSeparateMetadataChanges(boolean)
+ */
+public interface MetadataChangeListener {
+
+    /**
+     * The metadata of the document at {@code index} changed, but its data didn't.
+     *
+     * @param snapshot the document with its new metadata.
+     */
+    void onMetadataChanged(@NonNull DocumentSnapshot snapshot, int index);
+
+}
@@ -12,10 +12,57 @@ import com.google.firebase.firestore.FirebaseFirestoreException;
  */
 public abstract class ObservableSnapshotArray<T>
         extends BaseObservableSnapshotArray<DocumentSnapshot, FirebaseFirestoreException, ChangeEventListener, T> {
+    private boolean mSeparateMetadataChanges;
+
     /**
      * @see BaseObservableSnapshotArray#BaseObservableSnapshotArray(BaseCachingSnapshotParser)
      */
     public ObservableSnapshotArray(@NonNull SnapshotParser<T> parser) {
         super(new CachingSnapshotParser<>(parser));
     }
+
+    /**
+     * Set whether changes which only affect the metadata of a document are separated from other
+     * changes. While enabled, such changes keep the parsed model of the document and are only
+     * reported to listeners implementing {@link MetadataChangeListener}, instead of as a {@link
+     * com.firebase.ui.common.ChangeEventType#CHANGED} event to every listener.
+     * <p>
+     * Only useful when the query listens with {@link
+     * com.google.firebase.firestore.MetadataChanges#INCLUDE}. The {@link SnapshotParser} must not
+     * read metadata while this is enabled, since models aren't parsed again for metadata changes.
+     */
+    public void setSeparateMetadataChanges(boolean separate) {
+        mSeparateMetadataChanges = separate;
+    }
+
+    /**
+     * @return true if metadata-only changes are separated from other changes.
+     * @see #setSeparateMetadataChanges(boolean)
+     */
+    public boolean isSeparatingMetadataChanges() {
+        return mSeparateMetadataChanges;
+    }
+
+    /**
+     * @return true if metadata changes are separated and {@code snapshot} holds the same data as
+     * {@code previous}.
+     */
+    protected boolean isMetadataChange(@NonNull DocumentSnapshot previous,
+                                       @NonNull DocumentSnapshot snapshot) {
+        if (!mSeparateMetadataChanges || previous == snapshot) {
+            return false;
+        }
+
+        Object data = previous.getData();
+        return data != null && data.equals(snapshot.getData());
+    }
+
+    protected final void notifyOnMetadataChanged(@NonNull DocumentSnapshot snapshot, int index) {
+        flushPendingEvents();
+        for (ChangeEventListener listener : getListeners()) {
+            if (listener instanceof MetadataChangeListener) {
+                ((MetadataChangeListener) listener).onMetadataChanged(snapshot, index);
+            }
+        }
+    }
 }
@@ -0,0 +1,354 @@
+package com.firebase.ui.firestore;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.firebase.ui.common.BatchChangeEventListener;
+import com.firebase.ui.common.ChangeEventType;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exposes a Firestore query as an observable list of objects like {@link FirestoreArray}, but
+ * only holds on to full {@link DocumentSnapshot}s in a window around the visible range reported
+ * through {@link #setVisibleRange(int, int)}. Everywhere else, only the document ID is kept.
+ * <p>
+ * When a position without a snapshot enters the window, the document is read again from
+ * Firestore's local cache, which holds the results of active queries. Until it arrives, {@link
+ * #isLoaded(int)} returns false for that position and the snapshot must not be requested; a
+ * {@link ChangeEventType#CHANGED} event is sent once it is available.
+ * <p>
+ * Listeners are caught up one item at a time unless they receive batches, see {@link
+ * #setBatchingEnabled(boolean)}, so only listeners which receive batches can be added while some
+ * positions aren't loaded.
+ */
+public class WindowedFirestoreArray<T> extends ObservableSnapshotArray<T>
+        implements EventListener<QuerySnapshot> {
+    private static final String TAG = "WindowedFirestoreArray";
+
+    /**
+     * The default number of positions on each side of the visible range for which snapshots are
+     * kept.
+     */
+    public static final int DEFAULT_WINDOW_MARGIN = 50;
+
+    private final Query mQuery;
+    private final MetadataChanges mMetadataChanges;
+    private final int mMargin;
+    private ListenerRegistration mRegistration;
+
+    /**
+     * The {@link DocumentSnapshot} at each position inside the window, or its document ID.
+     */
+    private final List<Object> mEntries = new ArrayList<>();
+    private int mMaterializedCount;
+    private int mWindowStart;
+    /** Exclusive */
+    private int mWindowEnd;
+
+    /** The collection of the results, used to read released documents again. */
+    private CollectionReference mCollection;
+    /** IDs of the documents being read from the cache. */
+    private final Set<String> mLoading = new HashSet<>();
+
+    private final List<DocumentSnapshot> mSnapshots = new AbstractList<DocumentSnapshot>() {
+        @Override
+        public DocumentSnapshot get(int index) {
+            return materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return mEntries.size();
+        }
+
+        @Override
+        public void clear() {
+            mEntries.clear();
+            mMaterializedCount = 0;
+            mLoading.clear();
+        }
+    };
+
+    /**
+     * Create a new WindowedFirestoreArray keeping {@link #DEFAULT_WINDOW_MARGIN} snapshots on each
+     * side of the visible range.
+     *
+     * @param query  query to listen to.
+     * @param parser parser for DocumentSnapshots.
+     * @see ObservableSnapshotArray#ObservableSnapshotArray(SnapshotParser)
+     */
+    public WindowedFirestoreArray(@NonNull Query query, @NonNull SnapshotParser<T> parser) {
+        this(query, MetadataChanges.EXCLUDE, parser, DEFAULT_WINDOW_MARGIN);
+    }
+
+    /**
+     * @param changes metadata options for the query listen.
+     * @param margin  the number of positions on each side of the visible range for which full
+     *                snapshots are kept.
+     * @see #WindowedFirestoreArray(Query, SnapshotParser)
+     */
+    public WindowedFirestoreArray(@NonNull Query query,
+                                  @NonNull MetadataChanges changes,
+                                  @NonNull SnapshotParser<T> parser,
+                                  int margin) {
+        super(parser);
+        if (margin < 0) {
+            throw new IllegalArgumentException("Window margin cannot be negative.");
+        }
+
+        mQuery = query;
+        mMetadataChanges = changes;
+        mMargin = margin;
+        mWindowEnd = margin + 1;
+    }
+
+    @NonNull
+    @Override
+    protected List<DocumentSnapshot> getSnapshots() {
+        return mSnapshots;
+    }
+
+    /**
+     * @return the number of full snapshots currently held, as opposed to document IDs.
+     */
+    public int getMaterializedCount() {
+        return mMaterializedCount;
+    }
+
+    @Override
+    public boolean isLoaded(int index) {
+        return mEntries.get(index) instanceof DocumentSnapshot;
+    }
+
+    @NonNull
+    @Override
+    protected String getSnapshotId(int index) {
+        Object entry = mEntries.get(index);
+        return entry instanceof DocumentSnapshot
+                ? ((DocumentSnapshot) entry).getId()
+                : (String) entry;
+    }
+
+    @NonNull
+    @Override
+    public ChangeEventListener addChangeEventListener(@NonNull ChangeEventListener listener) {
+        if (mMaterializedCount < mEntries.size()
+                && !(isBatchingEnabled() && listener instanceof BatchChangeEventListener)) {
+            throw new IllegalStateException("Only listeners which receive batches can be caught"
+                    + " up while documents outside the window aren't loaded. Enable batching"
+                    + " with setBatchingEnabled(true) and implement BatchChangeEventListener.");
+        }
+        return super.addChangeEventListener(listener);
+    }
+
+    @Override
+    public void setVisibleRange(int first, int last) {
+        int oldStart = mWindowStart;
+        int oldEnd = Math.min(mWindowEnd, mEntries.size());
+        mWindowStart = Math.max(first - mMargin, 0);
+        mWindowEnd = Math.max(last, first) + mMargin + 1;
+
+        if (mMaterializedCount > 2 * (mWindowEnd - mWindowStart)) {
+            // Positions shifted enough for snapshots to pile up outside the window
+            releaseOutsideWindow(0, mEntries.size());
+        } else {
+            releaseOutsideWindow(oldStart, oldEnd);
+        }
+        loadWindow();
+
+        super.setVisibleRange(first, last);
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        mRegistration = mQuery.addSnapshotListener(mMetadataChanges, this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mRegistration.remove();
+        mRegistration = null;
+    }
+
+    @Override
+    public void onEvent(QuerySnapshot snapshots, FirebaseFirestoreException e) {
+        if (e != null) {
+            notifyOnError(e);
+            return;
+        }
+
+        // Break down each document event
+        List<DocumentChange> changes = snapshots.getDocumentChanges(mMetadataChanges);
+        for (DocumentChange change : changes) {
+            switch (change.getType()) {
+                case ADDED:
+                    onDocumentAdded(change);
+                    break;
+                case REMOVED:
+                    onDocumentRemoved(change);
+                    break;
+                case MODIFIED:
+                    onDocumentModified(change);
+                    break;
+            }
+        }
+
+        if (mMaterializedCount > 2 * (mWindowEnd - mWindowStart)) {
+            releaseOutsideWindow(0, mEntries.size());
+        }
+        // Changes may have shifted released documents into the window
+        loadWindow();
+
+        notifyOnDataChanged();
+    }
+
+    private void onDocumentAdded(DocumentChange change) {
+        QueryDocumentSnapshot snapshot = change.getDocument();
+        insertEntry(change.getNewIndex(), snapshot);
+        notifyOnChildChanged(ChangeEventType.ADDED, snapshot, change.getNewIndex(), -1);
+    }
+
+    private void onDocumentRemoved(DocumentChange change) {
+        removeEntry(change.getOldIndex());
+        QueryDocumentSnapshot snapshot = change.getDocument();
+        notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, -1, change.getOldIndex());
+    }
+
+    private void onDocumentModified(DocumentChange change) {
+        QueryDocumentSnapshot snapshot = change.getDocument();
+        if (change.getOldIndex() == change.getNewIndex()) {
+            // Document modified only. A released entry can't be compared, so it counts as a change.
+            Object previous = mEntries.get(change.getNewIndex());
+            removeEntry(change.getNewIndex());
+            insertEntry(change.getNewIndex(), snapshot);
+            if (previous instanceof DocumentSnapshot
+                    && isMetadataChange((DocumentSnapshot) previous, snapshot)) {
+                notifyOnMetadataChanged(snapshot, change.getNewIndex());
+            } else {
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
+                        change.getNewIndex(), change.getNewIndex());
+            }
+        } else {
+            // Document moved and possibly also modified
+            removeEntry(change.getOldIndex());
+            insertEntry(change.getNewIndex(), snapshot);
+
+            notifyOnChildChanged(ChangeEventType.MOVED, snapshot,
+                    change.getNewIndex(), change.getOldIndex());
+            notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
+                    change.getNewIndex(), change.getNewIndex());
+        }
+    }
+
+    private void insertEntry(int index, DocumentSnapshot snapshot) {
+        if (mCollection == null) {
+            mCollection = snapshot.getReference().getParent();
+        }
+
+        if (isInWindow(index)) {
+            mEntries.add(index, snapshot);
+            mMaterializedCount++;
+        } else {
+            mEntries.add(index, snapshot.getId());
+        }
+    }
+
+    private void removeEntry(int index) {
+        if (mEntries.remove(index) instanceof DocumentSnapshot) {
+            mMaterializedCount--;
+        }
+    }
+
+    private DocumentSnapshot materialize(int index) {
+        Object entry = mEntries.get(index);
+        if (entry instanceof DocumentSnapshot) {
+            return (DocumentSnapshot) entry;
+        }
+
+        load((String) entry);
+        throw new IllegalStateException("Document " + entry + " at position " + index
+                + " isn't loaded yet. Check isLoaded(int) before getting the snapshot.");
+    }
+
+    private void loadWindow() {
+        int end = Math.min(mWindowEnd, mEntries.size());
+        for (int i = mWindowStart; i < end; i++) {
+            Object entry = mEntries.get(i);
+            if (entry instanceof String) {
+                load((String) entry);
+            }
+        }
+    }
+
+    private void load(final String id) {
+        if (!mLoading.add(id)) {
+            return;
+        }
+
+        mCollection.document(id).get(Source.CACHE).addOnCompleteListener(
+                new OnCompleteListener<DocumentSnapshot>() {
+                    @Override
+                    public void onComplete(@NonNull Task<DocumentSnapshot> task) {
+                        if (!mLoading.remove(id)) {
+                            // Cleared in the meantime
+                            return;
+                        }
+
+                        if (task.isSuccessful() && task.getResult().exists()) {
+                            onLoaded(id, task.getResult());
+                        } else {
+                            // Left unloaded, tried again when it next enters the window
+                            Log.w(TAG, "Could not read document " + id + " from the cache",
+                                    task.getException());
+                        }
+                    }
+                });
+    }
+
+    private void onLoaded(String id, DocumentSnapshot snapshot) {
+        // Only documents still in the window are kept, everything else was released meanwhile
+        int end = Math.min(mWindowEnd, mEntries.size());
+        for (int i = mWindowStart; i < end; i++) {
+            if (id.equals(mEntries.get(i))) {
+                mEntries.set(i, snapshot);
+                mMaterializedCount++;
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, i, i);
+                return;
+            }
+        }
+    }
+
+    private void releaseOutsideWindow(int start, int end) {
+        for (int i = start; i < end; i++) {
+            Object entry = mEntries.get(i);
+            if (entry instanceof DocumentSnapshot && !isInWindow(i)) {
+                mEntries.set(i, ((DocumentSnapshot) entry).getId());
+                mMaterializedCount--;
+            }
+        }
+    }
+
+    private boolean isInWindow(int index) {
+        return index >= mWindowStart && index < mWindowEnd;
+    }
+}
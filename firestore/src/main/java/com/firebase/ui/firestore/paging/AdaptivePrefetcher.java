@@ -0,0 +1,88 @@
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.MainThread;
+
+/**
+ * Estimates how fast the user scrolls and how long a page takes to load, and from that how big
+ * pages should be and whether the next page should be fetched before the paging library asks for
+ * it. Shared by every data source created by a {@link FirestoreDataSource.Factory}, so estimates
+ * survive invalidation.
+ */
+@MainThread
+final class AdaptivePrefetcher {
+    /** Weight of the newest sample in the moving averages. */
+    private static final double ALPHA = 0.3;
+    /** How much earlier than strictly needed pages should arrive. */
+    private static final double SAFETY_FACTOR = 1.5;
+    /** Pages never grow past this multiple of the configured page size. */
+    private static final int MAX_GROWTH = 4;
+    /** Gaps between binds longer than this are pauses rather than scrolling. */
+    private static final long MAX_SAMPLE_GAP_MILLIS = 500;
+
+    private final int mPrefetchDistance;
+
+    /** Items per millisecond, or 0 before the first sample. */
+    private double mVelocity;
+    /** Milliseconds, or -1 before the first sample. */
+    private double mLatency = -1;
+
+    private int mLastPosition = -1;
+    private long mLastBindTime;
+    private int mStallCount;
+
+    /**
+     * @param prefetchDistance the prefetch distance of the paged list, in items.
+     */
+    AdaptivePrefetcher(int prefetchDistance) {
+        mPrefetchDistance = prefetchDistance;
+    }
+
+    public void onItemBound(int position, long now) {
+        long elapsed = now - mLastBindTime;
+        if (mLastPosition != -1 && elapsed > 0 && elapsed <= MAX_SAMPLE_GAP_MILLIS) {
+            double velocity = Math.abs(position - mLastPosition) / (double) elapsed;
+            mVelocity = ALPHA * velocity + (1 - ALPHA) * mVelocity;
+        } else if (elapsed > MAX_SAMPLE_GAP_MILLIS) {
+            mVelocity = 0;
+        }
+
+        mLastPosition = position;
+        mLastBindTime = now;
+    }
+
+    public void onPageLoaded(long latencyMillis) {
+        mLatency = mLatency == -1 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * mLatency;
+    }
+
+    /**
+     * The user reached the end of the loaded items while a page was still loading.
+     */
+    public void onStall() {
+        mStallCount++;
+    }
+
+    public int getStallCount() {
+        return mStallCount;
+    }
+
+    /**
+     * @return a page size large enough to cover the items scrolled through while the page after
+     * it loads, between {@code requested} and {@link #MAX_GROWTH} times that.
+     */
+    public int getPageSize(int requested) {
+        int needed = (int) Math.ceil(getItemsPerLoad());
+        return Math.min(Math.max(requested, needed), requested * MAX_GROWTH);
+    }
+
+    /**
+     * @return true if at the current speed the user would reach the end of the loaded items
+     * before a page requested at the prefetch distance arrives.
+     */
+    public boolean shouldPrefetch() {
+        return getItemsPerLoad() > mPrefetchDistance;
+    }
+
+    private double getItemsPerLoad() {
+        return mLatency == -1 ? 0 : mVelocity * mLatency * SAFETY_FACTOR;
+    }
+}
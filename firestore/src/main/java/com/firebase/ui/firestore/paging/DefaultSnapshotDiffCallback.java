@@ -1,21 +1,44 @@
 package com.firebase.ui.firestore.paging;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.RestrictTo;
 import android.support.v7.util.DiffUtil;
+import android.util.LruCache;
 
 import com.firebase.ui.firestore.SnapshotParser;
 import com.google.firebase.firestore.DocumentSnapshot;
 
 /**
  * Default diff callback implementation for Firestore snapshots.
+ * <p>
+ * Contents are first compared with {@link DocumentSnapshot#equals(Object)}, which covers the
+ * document ID, version, data, and metadata without parsing anything. Only snapshots which differ
+ * there are parsed, and the parsed models are kept so that a snapshot compared against several
+ * others during a diff, or in consecutive diffs, is parsed once.
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<DocumentSnapshot> {
 
+    private static final int DEFAULT_CACHE_SIZE = 200;
+
     private final SnapshotParser<T> mParser;
 
+    /**
+     * Parsed models keyed by snapshot. Snapshots are equal only when they hold the same version
+     * of the same document, so a newer version is never matched with an old model.
+     */
+    private final LruCache<DocumentSnapshot, T> mModels;
+
     public DefaultSnapshotDiffCallback(SnapshotParser<T> parser) {
+        this(parser, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the number of parsed models to keep.
+     */
+    public DefaultSnapshotDiffCallback(SnapshotParser<T> parser, int cacheSize) {
         mParser = parser;
+        mModels = new LruCache<>(cacheSize);
     }
 
     @Override
@@ -25,9 +48,27 @@ public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<Docume
 
     @Override
     public boolean areContentsTheSame(DocumentSnapshot oldItem, DocumentSnapshot newItem) {
-        T oldModel = mParser.parseSnapshot(oldItem);
-        T newModel = mParser.parseSnapshot(newItem);
+        if (oldItem == newItem || oldItem.equals(newItem)) {
+            return true;
+        }
+
+        T oldModel = parse(oldItem);
+        T newModel = parse(newItem);
 
         return oldModel.equals(newModel);
     }
+
+    /**
+     * Safe to call from the diff thread: {@link LruCache} is synchronized, and a racing parse
+     * only costs a duplicate model.
+     */
+    @NonNull
+    private T parse(@NonNull DocumentSnapshot snapshot) {
+        T model = mModels.get(snapshot);
+        if (model == null) {
+            model = mParser.parseSnapshot(snapshot);
+            mModels.put(snapshot, model);
+        }
+        return model;
+    }
 }
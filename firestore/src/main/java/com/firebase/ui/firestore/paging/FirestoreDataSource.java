@@ -4,6 +4,11 @@ import android.arch.lifecycle.LiveData;
 import android.arch.lifecycle.MutableLiveData;
 import android.arch.paging.DataSource;
 import android.arch.paging.PageKeyedDataSource;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
@@ -11,11 +16,14 @@ import android.util.Log;
 
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.Source;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -33,29 +41,198 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
     public static class Factory extends DataSource.Factory<PageKey, DocumentSnapshot> {
 
         private final Query mQuery;
+        private final Query mReverseQuery;
         private final Source mSource;
+        private final boolean mCacheFirst;
+        private final int mRealtimePageMargin;
+        private final int mMaxSize;
+
+        /** Where the next data source starts, set when the previous one re-anchors. */
+        private volatile DocumentSnapshot mAnchor;
+        @Nullable private AdaptivePrefetcher mPrefetcher;
+        @Nullable private RetryScheduler mRetryScheduler;
 
         public Factory(Query query, Source source) {
+            this(query, null, source, false, REALTIME_DISABLED, SIZE_UNBOUNDED);
+        }
+
+        /**
+         * @see FirestoreDataSource#FirestoreDataSource(Query, Query, Source, boolean, int)
+         * @param maxSize if not {@link #SIZE_UNBOUNDED}, once a data source has loaded more than
+         *                this many documents it is invalidated and the next one starts near the
+         *                last bound document. Requires {@code reverseQuery}.
+         */
+        public Factory(Query query,
+                       @Nullable Query reverseQuery,
+                       Source source,
+                       boolean cacheFirst,
+                       int realtimePageMargin,
+                       int maxSize) {
             mQuery = query;
+            mReverseQuery = reverseQuery;
             mSource = source;
+            mCacheFirst = cacheFirst;
+            mRealtimePageMargin = realtimePageMargin;
+            mMaxSize = reverseQuery == null ? SIZE_UNBOUNDED : maxSize;
+        }
+
+        /**
+         * Adapt page sizes to the scroll speed and load latency, and fetch the next page early
+         * when it would otherwise arrive too late. Must be called before the first data source is
+         * created.
+         *
+         * @param prefetchDistance the prefetch distance of the paged list config.
+         */
+        public void setAdaptivePrefetch(int prefetchDistance) {
+            mPrefetcher = new AdaptivePrefetcher(prefetchDistance);
+        }
+
+        /**
+         * Retry failed loads automatically. Must be called before the first data source is
+         * created.
+         *
+         * @param context if not null, waiting retries run as soon as connectivity returns.
+         */
+        public void setRetryPolicy(@NonNull RetryPolicy policy, @Nullable Context context) {
+            setRetryScheduler(new RetryScheduler(policy, context));
+        }
+
+        void setRetryScheduler(@NonNull RetryScheduler scheduler) {
+            mRetryScheduler = scheduler;
         }
 
         @Override
         public DataSource<PageKey, DocumentSnapshot> create() {
-            return new FirestoreDataSource(mQuery, mSource);
+            return new FirestoreDataSource(mQuery, mReverseQuery, mSource, mCacheFirst,
+                    mRealtimePageMargin, this, mAnchor);
         }
     }
 
+    /**
+     * Page margin for a data source which doesn't listen to its pages.
+     */
+    public static final int REALTIME_DISABLED = -1;
+
+    /**
+     * Max size of a data source which never drops documents.
+     */
+    public static final int SIZE_UNBOUNDED = -1;
+
     private final MutableLiveData<LoadingState> mLoadingState = new MutableLiveData<>();
+    private final MutableLiveData<Integer> mChangedPosition = new MutableLiveData<>();
 
     private final Query mBaseQuery;
+    @Nullable private final Query mReverseQuery;
     private final Source mSource;
+    private final boolean mCacheFirst;
+    @Nullable private final PageListeners mPageListeners;
 
-    private Runnable mRetryRunnable;
+    @Nullable private final Factory mFactory;
+    @Nullable private final DocumentSnapshot mAnchor;
+    /** The loaded documents in order, only tracked when the size is bounded. */
+    private final List<DocumentSnapshot> mLoaded = new ArrayList<>();
+    private DocumentSnapshot mLastBound;
+    private int mLastLoadSize;
+
+    /**
+     * Set from the main thread when a page arrives, and taken by the paging library's fetch
+     * executor when it asks for that page.
+     */
+    private final Object mPrefetchLock = new Object();
+    private Prefetch mPrefetch;
+    private volatile boolean mLoadingAfter;
+    private boolean mStalled;
+    private int mLoadedCount;
+
+    /** Retries of every load which failed and wasn't retried yet. */
+    private final List<Runnable> mFailedLoads = new ArrayList<>();
+    private int mConsecutiveFailures;
 
     public FirestoreDataSource(Query baseQuery, Source source) {
+        this(baseQuery, null, source, false, REALTIME_DISABLED);
+    }
+
+    /**
+     * @param reverseQuery       the base query with every ordering reversed, used to load pages
+     *                           before the first loaded one. If null, only pages after it are
+     *                           loaded.
+     * @param cacheFirst         if true, {@code source} is ignored. Each page is served from the
+     *                           cache when it has any documents for it, then fetched from the
+     *                           server, and the data source is invalidated if the two differ.
+     * @param realtimePageMargin if not {@link #REALTIME_DISABLED}, listen to the loaded pages
+     *                           within this many pages of the last bound position. Edits are
+     *                           reported through {@link #getChangedPosition()} and any other
+     *                           change invalidates the data source.
+     */
+    public FirestoreDataSource(Query baseQuery,
+                               @Nullable Query reverseQuery,
+                               Source source,
+                               boolean cacheFirst,
+                               int realtimePageMargin) {
+        this(baseQuery, reverseQuery, source, cacheFirst, realtimePageMargin, null, null);
+    }
+
+    private FirestoreDataSource(Query baseQuery,
+                                @Nullable Query reverseQuery,
+                                Source source,
+                                boolean cacheFirst,
+                                int realtimePageMargin,
+                                @Nullable Factory factory,
+                                @Nullable DocumentSnapshot anchor) {
         mBaseQuery = baseQuery;
+        mReverseQuery = reverseQuery;
         mSource = source;
+        mCacheFirst = cacheFirst;
+        mFactory = factory;
+        mAnchor = reverseQuery == null ? null : anchor;
+
+        if (realtimePageMargin == REALTIME_DISABLED) {
+            mPageListeners = null;
+        } else {
+            mPageListeners = new PageListeners(baseQuery, realtimePageMargin, mAnchor == null,
+                    new PageListeners.Callback() {
+                        @Override
+                        public void onDocumentChanged(int position) {
+                            mChangedPosition.setValue(position);
+                        }
+
+                        @Override
+                        public void onPagesChanged() {
+                            invalidate();
+                        }
+                    });
+            addInvalidatedCallback(new InvalidatedCallback() {
+                @Override
+                public void onInvalidated() {
+                    // Invalidation can come from any thread
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mPageListeners.setActive(false);
+                        }
+                    });
+                }
+            });
+        }
+
+        final RetryScheduler scheduler = getRetryScheduler();
+        if (scheduler != null) {
+            addInvalidatedCallback(new InvalidatedCallback() {
+                @Override
+                public void onInvalidated() {
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Free the slots taken by retries which would do nothing anyway
+                            for (Runnable retry : mFailedLoads) {
+                                scheduler.cancel(retry);
+                            }
+                            mFailedLoads.clear();
+                        }
+                    });
+                }
+            });
+        }
     }
 
     @Override
@@ -65,16 +242,26 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
         // Set initial loading state
         mLoadingState.postValue(LoadingState.LOADING_INITIAL);
 
-        mBaseQuery.limit(params.requestedLoadSize)
-                .get(mSource)
-                .addOnSuccessListener(new OnLoadSuccessListener() {
+        Query query = mBaseQuery;
+        if (mAnchor != null) {
+            query = query.startAt(mAnchor);
+        }
+
+        mLastLoadSize = params.requestedLoadSize;
+        load(query.limit(params.requestedLoadSize),
+                new OnLoadSuccessListener() {
                     @Override
                     protected void setResult(@NonNull QuerySnapshot snapshot) {
+                        List<DocumentSnapshot> data = snapshot.getDocuments();
+                        PageKey previousPage = mAnchor == null ? null : getPreviousPageKey(data);
                         PageKey nextPage = getNextPageKey(snapshot);
-                        callback.onResult(snapshot.getDocuments(), null, nextPage);
+                        // The next page may be requested as soon as this one is delivered
+                        maybePrefetch(nextPage, snapshot);
+                        callback.onResult(data, previousPage, nextPage);
+                        onPageLoaded(data, false);
                     }
-                })
-                .addOnFailureListener(new OnLoadFailureListener() {
+                },
+                new OnLoadFailureListener() {
                     @Override
                     protected Runnable getRetryRunnable() {
                         return getRetryLoadInitial(params, callback);
@@ -84,13 +271,36 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
     }
 
     @Override
-    public void loadBefore(@NonNull LoadParams<PageKey> params,
-                           @NonNull LoadCallback<PageKey, DocumentSnapshot> callback) {
-        // Ignored for now, since we only ever append to the initial load.
-        // Future work:
-        //  * Could we dynamically unload past pages?
-        //  * Could we ask the developer for both a forward and reverse base query
-        //    so that we can load backwards easily?
+    public void loadBefore(@NonNull final LoadParams<PageKey> params,
+                           @NonNull final LoadCallback<PageKey, DocumentSnapshot> callback) {
+        if (mReverseQuery == null) {
+            // Only data sources started at an anchor have pages before the initial one
+            return;
+        }
+
+        final PageKey key = params.key;
+
+        // Set loading state
+        mLoadingState.postValue(LoadingState.LOADING_MORE);
+
+        // The key starts after the first loaded document in the reversed order
+        mLastLoadSize = getLoadSize(params.requestedLoadSize);
+        load(key.getPageQuery(mReverseQuery, mLastLoadSize),
+                new OnLoadSuccessListener(false) {
+                    @Override
+                    protected void setResult(@NonNull QuerySnapshot snapshot) {
+                        List<DocumentSnapshot> data = new ArrayList<>(snapshot.getDocuments());
+                        Collections.reverse(data);
+                        callback.onResult(data, getPreviousPageKey(data));
+                        onPageLoaded(data, true);
+                    }
+                },
+                new OnLoadFailureListener() {
+                    @Override
+                    protected Runnable getRetryRunnable() {
+                        return getRetryLoadBefore(params, callback);
+                    }
+                });
     }
 
     @Override
@@ -101,22 +311,162 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
         // Set loading state
         mLoadingState.postValue(LoadingState.LOADING_MORE);
 
-        key.getPageQuery(mBaseQuery, params.requestedLoadSize)
-                .get(mSource)
-                .addOnSuccessListener(new OnLoadSuccessListener() {
+        OnLoadSuccessListener onSuccess = new OnLoadSuccessListener() {
+            @Override
+            protected void setResult(@NonNull QuerySnapshot snapshot) {
+                PageKey nextPage = getNextPageKey(snapshot);
+                maybePrefetch(nextPage, snapshot);
+                callback.onResult(snapshot.getDocuments(), nextPage);
+                onPageLoaded(snapshot.getDocuments(), false);
+            }
+        };
+        OnLoadFailureListener onFailure = new OnLoadFailureListener() {
+            @Override
+            protected Runnable getRetryRunnable() {
+                return getRetryLoadAfter(params, callback);
+            }
+        };
+
+        mStalled = false;
+        mLoadingAfter = true;
+        Prefetch prefetch;
+        synchronized (mPrefetchLock) {
+            prefetch = mPrefetch;
+            mPrefetch = null;
+        }
+        if (prefetch != null && prefetch.mKey == key) {
+            // The page was fetched ahead of time, and may already be here
+            mLastLoadSize = prefetch.mSize;
+            prefetch.mTask.addOnSuccessListener(onSuccess).addOnFailureListener(onFailure);
+            return;
+        }
+
+        mLastLoadSize = getLoadSize(params.requestedLoadSize);
+        load(key.getPageQuery(mBaseQuery, mLastLoadSize), onSuccess, onFailure);
+
+    }
+
+    /**
+     * Run {@code query} and report the result to the listeners. In cache-first mode, the result
+     * comes from the cache when it has any, and is checked against the server afterwards.
+     */
+    private void load(@NonNull final Query query,
+                      @NonNull final OnLoadSuccessListener onSuccess,
+                      @NonNull final OnLoadFailureListener onFailure) {
+        if (!mCacheFirst) {
+            getTimed(query)
+                    .addOnSuccessListener(onSuccess)
+                    .addOnFailureListener(onFailure);
+            return;
+        }
+
+        query.get(Source.CACHE)
+                .addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
                     @Override
-                    protected void setResult(@NonNull QuerySnapshot snapshot) {
-                        PageKey nextPage = getNextPageKey(snapshot);
-                        callback.onResult(snapshot.getDocuments(), nextPage);
+                    public void onSuccess(QuerySnapshot cached) {
+                        if (cached.isEmpty()) {
+                            // Either nothing is cached or this is the end of the results, only
+                            // the server can tell which.
+                            loadFromServer(query, onSuccess, onFailure);
+                            return;
+                        }
+
+                        onSuccess.onSuccess(cached);
+                        reconcile(query, cached);
                     }
                 })
-                .addOnFailureListener(new OnLoadFailureListener() {
+                .addOnFailureListener(new OnFailureListener() {
                     @Override
-                    protected Runnable getRetryRunnable() {
-                        return getRetryLoadAfter(params, callback);
+                    public void onFailure(@NonNull Exception e) {
+                        loadFromServer(query, onSuccess, onFailure);
                     }
                 });
+    }
+
+    /**
+     * Get {@code query} from {@link #mSource}, reporting how long it took to the prefetcher.
+     */
+    @NonNull
+    private Task<QuerySnapshot> getTimed(@NonNull Query query) {
+        Task<QuerySnapshot> task = query.get(mSource);
+        final AdaptivePrefetcher prefetcher = getPrefetcher();
+        if (prefetcher != null) {
+            final long start = SystemClock.elapsedRealtime();
+            task.addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
+                @Override
+                public void onSuccess(QuerySnapshot snapshot) {
+                    prefetcher.onPageLoaded(SystemClock.elapsedRealtime() - start);
+                }
+            });
+        }
+        return task;
+    }
+
+    @Nullable
+    private RetryScheduler getRetryScheduler() {
+        return mFactory == null ? null : mFactory.mRetryScheduler;
+    }
+
+    @Nullable
+    private AdaptivePrefetcher getPrefetcher() {
+        return mFactory == null ? null : mFactory.mPrefetcher;
+    }
+
+    private int getLoadSize(int requested) {
+        AdaptivePrefetcher prefetcher = getPrefetcher();
+        return prefetcher == null ? requested : prefetcher.getPageSize(requested);
+    }
+
+    /**
+     * Start fetching the page for {@code key} right away if waiting for the paging library to ask
+     * for it would likely leave the user looking at the end of the list.
+     */
+    private void maybePrefetch(@NonNull PageKey key, @NonNull QuerySnapshot loaded) {
+        AdaptivePrefetcher prefetcher = getPrefetcher();
+        if (prefetcher == null || mCacheFirst || loaded.getDocuments().isEmpty() || isInvalid()
+                || !prefetcher.shouldPrefetch()) {
+            return;
+        }
 
+        int size = getLoadSize(mLastLoadSize);
+        Prefetch prefetch = new Prefetch(key, size, getTimed(key.getPageQuery(mBaseQuery, size)));
+        synchronized (mPrefetchLock) {
+            mPrefetch = prefetch;
+        }
+    }
+
+    private void loadFromServer(@NonNull Query query,
+                                @NonNull OnLoadSuccessListener onSuccess,
+                                @NonNull OnLoadFailureListener onFailure) {
+        // Fall back to the cache when offline
+        query.get(Source.DEFAULT)
+                .addOnSuccessListener(onSuccess)
+                .addOnFailureListener(onFailure);
+    }
+
+    /**
+     * Fetch {@code query} from the server, and reload if the result differs from the page
+     * already served from the cache.
+     */
+    private void reconcile(@NonNull Query query, @NonNull final QuerySnapshot cached) {
+        query.get(Source.SERVER)
+                .addOnSuccessListener(new OnSuccessListener<QuerySnapshot>() {
+                    @Override
+                    public void onSuccess(QuerySnapshot server) {
+                        if (!isInvalid()
+                                && !Snapshots.isSamePage(cached.getDocuments(),
+                                        server.getDocuments())) {
+                            invalidate();
+                        }
+                    }
+                })
+                .addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(@NonNull Exception e) {
+                        // Keep showing the cached page
+                        Log.w(TAG, "reconcile:onFailure", e);
+                    }
+                });
     }
 
     private PageKey getNextPageKey(@NonNull QuerySnapshot snapshot) {
@@ -126,10 +476,119 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
         return new PageKey(last, null);
     }
 
+    @Nullable
+    private PageKey getPreviousPageKey(@NonNull List<DocumentSnapshot> data) {
+        // An empty page means we reached the start of the results
+        return data.isEmpty() ? null : new PageKey(data.get(0), null);
+    }
+
+    private void onPageLoaded(@NonNull List<DocumentSnapshot> data, boolean before) {
+        if (!before) {
+            mLoadingAfter = false;
+        }
+        if (isInvalid()) {
+            return;
+        }
+
+        mLoadedCount += data.size();
+
+        if (mPageListeners != null) {
+            if (!before) {
+                mPageListeners.addPageAfter(data);
+            } else if (data.isEmpty()) {
+                mPageListeners.setAtStart();
+            } else {
+                mPageListeners.addPageBefore(data);
+            }
+        }
+
+        if (mFactory != null && mFactory.mMaxSize != SIZE_UNBOUNDED) {
+            mLoaded.addAll(before ? 0 : mLoaded.size(), data);
+            if (mLoaded.size() > mFactory.mMaxSize) {
+                reanchor();
+            }
+        }
+    }
+
+    /**
+     * Drop every loaded page by invalidating, and have the next data source start a page before
+     * the last bound document so that it is still loaded.
+     */
+    private void reanchor() {
+        int index = mLastBound == null ? -1 : mLoaded.indexOf(mLastBound);
+        if (index == -1) {
+            index = mLoaded.size() / 2;
+        }
+
+        mFactory.mAnchor = mLoaded.get(Math.max(index - mLastLoadSize, 0));
+        invalidate();
+    }
+
     public LiveData<LoadingState> getLoadingState() {
         return mLoadingState;
     }
 
+    /**
+     * @return the position of the last document edited in a listened page, when realtime updates
+     * are enabled.
+     */
+    public LiveData<Integer> getChangedPosition() {
+        return mChangedPosition;
+    }
+
+    /**
+     * @return the latest version of {@code snapshot}, which may have been edited since its page
+     * was loaded when realtime updates are enabled.
+     */
+    @MainThread
+    @NonNull
+    public DocumentSnapshot getLatestSnapshot(@NonNull DocumentSnapshot snapshot) {
+        return mPageListeners == null ? snapshot : mPageListeners.getLatest(snapshot);
+    }
+
+    /**
+     * Track the last bound item, so that pages around it are listened to when realtime updates
+     * are enabled, and so that it stays loaded when re-anchoring.
+     */
+    @MainThread
+    public void onItemBound(int position, @NonNull DocumentSnapshot snapshot) {
+        mLastBound = snapshot;
+
+        AdaptivePrefetcher prefetcher = getPrefetcher();
+        if (prefetcher != null) {
+            prefetcher.onItemBound(position, SystemClock.elapsedRealtime());
+            if (mLoadingAfter && !mStalled && position >= mLoadedCount - 1) {
+                mStalled = true;
+                prefetcher.onStall();
+            }
+        }
+
+        if (mPageListeners != null && !isInvalid()) {
+            mPageListeners.onItemBound(position);
+        }
+    }
+
+    /**
+     * Stop or resume listening to pages when realtime updates are enabled.
+     */
+    @MainThread
+    public void setRealtimeUpdatesActive(boolean active) {
+        if (mPageListeners != null && !isInvalid()) {
+            mPageListeners.setActive(active);
+        }
+    }
+
+    /**
+     * @return how many times the user reached the end of the loaded items while the next page was
+     * still loading, across every data source of the same factory. Only counted when adaptive
+     * prefetching is enabled.
+     */
+    @MainThread
+    public int getStallCount() {
+        AdaptivePrefetcher prefetcher = getPrefetcher();
+        return prefetcher == null ? 0 : prefetcher.getStallCount();
+    }
+
     public void retry() {
         LoadingState currentState = mLoadingState.getValue();
         if (currentState != LoadingState.ERROR) {
@@ -137,12 +596,18 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
             return;
         }
 
-        if (mRetryRunnable == null) {
+        if (mFailedLoads.isEmpty()) {
             Log.w(TAG, "retry() called with no eligible retry runnable.");
             return;
         }
 
-        mRetryRunnable.run();
+        RetryScheduler scheduler = getRetryScheduler();
+        for (Runnable retry : new ArrayList<>(mFailedLoads)) {
+            if (scheduler != null) {
+                scheduler.cancel(retry);
+            }
+            retry.run();
+        }
     }
 
     @Nullable
@@ -165,6 +630,17 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
         };
     }
 
+    @NonNull
+    private Runnable getRetryLoadBefore(@NonNull final LoadParams<PageKey> params,
+                                        @NonNull final LoadCallback<PageKey, DocumentSnapshot> callback) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                loadBefore(params, callback);
+            }
+        };
+    }
+
     @NonNull
     private Runnable getRetryLoadInitial(@NonNull final LoadInitialParams<PageKey> params,
                                          @NonNull final LoadInitialCallback<PageKey, DocumentSnapshot> callback) {
@@ -176,11 +652,40 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
         };
     }
 
+    /**
+     * A page fetched before the paging library asked for it.
+     */
+    private static final class Prefetch {
+        final PageKey mKey;
+        final int mSize;
+        final Task<QuerySnapshot> mTask;
+
+        Prefetch(PageKey key, int size, Task<QuerySnapshot> task) {
+            mKey = key;
+            mSize = size;
+            mTask = task;
+        }
+    }
+
     /**
      * Success listener that sets success state and nullifies the retry runnable.
      */
     private abstract class OnLoadSuccessListener implements OnSuccessListener<QuerySnapshot> {
 
+        private final boolean mCanFinish;
+
+        public OnLoadSuccessListener() {
+            this(true);
+        }
+
+        /**
+         * @param canFinish whether an empty result means no more pages will be loaded at all,
+         *                  which isn't the case when loading backwards.
+         */
+        public OnLoadSuccessListener(boolean canFinish) {
+            mCanFinish = canFinish;
+        }
+
         @Override
         public void onSuccess(QuerySnapshot snapshot) {
             setResult(snapshot);
@@ -188,11 +693,11 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
 
             // Post the 'FINISHED' state when no more pages will be loaded. The data source
             // callbacks interpret an empty result list as a signal to cancel any future loads.
-            if (snapshot.getDocuments().isEmpty()) {
+            if (mCanFinish && snapshot.getDocuments().isEmpty()) {
                 mLoadingState.postValue(LoadingState.FINISHED);
             }
 
-            mRetryRunnable = null;
+            mConsecutiveFailures = 0;
         }
 
         protected abstract void setResult(@NonNull QuerySnapshot snapshot);
@@ -210,9 +715,26 @@ public class FirestoreDataSource extends PageKeyedDataSource<PageKey, DocumentSn
             // On error we do NOT post any value to the PagedList, we just tell
             // the developer that we are now in the error state.
             mLoadingState.postValue(LoadingState.ERROR);
+            mLoadingAfter = false;
 
             // Set the retry action
-            mRetryRunnable = getRetryRunnable();
+            final Runnable load = getRetryRunnable();
+            Runnable retry = new Runnable() {
+                @Override
+                public void run() {
+                    if (mFailedLoads.remove(this) && !isInvalid()) {
+                        load.run();
+                    }
+                }
+            };
+            mFailedLoads.add(retry);
+
+            // Retry on our own when a policy is set
+            RetryScheduler scheduler = getRetryScheduler();
+            if (scheduler != null) {
+                scheduler.schedule(retry, mConsecutiveFailures);
+            }
+            mConsecutiveFailures++;
         }
 
         protected abstract Runnable getRetryRunnable();
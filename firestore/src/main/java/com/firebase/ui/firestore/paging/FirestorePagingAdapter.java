@@ -11,6 +11,7 @@ import android.arch.paging.PagedList;
 import android.arch.paging.PagedListAdapter;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.recyclerview.extensions.AsyncDifferConfig;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 
@@ -32,7 +33,7 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
 
     private final LiveData<PagedList<DocumentSnapshot>> mSnapshots;
     private final LiveData<LoadingState> mLoadingState;
-    private final LiveData<FirestoreDataSource> mDataSource;
+    private final LiveData<Integer> mChangedPosition;
 
     private final Observer<LoadingState> mStateObserver =
             new Observer<LoadingState>() {
@@ -46,6 +47,19 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
                 }
             };
 
+    private final Observer<Integer> mChangeObserver =
+            new Observer<Integer>() {
+                @Override
+                public void onChanged(@Nullable Integer position) {
+                    // The page may not have reached the adapter yet
+                    if (position == null || position >= getItemCount()) {
+                        return;
+                    }
+
+                    notifyItemChanged(position);
+                }
+            };
+
     private final Observer<PagedList<DocumentSnapshot>> mDataObserver =
             new Observer<PagedList<DocumentSnapshot>>() {
                 @Override
@@ -62,7 +76,7 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
      * Construct a new FirestorePagingAdapter from the given {@link FirestorePagingOptions}.
      */
     public FirestorePagingAdapter(@NonNull FirestorePagingOptions<T> options) {
-        super(options.getDiffCallback());
+        super(getDifferConfig(options));
 
         mSnapshots = options.getData();
 
@@ -75,11 +89,12 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
                     }
                 });
 
-        mDataSource = Transformations.map(mSnapshots,
-                new Function<PagedList<DocumentSnapshot>, FirestoreDataSource>() {
+        mChangedPosition = Transformations.switchMap(mSnapshots,
+                new Function<PagedList<DocumentSnapshot>, LiveData<Integer>>() {
                     @Override
-                    public FirestoreDataSource apply(PagedList<DocumentSnapshot> input) {
-                        return (FirestoreDataSource) input.getDataSource();
+                    public LiveData<Integer> apply(PagedList<DocumentSnapshot> input) {
+                        FirestoreDataSource dataSource = (FirestoreDataSource) input.getDataSource();
+                        return dataSource.getChangedPosition();
                     }
                 });
 
@@ -90,18 +105,38 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
         }
     }
 
+    private static AsyncDifferConfig<DocumentSnapshot> getDifferConfig(
+            @NonNull FirestorePagingOptions<?> options) {
+        AsyncDifferConfig.Builder<DocumentSnapshot> builder =
+                new AsyncDifferConfig.Builder<>(options.getDiffCallback());
+        if (options.getDiffExecutor() != null) {
+            builder.setBackgroundThreadExecutor(options.getDiffExecutor());
+        }
+        return builder.build();
+    }
+
     /**
      * If {@link #onLoadingStateChanged(LoadingState)} indicates error state, call this method
      * to attempt to retry the most recent failure.
      */
     public void retry() {
-        FirestoreDataSource source = mDataSource.getValue();
-        if (source == null) {
+        PagedList<DocumentSnapshot> list = getCurrentList();
+        if (list == null) {
             Log.w(TAG, "Called retry() when FirestoreDataSource is null!");
             return;
         }
 
-        source.retry();
+        ((FirestoreDataSource) list.getDataSource()).retry();
+    }
+
+    /**
+     * @return how many times the user scrolled to the end of the loaded items while the next page
+     * was still loading. Only counted when adaptive prefetching is enabled with {@link
+     * FirestorePagingOptions.Builder#setAdaptivePrefetch(boolean)}.
+     */
+    public int getStallCount() {
+        FirestoreDataSource source = getCurrentDataSource();
+        return source == null ? 0 : source.getStallCount();
     }
 
     /**
@@ -111,6 +146,12 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
     public void startListening() {
         mSnapshots.observeForever(mDataObserver);
         mLoadingState.observeForever(mStateObserver);
+        mChangedPosition.observeForever(mChangeObserver);
+
+        FirestoreDataSource source = getCurrentDataSource();
+        if (source != null) {
+            source.setRealtimeUpdatesActive(true);
+        }
     }
 
     /**
@@ -121,14 +162,31 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
     public void stopListening() {
         mSnapshots.removeObserver(mDataObserver);
         mLoadingState.removeObserver(mStateObserver);
+        mChangedPosition.removeObserver(mChangeObserver);
+
+        FirestoreDataSource source = getCurrentDataSource();
+        if (source != null) {
+            source.setRealtimeUpdatesActive(false);
+        }
     }
 
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
         DocumentSnapshot snapshot = getItem(position);
+        FirestoreDataSource source = getCurrentDataSource();
+        if (source != null) {
+            source.onItemBound(position, snapshot);
+            snapshot = source.getLatestSnapshot(snapshot);
+        }
         onBindViewHolder(holder, position, mParser.parseSnapshot(snapshot));
     }
 
+    @Nullable
+    private FirestoreDataSource getCurrentDataSource() {
+        PagedList<DocumentSnapshot> list = getCurrentList();
+        return list == null ? null : (FirestoreDataSource) list.getDataSource();
+    }
+
     /**
      * @param model the model object containing the data that should be used to populate the view.
      * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
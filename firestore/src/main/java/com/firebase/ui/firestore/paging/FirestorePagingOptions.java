@@ -4,6 +4,7 @@ import android.arch.lifecycle.LifecycleOwner;
 import android.arch.lifecycle.LiveData;
 import android.arch.paging.LivePagedListBuilder;
 import android.arch.paging.PagedList;
+import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.util.DiffUtil;
@@ -14,6 +15,8 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.Source;
 
+import java.util.concurrent.Executor;
+
 /**
  * Options to configure an {@link FirestorePagingAdapter}.
  *
@@ -21,18 +24,27 @@ import com.google.firebase.firestore.Source;
  */
 public final class FirestorePagingOptions<T> {
 
+    /**
+     * The default number of pages on each side of the last bound item to keep up to date when
+     * using {@link Builder#setRealtimeUpdates()}.
+     */
+    public static final int DEFAULT_REALTIME_PAGE_MARGIN = 2;
+
     private final LiveData<PagedList<DocumentSnapshot>> mData;
     private final SnapshotParser<T> mParser;
     private final DiffUtil.ItemCallback<DocumentSnapshot> mDiffCallback;
+    private final Executor mDiffExecutor;
     private final LifecycleOwner mOwner;
 
     private FirestorePagingOptions(@NonNull LiveData<PagedList<DocumentSnapshot>> data,
                                    @NonNull SnapshotParser<T> parser,
                                    @NonNull DiffUtil.ItemCallback<DocumentSnapshot> diffCallback,
+                                   @Nullable Executor diffExecutor,
                                    @Nullable LifecycleOwner owner) {
         mData = data;
         mParser = parser;
         mDiffCallback = diffCallback;
+        mDiffExecutor = diffExecutor;
         mOwner = owner;
     }
 
@@ -51,6 +63,15 @@ public final class FirestorePagingOptions<T> {
         return mDiffCallback;
     }
 
+    /**
+     * @return the executor diffs run on, or null for the paging library's default background
+     * executor.
+     */
+    @Nullable
+    public Executor getDiffExecutor() {
+        return mDiffExecutor;
+    }
+
     @Nullable
     public LifecycleOwner getOwner() {
         return mOwner;
@@ -61,10 +82,20 @@ public final class FirestorePagingOptions<T> {
      */
     public static final class Builder<T> {
 
-        private LiveData<PagedList<DocumentSnapshot>> mData;
+        private Query mQuery;
+        private Source mSource;
+        private PagedList.Config mConfig;
+        private boolean mCacheFirst;
+        private boolean mAdaptivePrefetch;
+        private RetryPolicy mRetryPolicy;
+        private Context mRetryContext;
+        private Query mReverseQuery;
+        private int mMaxSize = FirestoreDataSource.SIZE_UNBOUNDED;
+        private int mRealtimePageMargin = FirestoreDataSource.REALTIME_DISABLED;
         private SnapshotParser<T> mParser;
         private LifecycleOwner mOwner;
         private DiffUtil.ItemCallback<DocumentSnapshot> mDiffCallback;
+        private Executor mDiffExecutor;
 
         /**
          * Sets the query using {@link Source#DEFAULT} and a {@link ClassSnapshotParser} based
@@ -121,14 +152,130 @@ public final class FirestorePagingOptions<T> {
                                    @NonNull Source source,
                                    @NonNull PagedList.Config config,
                                    @NonNull SnapshotParser<T> parser) {
-            // Build paged list
-            FirestoreDataSource.Factory factory = new FirestoreDataSource.Factory(query, source);
-            mData = new LivePagedListBuilder<>(factory, config).build();
-
+            mQuery = query;
+            mSource = source;
+            mConfig = config;
             mParser = parser;
             return this;
         }
 
+        /**
+         * Serve each page from the local cache as soon as it is requested, then fetch it from the
+         * server in the background. If the server has different documents for any page, the list
+         * is reloaded, which picks up the now cached server data. Pages with nothing cached are
+         * loaded from the server directly.
+         * <p>
+         * This shows content at disk speed when reopening a screen, at the cost of a second read
+         * for each page. It replaces the {@link Source} passed to {@code setQuery()}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setCacheFirst(boolean cacheFirst) {
+            mCacheFirst = cacheFirst;
+            return this;
+        }
+
+        /**
+         * Adapt loading to how fast the user scrolls. Pages grow when the user scrolls through
+         * more items than a page holds in the time it takes to load one, up to four times the
+         * configured page size. When even that isn't enough, the next page is fetched as soon as
+         * the previous one arrives instead of waiting for the prefetch distance to be reached.
+         * <p>
+         * Use {@link FirestorePagingAdapter#getStallCount()} to see how often the user still
+         * reaches the end of the loaded items. Pages served from the cache with {@link
+         * #setCacheFirst(boolean)} are never fetched ahead of time.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setAdaptivePrefetch(boolean adaptivePrefetch) {
+            mAdaptivePrefetch = adaptivePrefetch;
+            return this;
+        }
+
+        /**
+         * Calls {@link #setRetryPolicy(RetryPolicy, Context)} without retrying when connectivity
+         * returns.
+         */
+        @NonNull
+        public Builder<T> setRetryPolicy(@NonNull RetryPolicy policy) {
+            return setRetryPolicy(policy, null);
+        }
+
+        /**
+         * Retry failed page loads automatically with the given {@link RetryPolicy}, instead of
+         * waiting in {@link LoadingState#ERROR} for {@link FirestorePagingAdapter#retry()}.
+         *
+         * @param context if not null, every failed load is retried as soon as the device
+         *                reconnects, including loads which ran out of attempts. This requires
+         *                the app to declare the {@code ACCESS_NETWORK_STATE} permission, and is
+         *                skipped with a warning otherwise.
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setRetryPolicy(@NonNull RetryPolicy policy, @Nullable Context context) {
+            mRetryPolicy = policy;
+            mRetryContext = context;
+            return this;
+        }
+
+        /**
+         * Limit how many documents are kept loaded, so that memory stays bounded however far the
+         * user scrolls. Once more than {@code maxSize} documents are loaded, the list is reloaded
+         * starting a page before the last bound item, dropping everything before it. Pages before
+         * the new start are loaded back with the {@code reverseQuery} when scrolling up.
+         *
+         * @param reverseQuery the query passed to {@link #setQuery(Query, Source,
+         *                     PagedList.Config, SnapshotParser)} with the direction of every
+         *                     orderBy() clause reversed, for example {@code
+         *                     orderBy("timestamp", DESCENDING)} instead of {@code
+         *                     orderBy("timestamp", ASCENDING)}.
+         * @param maxSize      the number of documents which can be loaded before reloading. Should
+         *                     be several times the page size.
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setMaxSize(@NonNull Query reverseQuery, int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("Max size must be positive.");
+            }
+
+            mReverseQuery = reverseQuery;
+            mMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Calls {@link #setRealtimeUpdates(int)} with {@link #DEFAULT_REALTIME_PAGE_MARGIN}.
+         */
+        @NonNull
+        public Builder<T> setRealtimeUpdates() {
+            return setRealtimeUpdates(DEFAULT_REALTIME_PAGE_MARGIN);
+        }
+
+        /**
+         * Keep the loaded pages up to date with a snapshot listener on each page within {@code
+         * pageMargin} pages of the last bound item. Edits to loaded documents are shown in place.
+         * Documents being added, removed, or reordered within the loaded pages reloads the list,
+         * since a paged list can't change shape.
+         * <p>
+         * Pages further away are not listened to, so this costs about as much as listening to
+         * {@code 2 * pageMargin + 1} pages regardless of how far the user scrolls. Pages coming
+         * back into range catch up with any changes made in the meantime.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setRealtimeUpdates(int pageMargin) {
+            if (pageMargin < 0) {
+                throw new IllegalArgumentException("Page margin cannot be negative.");
+            }
+
+            mRealtimePageMargin = pageMargin;
+            return this;
+        }
+
         /**
          * Sets an optional custom {@link DiffUtil.ItemCallback} to compare
          * {@link DocumentSnapshot} objects.
@@ -143,6 +290,19 @@ public final class FirestorePagingOptions<T> {
             return this;
         }
 
+        /**
+         * Sets an optional {@link Executor} to compute list diffs on. Diffs always run off the
+         * main thread, by default on an executor shared with other paged lists. A dedicated
+         * executor keeps large diffs from queueing behind unrelated work.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setDiffExecutor(@NonNull Executor executor) {
+            mDiffExecutor = executor;
+            return this;
+        }
+
         /**
          * Sets an optional {@link LifecycleOwner} to control the lifecycle of the adapter. Otherwise,
          * you must manually call {@link FirestorePagingAdapter#startListening()}
@@ -161,15 +321,30 @@ public final class FirestorePagingOptions<T> {
          */
         @NonNull
         public FirestorePagingOptions<T> build() {
-            if (mData == null || mParser == null) {
+            if (mQuery == null || mParser == null) {
                 throw new IllegalStateException("Must call setQuery() before calling build().");
             }
 
+            // Build paged list
+            FirestoreDataSource.Factory factory =
+                    new FirestoreDataSource.Factory(
+                            mQuery, mReverseQuery, mSource, mCacheFirst, mRealtimePageMargin,
+                            mMaxSize);
+            if (mAdaptivePrefetch) {
+                factory.setAdaptivePrefetch(mConfig.prefetchDistance);
+            }
+            if (mRetryPolicy != null) {
+                factory.setRetryPolicy(mRetryPolicy, mRetryContext);
+            }
+            LiveData<PagedList<DocumentSnapshot>> data =
+                    new LivePagedListBuilder<>(factory, mConfig).build();
+
             if (mDiffCallback == null) {
                 mDiffCallback = new DefaultSnapshotDiffCallback<T>(mParser);
             }
 
-            return new FirestorePagingOptions<>(mData, mParser, mDiffCallback, mOwner);
+            return new FirestorePagingOptions<>(
+                    data, mParser, mDiffCallback, mDiffExecutor, mOwner);
         }
 
     }
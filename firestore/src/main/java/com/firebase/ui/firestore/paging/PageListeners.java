@@ -0,0 +1,281 @@
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a snapshot listener on each loaded page of a {@link FirestoreDataSource} near the last
+ * bound position. Each page is listened to with a query bounded by the documents around it, so
+ * together the pages cover every document between the first and last loaded ones.
+ * <p>
+ * Edits to loaded documents are kept as the latest version of the document and reported through
+ * {@link Callback#onDocumentChanged(int)}. Anything which changes the number or order of the
+ * documents in a page is reported through {@link Callback#onPagesChanged()}, since a paged list
+ * can't be modified in place.
+ */
+@MainThread
+final class PageListeners {
+    private static final String TAG = "PageListeners";
+
+    interface Callback {
+        /**
+         * The document at {@code position} was edited.
+         */
+        void onDocumentChanged(int position);
+
+        /**
+         * Documents were added, removed or reordered in a loaded page.
+         */
+        void onPagesChanged();
+    }
+
+    private final Query mBaseQuery;
+    private final int mPageMargin;
+    private final Callback mCallback;
+
+    private final List<Page> mPages = new ArrayList<>();
+    private final Map<String, DocumentSnapshot> mLatestSnapshots = new HashMap<>();
+    private int mCurrentPage;
+    private boolean mActive = true;
+    private boolean mAtStart;
+
+    /**
+     * @param pageMargin the number of pages on each side of the last bound position to listen to.
+     * @param atStart    whether the first page added will be the start of the query results,
+     *                   rather than starting at an anchor document.
+     */
+    PageListeners(@NonNull Query baseQuery,
+                  int pageMargin,
+                  boolean atStart,
+                  @NonNull Callback callback) {
+        mBaseQuery = baseQuery;
+        mPageMargin = pageMargin;
+        mAtStart = atStart;
+        mCallback = callback;
+    }
+
+    /**
+     * Add a page loaded after all the others.
+     */
+    public void addPageAfter(@NonNull List<DocumentSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+
+        mPages.add(new Page(snapshots));
+        updateListeners();
+    }
+
+    /**
+     * Add a page loaded before all the others.
+     */
+    public void addPageBefore(@NonNull List<DocumentSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+
+        if (!mPages.isEmpty()) {
+            // The old first page is now bounded by the new one
+            mPages.get(0).detach();
+            mCurrentPage++;
+        }
+        mPages.add(0, new Page(snapshots));
+        updateListeners();
+    }
+
+    /**
+     * Mark the first page as the start of the query results, so that it also listens for
+     * documents added before it.
+     */
+    public void setAtStart() {
+        if (mAtStart) {
+            return;
+        }
+
+        mAtStart = true;
+        if (!mPages.isEmpty()) {
+            mPages.get(0).detach();
+        }
+        updateListeners();
+    }
+
+    /**
+     * @return the latest version of {@code snapshot}, which may have been edited since its page
+     * was loaded.
+     */
+    @NonNull
+    public DocumentSnapshot getLatest(@NonNull DocumentSnapshot snapshot) {
+        DocumentSnapshot latest = mLatestSnapshots.get(snapshot.getId());
+        return latest == null ? snapshot : latest;
+    }
+
+    /**
+     * Move the listened range of pages to be centered on the page containing {@code position}.
+     */
+    public void onItemBound(int position) {
+        int start = 0;
+        for (int i = 0; i < mPages.size(); i++) {
+            start += mPages.get(i).mSnapshots.size();
+            if (position < start) {
+                if (i != mCurrentPage) {
+                    mCurrentPage = i;
+                    updateListeners();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop or resume listening to pages. Pages which come back into range are compared against
+     * their loaded documents, so changes made while stopped are still reported.
+     */
+    public void setActive(boolean active) {
+        mActive = active;
+        updateListeners();
+    }
+
+    private void updateListeners() {
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            if (mActive && Math.abs(i - mCurrentPage) <= mPageMargin) {
+                page.attach();
+            } else {
+                page.detach();
+            }
+        }
+    }
+
+    @Nullable
+    private DocumentSnapshot getPreviousLast(Page page) {
+        int index = mPages.indexOf(page);
+        if (index <= 0) {
+            return null;
+        }
+
+        List<DocumentSnapshot> previous = mPages.get(index - 1).mSnapshots;
+        return previous.get(previous.size() - 1);
+    }
+
+    private int getStartPosition(Page page) {
+        int start = 0;
+        for (Page other : mPages) {
+            if (other == page) {
+                break;
+            }
+            start += other.mSnapshots.size();
+        }
+        return start;
+    }
+
+    private final class Page implements EventListener<QuerySnapshot> {
+        private final List<DocumentSnapshot> mSnapshots;
+
+        private ListenerRegistration mRegistration;
+        private boolean mHasEvent;
+
+        public Page(@NonNull List<DocumentSnapshot> snapshots) {
+            mSnapshots = new ArrayList<>(snapshots);
+        }
+
+        public void attach() {
+            if (mRegistration != null) {
+                return;
+            }
+
+            // Start right after the previous page so that no document falls between two pages
+            Query query = mBaseQuery;
+            DocumentSnapshot previousLast = getPreviousLast(this);
+            if (previousLast != null) {
+                query = query.startAfter(previousLast);
+            } else if (!mAtStart) {
+                query = query.startAt(mSnapshots.get(0));
+            }
+            query = query.endAt(mSnapshots.get(mSnapshots.size() - 1));
+
+            mHasEvent = false;
+            mRegistration = query.addSnapshotListener(this);
+        }
+
+        public void detach() {
+            if (mRegistration != null) {
+                mRegistration.remove();
+                mRegistration = null;
+            }
+        }
+
+        @Override
+        public void onEvent(QuerySnapshot snapshot, FirebaseFirestoreException e) {
+            if (e != null) {
+                // The page keeps showing what it has, there just won't be any more updates
+                Log.w(TAG, "Page listener failed", e);
+                return;
+            }
+            if (mRegistration == null) {
+                return;
+            }
+
+            if (mHasEvent) {
+                onChanges(snapshot.getDocumentChanges());
+            } else {
+                // The first event lists every document as added, compare them all instead
+                mHasEvent = true;
+                onDocuments(snapshot.getDocuments());
+            }
+        }
+
+        private void onChanges(List<DocumentChange> changes) {
+            for (DocumentChange change : changes) {
+                if (change.getType() != DocumentChange.Type.MODIFIED
+                        || change.getOldIndex() != change.getNewIndex()) {
+                    mCallback.onPagesChanged();
+                    return;
+                }
+            }
+
+            int start = getStartPosition(this);
+            for (DocumentChange change : changes) {
+                DocumentSnapshot snapshot = change.getDocument();
+                mLatestSnapshots.put(snapshot.getId(), snapshot);
+                mCallback.onDocumentChanged(start + change.getNewIndex());
+            }
+        }
+
+        private void onDocuments(List<DocumentSnapshot> snapshots) {
+            if (snapshots.size() != mSnapshots.size()) {
+                mCallback.onPagesChanged();
+                return;
+            }
+            for (int i = 0; i < snapshots.size(); i++) {
+                if (!snapshots.get(i).getId().equals(mSnapshots.get(i).getId())) {
+                    mCallback.onPagesChanged();
+                    return;
+                }
+            }
+
+            int start = getStartPosition(this);
+            for (int i = 0; i < snapshots.size(); i++) {
+                DocumentSnapshot snapshot = snapshots.get(i);
+                if (!Snapshots.isSameData(snapshot, getLatest(mSnapshots.get(i)))) {
+                    mLatestSnapshots.put(snapshot.getId(), snapshot);
+                    mCallback.onDocumentChanged(start + i);
+                }
+            }
+        }
+    }
+}
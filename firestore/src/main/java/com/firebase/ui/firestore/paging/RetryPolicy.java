@@ -0,0 +1,133 @@
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.NonNull;
+
+/**
+ * How a {@link FirestorePagingAdapter} retries failed page loads on its own. Each failed load is
+ * retried after a randomized, exponentially growing delay, so that many clients which failed at
+ * the same time don't all retry at the same time.
+ * <p>
+ * Use {@link Builder} to create a new instance.
+ */
+public final class RetryPolicy {
+
+    private final long mInitialDelayMillis;
+    private final long mMaxDelayMillis;
+    private final int mMaxAttempts;
+    private final int mMaxConcurrentRetries;
+
+    private RetryPolicy(long initialDelayMillis,
+                        long maxDelayMillis,
+                        int maxAttempts,
+                        int maxConcurrentRetries) {
+        mInitialDelayMillis = initialDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mMaxAttempts = maxAttempts;
+        mMaxConcurrentRetries = maxConcurrentRetries;
+    }
+
+    public long getInitialDelayMillis() {
+        return mInitialDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return mMaxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public int getMaxConcurrentRetries() {
+        return mMaxConcurrentRetries;
+    }
+
+    /**
+     * Builder for {@link RetryPolicy}.
+     */
+    public static final class Builder {
+
+        private long mInitialDelayMillis = 1000;
+        private long mMaxDelayMillis = 30000;
+        private int mMaxAttempts = 5;
+        private int mMaxConcurrentRetries = 2;
+
+        /**
+         * Sets the longest delay before the first retry of a load. Defaults to one second. Each
+         * consecutive failure doubles it, and the actual delay is picked at random between half
+         * of that and all of it.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setInitialDelayMillis(long initialDelayMillis) {
+            if (initialDelayMillis <= 0) {
+                throw new IllegalArgumentException("Initial delay must be positive.");
+            }
+
+            mInitialDelayMillis = initialDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the longest delay before any retry. Defaults to 30 seconds.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setMaxDelayMillis(long maxDelayMillis) {
+            if (maxDelayMillis <= 0) {
+                throw new IllegalArgumentException("Max delay must be positive.");
+            }
+
+            mMaxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets how many failures in a row are retried automatically. Defaults to 5. After that,
+         * the adapter stays in {@link LoadingState#ERROR} until {@link
+         * FirestorePagingAdapter#retry()} is called or, if enabled, connectivity returns.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setMaxAttempts(int maxAttempts) {
+            if (maxAttempts < 0) {
+                throw new IllegalArgumentException("Max attempts cannot be negative.");
+            }
+
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets how many retries can be waiting at the same time. Defaults to 2. Further failed
+         * loads queue up and are scheduled as earlier retries go out.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setMaxConcurrentRetries(int maxConcurrentRetries) {
+            if (maxConcurrentRetries <= 0) {
+                throw new IllegalArgumentException("Max concurrent retries must be positive.");
+            }
+
+            mMaxConcurrentRetries = maxConcurrentRetries;
+            return this;
+        }
+
+        /**
+         * Build the {@link RetryPolicy} object.
+         */
+        @NonNull
+        public RetryPolicy build() {
+            if (mMaxDelayMillis < mInitialDelayMillis) {
+                throw new IllegalStateException("Max delay cannot be shorter than initial delay.");
+            }
+
+            return new RetryPolicy(
+                    mInitialDelayMillis, mMaxDelayMillis, mMaxAttempts, mMaxConcurrentRetries);
+        }
+    }
+}
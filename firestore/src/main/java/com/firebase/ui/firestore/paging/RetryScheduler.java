@@ -0,0 +1,225 @@
+package com.firebase.ui.firestore.paging;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Schedules retries of failed page loads according to a {@link RetryPolicy}. Shared by every data
+ * source created by a {@link FirestoreDataSource.Factory}, so the cap on concurrent retries holds
+ * across invalidations.
+ */
+@MainThread
+final class RetryScheduler {
+    private static final String TAG = "RetryScheduler";
+
+    /**
+     * Runs retries after their delay. Replaced by a fake in tests.
+     */
+    interface Timer {
+        void postDelayed(@NonNull Runnable runnable, long delayMillis);
+
+        void cancel(@NonNull Runnable runnable);
+    }
+
+    private final RetryPolicy mPolicy;
+    private final Timer mTimer;
+    private final Random mRandom;
+    @Nullable private final Context mContext;
+
+    /** Retries waiting for their delay, mapped to the runnable posted to the timer. */
+    private final Map<Runnable, Runnable> mPending = new HashMap<>();
+    /** Retries waiting for a pending slot, mapped to their attempt number. */
+    private final Map<Runnable, Integer> mQueued = new LinkedHashMap<>();
+    /** Retries which ran out of attempts, only run again when connectivity returns. */
+    private final Set<Runnable> mExhausted = new HashSet<>();
+
+    private boolean mReceiverRegistered;
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // Registering delivers the current state, which isn't a change
+            if (!isInitialStickyBroadcast() && isConnected()) {
+                retryAllNow();
+            }
+        }
+    };
+
+    /**
+     * @param context if not null, every waiting retry runs as soon as connectivity returns. This
+     *                needs the {@link Manifest.permission#ACCESS_NETWORK_STATE} permission, without
+     *                which the context is ignored.
+     */
+    RetryScheduler(@NonNull RetryPolicy policy, @Nullable Context context) {
+        this(policy, new HandlerTimer(), new Random(), context);
+    }
+
+    RetryScheduler(@NonNull RetryPolicy policy,
+                   @NonNull Timer timer,
+                   @NonNull Random random,
+                   @Nullable Context context) {
+        mPolicy = policy;
+        mTimer = timer;
+        mRandom = random;
+        mContext = context == null || !hasNetworkStatePermission(context)
+                ? null : context.getApplicationContext();
+    }
+
+    private static boolean hasNetworkStatePermission(@NonNull Context context) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_NETWORK_STATE)
+                == PackageManager.PERMISSION_GRANTED) {
+            return true;
+        }
+
+        Log.w(TAG, "ACCESS_NETWORK_STATE isn't granted, failed loads won't be retried when"
+                + " connectivity returns.");
+        return false;
+    }
+
+    /**
+     * Run {@code retry} after a delay for the given attempt, or once a slot frees up if too many
+     * retries are already waiting.
+     *
+     * @param attempt the number of times in a row loading has failed before, starting at 0.
+     */
+    public void schedule(@NonNull Runnable retry, int attempt) {
+        if (attempt >= mPolicy.getMaxAttempts()) {
+            mExhausted.add(retry);
+        } else if (mPending.size() >= mPolicy.getMaxConcurrentRetries()) {
+            mQueued.put(retry, attempt);
+        } else {
+            start(retry, attempt);
+        }
+        updateReceiver();
+    }
+
+    /**
+     * Forget about {@code retry} if it is waiting.
+     */
+    public void cancel(@NonNull Runnable retry) {
+        Runnable posted = mPending.remove(retry);
+        if (posted != null) {
+            mTimer.cancel(posted);
+        }
+        mQueued.remove(retry);
+        mExhausted.remove(retry);
+
+        startQueued();
+        updateReceiver();
+    }
+
+    /**
+     * Run every waiting retry right away.
+     */
+    public void retryAllNow() {
+        List<Runnable> retries = new ArrayList<>(mPending.keySet());
+        retries.addAll(mQueued.keySet());
+        retries.addAll(mExhausted);
+
+        for (Runnable posted : mPending.values()) {
+            mTimer.cancel(posted);
+        }
+        mPending.clear();
+        mQueued.clear();
+        mExhausted.clear();
+        updateReceiver();
+
+        for (Runnable retry : retries) {
+            retry.run();
+        }
+    }
+
+    /**
+     * @return the delay before the given attempt: a random value between half and all of the
+     * initial delay doubled once per previous attempt, capped to the max delay.
+     */
+    long getDelayMillis(int attempt) {
+        long cap = mPolicy.getInitialDelayMillis() << Math.min(attempt, 30);
+        if (cap <= 0 || cap > mPolicy.getMaxDelayMillis()) {
+            cap = mPolicy.getMaxDelayMillis();
+        }
+
+        long half = cap / 2;
+        return half + (long) (mRandom.nextDouble() * (cap - half));
+    }
+
+    private void start(@NonNull final Runnable retry, int attempt) {
+        Runnable posted = new Runnable() {
+            @Override
+            public void run() {
+                mPending.remove(retry);
+                startQueued();
+                updateReceiver();
+                retry.run();
+            }
+        };
+        mPending.put(retry, posted);
+        mTimer.postDelayed(posted, getDelayMillis(attempt));
+    }
+
+    private void startQueued() {
+        while (mPending.size() < mPolicy.getMaxConcurrentRetries() && !mQueued.isEmpty()) {
+            Map.Entry<Runnable, Integer> next = mQueued.entrySet().iterator().next();
+            mQueued.remove(next.getKey());
+            start(next.getKey(), next.getValue());
+        }
+    }
+
+    private void updateReceiver() {
+        if (mContext == null) {
+            return;
+        }
+
+        boolean waiting = !mPending.isEmpty() || !mQueued.isEmpty() || !mExhausted.isEmpty();
+        if (waiting && !mReceiverRegistered) {
+            mContext.registerReceiver(mConnectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            mReceiverRegistered = true;
+        } else if (!waiting && mReceiverRegistered) {
+            mContext.unregisterReceiver(mConnectivityReceiver);
+            mReceiverRegistered = false;
+        }
+    }
+
+    private boolean isConnected() {
+        ConnectivityManager manager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = manager == null ? null : manager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    private static final class HandlerTimer implements Timer {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void postDelayed(@NonNull Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.firebase.ui.firestore.paging;
+
+import android.support.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.List;
+
+/**
+ * Comparisons of loaded documents against newer versions of them.
+ */
+final class Snapshots {
+    private Snapshots() {
+        throw new AssertionError("No instance for you!");
+    }
+
+    /**
+     * @return true if both snapshots hold the same data, regardless of their metadata.
+     */
+    public static boolean isSameData(@NonNull DocumentSnapshot a, @NonNull DocumentSnapshot b) {
+        return a.equals(b) || a.getData().equals(b.getData());
+    }
+
+    /**
+     * @return true if both lists hold the same documents in the same order with the same data.
+     */
+    public static boolean isSamePage(@NonNull List<DocumentSnapshot> a,
+                                     @NonNull List<DocumentSnapshot> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getId().equals(b.get(i).getId()) || !isSameData(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
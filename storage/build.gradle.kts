@@ -1,7 +1,20 @@
+check { dependsOn("compileDebugAndroidTestJavaWithJavac") }
+
+android {
+    defaultConfig {
+        testInstrumentationRunner = "android.support.test.runner.AndroidJUnitRunner"
+    }
+}
+
 dependencies {
     api(Config.Libs.Misc.glide)
 
     api(Config.Libs.Firebase.storage)
     // Override Play Services
     implementation(Config.Libs.Support.v4)
+
+    androidTestImplementation(Config.Libs.Test.junit)
+    androidTestImplementation(Config.Libs.Test.runner)
+    androidTestImplementation(Config.Libs.Test.rules)
+    androidTestImplementation(Config.Libs.Test.mockito)
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.ui.storage.images;
+
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.StreamDownloadTask;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.firebase.ui.storage.images.ThumbnailVariantsTest.mockReference;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirebaseImageLoaderTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    @Test
+    public void testFallbackIsCachedUnderOriginalKey() throws Exception {
+        StorageReference original = mockReference("images", "cat.jpg");
+        ThumbnailVariants variants = new ThumbnailVariants.Builder().addSize(200, 200).build();
+        StorageReference variant = variants.select(original, 100, 100).getReference();
+
+        StorageException notFound = mock(StorageException.class);
+        when(notFound.getErrorCode()).thenReturn(StorageException.ERROR_OBJECT_NOT_FOUND);
+        StreamDownloadTask variantTask = mockStreamTask(null, notFound);
+        when(variant.getStream()).thenReturn(variantTask);
+
+        InputStream stream = new ByteArrayInputStream(new byte[]{1, 2, 3});
+        StreamDownloadTask originalTask = mockStreamTask(stream, null);
+        when(original.getStream()).thenReturn(originalTask);
+
+        FirebaseImageLoader loader = new FirebaseImageLoader(variants);
+        ModelLoader.LoadData<InputStream> data =
+                loader.buildLoadData(original, 100, 100, new Options());
+        Key originalKey = loader.buildLoadData(original, 0, 0, new Options()).sourceKey;
+        assertFalse(originalKey.equals(data.sourceKey));
+
+        RecordingCallback callback = new RecordingCallback();
+        data.fetcher.loadData(Priority.NORMAL, callback);
+        assertTrue(callback.mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(callback.mError);
+        assertSame(stream, callback.mData);
+
+        // Glide writes the data once it arrives, which must not be under the variant's key
+        assertEquals(originalKey, data.sourceKey);
+        assertArrayEquals(digest(originalKey), digest(data.sourceKey));
+        assertNull(variants.select(original, 100, 100));
+    }
+
+    @Test
+    public void testStreamedVariantFallsBackToStream() throws Exception {
+        StorageReference original = mockReference("images", "dog.jpg");
+        ThumbnailVariants variants = new ThumbnailVariants.Builder().addSize(200, 200).build();
+        StorageReference variant = variants.select(original, 100, 100).getReference();
+
+        StorageException notFound = mock(StorageException.class);
+        when(notFound.getErrorCode()).thenReturn(StorageException.ERROR_OBJECT_NOT_FOUND);
+        StreamDownloadTask variantTask = mockStreamTask(null, notFound);
+        when(variant.getStream()).thenReturn(variantTask);
+
+        InputStream stream = new ByteArrayInputStream(new byte[]{1, 2, 3});
+        StreamDownloadTask originalTask = mockStreamTask(stream, null);
+        when(original.getStream()).thenReturn(originalTask);
+
+        // Another load is downloading the variant, so this one streams it
+        ResumableDownloads downloads = newDownloads();
+        File variantFile = downloads.acquire(variant);
+
+        FirebaseImageLoader loader = new FirebaseImageLoader(variants, null, downloads);
+        RecordingCallback callback = new RecordingCallback();
+        loader.buildLoadData(original, 100, 100, new Options())
+                .fetcher.loadData(Priority.NORMAL, callback);
+        assertTrue(callback.mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(stream, callback.mData);
+
+        // The failure arrives on the main thread, which must not wait for the download URL
+        verify(original, never()).getDownloadUrl();
+        downloads.release(variantFile);
+    }
+
+    @Test
+    public void testCancelStopsWaitingForDownloadUrl() throws Exception {
+        StorageReference original = mockReference("images", "bird.jpg");
+        TaskCompletionSource<Uri> neverCompletes = new TaskCompletionSource<>();
+        when(original.getDownloadUrl()).thenReturn(neverCompletes.getTask());
+
+        FirebaseImageLoader loader = new FirebaseImageLoader(null, null, newDownloads());
+        final DataFetcher<InputStream> fetcher =
+                loader.buildLoadData(original, 0, 0, new Options()).fetcher;
+        final RecordingCallback callback = new RecordingCallback();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fetcher.loadData(Priority.NORMAL, callback);
+            }
+        }).start();
+
+        fetcher.cancel();
+        assertTrue(callback.mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNotNull(callback.mError);
+        assertNull(callback.mData);
+    }
+
+    private static ResumableDownloads newDownloads() {
+        File cacheDir = InstrumentationRegistry.getTargetContext().getCacheDir();
+        File directory = new File(cacheDir, "FirebaseImageLoaderTest");
+        ResumableDownloads downloads = new ResumableDownloads(directory);
+        downloads.clear();
+        return downloads;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StreamDownloadTask mockStreamTask(final InputStream stream,
+                                                     final Exception error) {
+        final StreamDownloadTask task = mock(StreamDownloadTask.class);
+        when(task.addOnSuccessListener(any(OnSuccessListener.class))).thenAnswer(
+                new Answer<StreamDownloadTask>() {
+                    @Override
+                    public StreamDownloadTask answer(InvocationOnMock invocation) {
+                        if (stream != null) {
+                            StreamDownloadTask.TaskSnapshot snapshot =
+                                    mock(StreamDownloadTask.TaskSnapshot.class);
+                            when(snapshot.getStream()).thenReturn(stream);
+                            invocation.<OnSuccessListener<StreamDownloadTask.TaskSnapshot>>
+                                    getArgument(0).onSuccess(snapshot);
+                        }
+                        return task;
+                    }
+                });
+        when(task.addOnFailureListener(any(OnFailureListener.class))).thenAnswer(
+                new Answer<StreamDownloadTask>() {
+                    @Override
+                    public StreamDownloadTask answer(InvocationOnMock invocation) {
+                        if (error != null) {
+                            invocation.<OnFailureListener>getArgument(0).onFailure(error);
+                        }
+                        return task;
+                    }
+                });
+        return task;
+    }
+
+    private static byte[] digest(Key key) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        key.updateDiskCacheKey(digest);
+        return digest.digest();
+    }
+
+    private static class RecordingCallback implements DataFetcher.DataCallback<InputStream> {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        InputStream mData;
+        Exception mError;
+
+        @Override
+        public void onDataReady(InputStream data) {
+            mData = data;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onLoadFailed(Exception e) {
+            mError = e;
+            mDone.countDown();
+        }
+    }
+}
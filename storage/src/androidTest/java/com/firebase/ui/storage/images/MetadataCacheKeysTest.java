@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.ui.storage.images;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class MetadataCacheKeysTest {
+    private Context mContext;
+    private StorageReference mReference;
+    private TaskCompletionSource<StorageMetadata> mLookup;
+    private MetadataCacheKeys mCacheKeys;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mReference = mock(StorageReference.class);
+        when(mReference.getPath()).thenReturn("images/cat.jpg");
+        mLookup = new TaskCompletionSource<>();
+        when(mReference.getMetadata()).thenReturn(mLookup.getTask());
+
+        mCacheKeys = new MetadataCacheKeys(mContext, MetadataCacheKeys.Mode.GENERATION);
+        mCacheKeys.invalidate(mReference);
+    }
+
+    @After
+    public void tearDown() {
+        mCacheKeys.invalidate(mReference);
+    }
+
+    @Test
+    public void testGetVersionDoesNotWait() {
+        // The lookup never completes
+        assertNull(mCacheKeys.getVersion(mReference));
+        assertNull(mCacheKeys.getVersion(mReference));
+        verify(mReference, times(1)).getMetadata();
+    }
+
+    @Test
+    public void testVersionIsKeptAcrossInstances() {
+        mCacheKeys.getVersion(mReference);
+        mLookup.setResult(mockMetadata("7"));
+        assertEquals("7", mCacheKeys.getVersion(mReference));
+
+        // A new process starts from the persisted version, and checks it in the background
+        MetadataCacheKeys restarted =
+                new MetadataCacheKeys(mContext, MetadataCacheKeys.Mode.GENERATION);
+        assertEquals("7", restarted.getVersion(mReference));
+        verify(mReference, times(2)).getMetadata();
+    }
+
+    @Test
+    public void testFailedLookupIsNotRepeatedRightAway() {
+        mCacheKeys.getVersion(mReference);
+        mLookup.setException(new IOException("Offline"));
+
+        assertNull(mCacheKeys.getVersion(mReference));
+        assertNull(mCacheKeys.awaitVersion(mReference));
+        verify(mReference, times(1)).getMetadata();
+    }
+
+    private static StorageMetadata mockMetadata(String generation) {
+        StorageMetadata metadata = mock(StorageMetadata.class);
+        when(metadata.getGeneration()).thenReturn(generation);
+        return metadata;
+    }
+}
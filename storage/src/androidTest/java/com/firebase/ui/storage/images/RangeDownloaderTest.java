@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.firebase.ui.storage.images;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class RangeDownloaderTest {
+    private static final int SIZE = 100 * 1024;
+
+    private LocalServer mServer;
+    private File mFile;
+    private RangeDownloader mDownloader;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer(randomBytes(SIZE), "\"v1\"");
+        mFile = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "RangeDownloaderTest");
+        mDownloader = new RangeDownloader(mFile);
+        mDownloader.delete();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDownloader.delete();
+        mServer.close();
+    }
+
+    @Test
+    public void testCompleteDownload() throws IOException {
+        final List<Long> progress = new ArrayList<>();
+        mDownloader.download(mServer.getUrl(), new RangeDownloader.Listener() {
+            @Override
+            public void onProgress(long bytesDownloaded, long totalBytes) {
+                assertEquals(SIZE, totalBytes);
+                progress.add(bytesDownloaded);
+            }
+        });
+
+        assertArrayEquals(mServer.mBody, readFile());
+        assertNull(mServer.mRanges.get(0));
+        assertEquals(0, (long) progress.get(0));
+        assertEquals(SIZE, (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testInterruptedDownloadResumes() throws IOException {
+        mServer.mFailAfter = SIZE / 3;
+        try {
+            mDownloader.download(mServer.getUrl(), null);
+            fail("Download should have been interrupted");
+        } catch (IOException expected) {
+            // Keeps what was downloaded
+        }
+
+        long offset = mFile.length();
+        mDownloader.download(mServer.getUrl(), null);
+
+        assertArrayEquals(mServer.mBody, readFile());
+        assertEquals("bytes=" + offset + "-", mServer.mRanges.get(1));
+    }
+
+    @Test
+    public void testChangedResourceStartsOver() throws IOException {
+        mServer.mFailAfter = SIZE / 2;
+        try {
+            mDownloader.download(mServer.getUrl(), null);
+            fail("Download should have been interrupted");
+        } catch (IOException expected) {
+            // Keeps what was downloaded
+        }
+
+        mServer.mBody = randomBytes(SIZE / 4);
+        mServer.mEtag = "\"v2\"";
+        mDownloader.download(mServer.getUrl(), null);
+
+        assertArrayEquals(mServer.mBody, readFile());
+    }
+
+    @Test
+    public void testCompleteFileIsNotDownloadedAgain() throws IOException {
+        mDownloader.download(mServer.getUrl(), null);
+        mDownloader.download(mServer.getUrl(), null);
+
+        assertArrayEquals(mServer.mBody, readFile());
+        assertEquals(Arrays.asList(null, "bytes=" + SIZE + "-"), mServer.mRanges);
+    }
+
+    private byte[] readFile() throws IOException {
+        byte[] contents = new byte[(int) mFile.length()];
+        InputStream in = new FileInputStream(mFile);
+        try {
+            int offset = 0;
+            while (offset < contents.length) {
+                offset += in.read(contents, offset, contents.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return contents;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * A minimal HTTP server which understands Range and If-Range, standing in for Cloud Storage.
+     */
+    private static class LocalServer implements Runnable {
+        final List<String> mRanges = Collections.synchronizedList(new ArrayList<String>());
+
+        volatile byte[] mBody;
+        volatile String mEtag;
+        /** Close the next response after this many bytes of the body, or -1. */
+        volatile int mFailAfter = -1;
+
+        private final ServerSocket mSocket;
+
+        LocalServer(byte[] body, String etag) throws IOException {
+            mBody = body;
+            mEtag = etag;
+            mSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+            new Thread(this, "LocalServer").start();
+        }
+
+        URL getUrl() throws IOException {
+            return new URL("http://127.0.0.1:" + mSocket.getLocalPort() + "/image");
+        }
+
+        void close() throws IOException {
+            mSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mSocket.isClosed()) {
+                try {
+                    Socket socket = mSocket.accept();
+                    try {
+                        respond(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // Closed by the test or the client
+                }
+            }
+        }
+
+        private void respond(Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            String range = null;
+            String ifRange = null;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                String lower = line.toLowerCase();
+                if (lower.startsWith("range:")) {
+                    range = line.substring(6).trim();
+                } else if (lower.startsWith("if-range:")) {
+                    ifRange = line.substring(9).trim();
+                }
+            }
+            mRanges.add(range);
+
+            byte[] body = mBody;
+            int start = 0;
+            String status = "200 OK";
+            String headers = "ETag: " + mEtag + "\r\n";
+            if (range != null && mEtag.equals(ifRange)) {
+                start = Integer.parseInt(range.substring(6, range.length() - 1));
+                if (start >= body.length) {
+                    write(socket, "416 Range Not Satisfiable",
+                            "Content-Range: bytes */" + body.length + "\r\n"
+                                    + "Content-Length: 0\r\n", body, 0, 0);
+                    return;
+                }
+                status = "206 Partial Content";
+                headers += "Content-Range: bytes " + start + "-" + (body.length - 1) + "/"
+                        + body.length + "\r\n";
+            }
+
+            int end = body.length;
+            if (mFailAfter != -1) {
+                end = Math.min(end, start + mFailAfter);
+                mFailAfter = -1;
+            }
+            write(socket, status, headers + "Content-Length: " + (body.length - start) + "\r\n",
+                    body, start, end);
+        }
+
+        private static void write(Socket socket,
+                                  String status,
+                                  String headers,
+                                  byte[] body,
+                                  int start,
+                                  int end) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.1 " + status + "\r\n" + headers + "Connection: close\r\n\r\n")
+                    .getBytes("US-ASCII"));
+            out.write(body, start, end - start);
+            out.flush();
+        }
+    }
+}
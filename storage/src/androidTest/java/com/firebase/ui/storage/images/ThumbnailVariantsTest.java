@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.ui.storage.images;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class ThumbnailVariantsTest {
+    private final StorageReference mOriginal = mockReference("images", "cat.jpg");
+
+    @Test
+    public void testSelectsSmallestVariantWhichFits() {
+        ThumbnailVariants variants = new ThumbnailVariants.Builder()
+                .addSize(400, 400)
+                .addSize(100, 100)
+                .addSize(200, 200)
+                .build();
+
+        ThumbnailVariants.Variant variant = variants.select(mOriginal, 150, 120);
+        assertEquals("200x200", variant.getLabel());
+        assertEquals("images/thumb_200x200_cat.jpg", variant.getReference().getPath());
+
+        assertEquals("100x100", variants.select(mOriginal, 100, 100).getLabel());
+    }
+
+    @Test
+    public void testOriginalWhenNoVariantFits() {
+        ThumbnailVariants variants = new ThumbnailVariants.Builder().addSize(200, 100).build();
+
+        assertNull(variants.select(mOriginal, 150, 150));
+        assertNull(variants.select(mOriginal, 300, 50));
+        // Target.SIZE_mOriginal
+        assertNull(variants.select(mOriginal, Integer.MIN_VALUE, Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void testNamePattern() {
+        ThumbnailVariants variants = new ThumbnailVariants.Builder()
+                .addSize(200, 100)
+                .setNamePattern("{base}_{width}x{height}{ext}")
+                .build();
+
+        assertEquals("images/cat_200x100.jpg",
+                variants.select(mOriginal, 200, 100).getReference().getPath());
+        assertEquals("images/cat_200x100",
+                variants.select(mockReference("images", "cat"), 200, 100)
+                        .getReference().getPath());
+        // Only the last extension is split off
+        assertEquals("images/cat.tar_200x100.gz",
+                variants.select(mockReference("images", "cat.tar.gz"), 200, 100)
+                        .getReference().getPath());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPatternWithoutSizeIsRejected() {
+        new ThumbnailVariants.Builder().setNamePattern("thumb_{name}");
+    }
+
+    @Test
+    public void testMissingVariantIsNotSelectedAgain() {
+        ThumbnailVariants variants = new ThumbnailVariants.Builder().addSize(200, 200).build();
+
+        variants.onVariantMissing(variants.select(mOriginal, 100, 100));
+        assertNull(variants.select(mOriginal, 100, 100));
+        assertEquals("200x200",
+                variants.select(mockReference("images", "dog.jpg"), 100, 100).getLabel());
+    }
+
+    static StorageReference mockReference(final String folder, String name) {
+        StorageReference parent = mock(StorageReference.class);
+        when(parent.getPath()).thenReturn(folder);
+        // The same child every time, so that tests can stub the selected variant
+        final Map<String, StorageReference> children = new HashMap<>();
+        when(parent.child(anyString())).thenAnswer(new Answer<StorageReference>() {
+            @Override
+            public StorageReference answer(InvocationOnMock invocation) {
+                String child = invocation.getArgument(0);
+                StorageReference reference = children.get(child);
+                if (reference == null) {
+                    reference = mock(StorageReference.class);
+                    when(reference.getPath()).thenReturn(folder + "/" + child);
+                    when(reference.getName()).thenReturn(child);
+                    children.put(child, reference);
+                }
+                return reference;
+            }
+        });
+
+        StorageReference reference = mock(StorageReference.class);
+        when(reference.getPath()).thenReturn(folder + "/" + name);
+        when(reference.getName()).thenReturn(name);
+        when(reference.getParent()).thenReturn(parent);
+        return reference;
+    }
+}
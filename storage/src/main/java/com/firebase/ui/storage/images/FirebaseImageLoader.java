@@ -1,5 +1,6 @@
 package com.firebase.ui.storage.images;
 
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -12,15 +13,26 @@ import com.bumptech.glide.load.data.DataFetcher;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageException;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.StreamDownloadTask;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * ModelLoader implementation to download images from FirebaseStorage with Glide.
@@ -46,20 +58,102 @@ import java.security.MessageDigest;
  *         .load(ref)
  *         .into(iv);
  * </pre>
+ *
+ * <p>
+ * To download resized copies of images instead of the originals when they are displayed in small
+ * views, pass {@link ThumbnailVariants} to the {@link Factory}. To download images again when they
+ * are overwritten, pass {@link MetadataCacheKeys}. To resume interrupted downloads of large images,
+ * pass {@link ResumableDownloads}.
  */
 public class FirebaseImageLoader implements ModelLoader<StorageReference, InputStream> {
 
     private static final String TAG = "FirebaseImageLoader";
 
+    private static final long DOWNLOAD_URL_TIMEOUT_SECONDS = 30;
+
+    @Nullable private final ThumbnailVariants mVariants;
+    @Nullable private final MetadataCacheKeys mCacheKeys;
+    @Nullable private final ResumableDownloads mDownloads;
+
+    public FirebaseImageLoader() {
+        this(null, null, null);
+    }
+
+    /**
+     * @param variants resized copies of images to download instead of the originals when they
+     *                 are big enough, or null to always download the originals.
+     */
+    public FirebaseImageLoader(@Nullable ThumbnailVariants variants) {
+        this(variants, null, null);
+    }
+
+    /**
+     * @param variants  see {@link #FirebaseImageLoader(ThumbnailVariants)}.
+     * @param cacheKeys adds the version of each image to its cache key, or null to cache images
+     *                  by path only.
+     */
+    public FirebaseImageLoader(@Nullable ThumbnailVariants variants,
+                               @Nullable MetadataCacheKeys cacheKeys) {
+        this(variants, cacheKeys, null);
+    }
+
+    /**
+     * @param variants  see {@link #FirebaseImageLoader(ThumbnailVariants)}.
+     * @param cacheKeys see {@link #FirebaseImageLoader(ThumbnailVariants, MetadataCacheKeys)}.
+     * @param downloads downloads images into files so they can be resumed, or null to stream
+     *                  them.
+     */
+    public FirebaseImageLoader(@Nullable ThumbnailVariants variants,
+                               @Nullable MetadataCacheKeys cacheKeys,
+                               @Nullable ResumableDownloads downloads) {
+        mVariants = variants;
+        mCacheKeys = cacheKeys;
+        mDownloads = downloads;
+    }
 
     /**
      * Factory to create {@link FirebaseImageLoader}.
      */
     public static class Factory implements ModelLoaderFactory<StorageReference, InputStream> {
 
+        @Nullable private final ThumbnailVariants mVariants;
+        @Nullable private final MetadataCacheKeys mCacheKeys;
+        @Nullable private final ResumableDownloads mDownloads;
+
+        public Factory() {
+            this(null, null, null);
+        }
+
+        /**
+         * @see FirebaseImageLoader#FirebaseImageLoader(ThumbnailVariants)
+         */
+        public Factory(@Nullable ThumbnailVariants variants) {
+            this(variants, null, null);
+        }
+
+        /**
+         * @see FirebaseImageLoader#FirebaseImageLoader(ThumbnailVariants, MetadataCacheKeys)
+         */
+        public Factory(@Nullable ThumbnailVariants variants,
+                       @Nullable MetadataCacheKeys cacheKeys) {
+            this(variants, cacheKeys, null);
+        }
+
+        /**
+         * @see FirebaseImageLoader#FirebaseImageLoader(ThumbnailVariants, MetadataCacheKeys,
+         * ResumableDownloads)
+         */
+        public Factory(@Nullable ThumbnailVariants variants,
+                       @Nullable MetadataCacheKeys cacheKeys,
+                       @Nullable ResumableDownloads downloads) {
+            mVariants = variants;
+            mCacheKeys = cacheKeys;
+            mDownloads = downloads;
+        }
+
         @Override
         public ModelLoader<StorageReference, InputStream> build(MultiModelLoaderFactory factory) {
-            return new FirebaseImageLoader();
+            return new FirebaseImageLoader(mVariants, mCacheKeys, mDownloads);
         }
 
         @Override
@@ -71,12 +165,18 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
     @Nullable
     @Override
     public LoadData<InputStream> buildLoadData(StorageReference reference,
-                                               int height,
                                                int width,
+                                               int height,
                                                Options options) {
-        return new LoadData<>(
-                new FirebaseStorageKey(reference),
-                new FirebaseStorageFetcher(reference));
+        ThumbnailVariants.Variant variant =
+                mVariants == null ? null : mVariants.select(reference, width, height);
+        // Variants are regenerated when the original changes, so its version covers them too.
+        // Called on Glide's disk cache thread, so only the known version is used here.
+        String version = mCacheKeys == null ? null : mCacheKeys.getVersion(reference);
+        FirebaseStorageKey key = new FirebaseStorageKey(
+                reference, variant == null ? null : variant.getLabel(), version);
+        return new LoadData<>(key, new FirebaseStorageFetcher(
+                reference, variant, key, mVariants, mCacheKeys, mDownloads));
     }
 
     @Override
@@ -87,32 +187,222 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
     private static class FirebaseStorageKey implements Key {
 
         private StorageReference mRef;
+        @Nullable private volatile String mVariant;
+        @Nullable private volatile String mVersion;
 
-        public FirebaseStorageKey(StorageReference ref) {
+        /**
+         * @param variant the label of the resized copy to download, or null for the original.
+         * @param version the version of the original, or null if it isn't known.
+         */
+        public FirebaseStorageKey(StorageReference ref,
+                                  @Nullable String variant,
+                                  @Nullable String version) {
             mRef = ref;
+            mVariant = variant;
+            mVersion = version;
+        }
+
+        /**
+         * Called when the variant doesn't exist and the original is downloaded instead. Glide
+         * derives the disk cache key of downloaded data when it writes it, so the original is
+         * then cached under its own key rather than the variant's, which may exist later on.
+         */
+        void onFallback() {
+            mVariant = null;
+        }
+
+        /**
+         * Called with the current version of the original before it is downloaded, which may be
+         * newer than the version known when the cache was looked up.
+         */
+        void setVersion(@Nullable String version) {
+            mVersion = version;
         }
 
         @Override
         public void updateDiskCacheKey(MessageDigest digest) {
             digest.update(mRef.getPath().getBytes(Charset.defaultCharset()));
+            if (mVariant != null) {
+                // Not a valid path character, so this can't collide with another original
+                digest.update(("#" + mVariant).getBytes(Charset.defaultCharset()));
+            }
+            if (mVersion != null) {
+                digest.update(("@" + mVersion).getBytes(Charset.defaultCharset()));
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FirebaseStorageKey key = (FirebaseStorageKey) o;
+            return mRef.getPath().equals(key.mRef.getPath())
+                    && (mVariant == null ? key.mVariant == null : mVariant.equals(key.mVariant))
+                    && (mVersion == null ? key.mVersion == null : mVersion.equals(key.mVersion));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mRef.getPath().hashCode();
+            result = 31 * result + (mVariant == null ? 0 : mVariant.hashCode());
+            result = 31 * result + (mVersion == null ? 0 : mVersion.hashCode());
+            return result;
         }
     }
 
     private static class FirebaseStorageFetcher implements DataFetcher<InputStream> {
 
         private StorageReference mRef;
-        private StreamDownloadTask mStreamTask;
+        @Nullable private ThumbnailVariants.Variant mVariant;
+        private FirebaseStorageKey mKey;
+        @Nullable private ThumbnailVariants mVariants;
+        @Nullable private MetadataCacheKeys mCacheKeys;
+        @Nullable private ResumableDownloads mDownloads;
+        private volatile StreamDownloadTask mStreamTask;
+        private volatile RangeDownloader mDownloader;
+        private volatile TaskCompletionSource<Uri> mDownloadUrl;
+        private File mFile;
         private InputStream mInputStream;
+        private volatile boolean mIsCancelled;
 
-        public FirebaseStorageFetcher(StorageReference ref) {
+        /**
+         * @param variant   the resized copy to try first, falling back to {@code ref} if it
+         *                  doesn't exist.
+         * @param key       the key the download is cached under, updated to match what is
+         *                  actually downloaded.
+         * @param downloads where to download to, or null to stream the image.
+         */
+        public FirebaseStorageFetcher(StorageReference ref,
+                                      @Nullable ThumbnailVariants.Variant variant,
+                                      FirebaseStorageKey key,
+                                      @Nullable ThumbnailVariants variants,
+                                      @Nullable MetadataCacheKeys cacheKeys,
+                                      @Nullable ResumableDownloads downloads) {
             mRef = ref;
+            mVariant = variant;
+            mKey = key;
+            mVariants = variants;
+            mCacheKeys = cacheKeys;
+            mDownloads = downloads;
         }
 
         @Override
         public void loadData(Priority priority,
                              final DataCallback<? super InputStream> callback) {
-            mStreamTask = mRef.getStream();
-            mStreamTask
+            if (mCacheKeys != null) {
+                // The cache missed, so the image is downloaded with its current version
+                mKey.setVersion(mCacheKeys.awaitVersion(mRef));
+            }
+
+            if (mVariant == null) {
+                load(mRef, callback, false);
+            } else {
+                load(mVariant.getReference(), callback, true);
+            }
+        }
+
+        private void load(StorageReference ref,
+                          final DataCallback<? super InputStream> callback,
+                          final boolean isVariant) {
+            File file = mDownloads == null ? null : mDownloads.acquire(ref);
+            if (file == null) {
+                // Not resumable, or another load is already downloading to the same file
+                stream(ref, callback, isVariant);
+                return;
+            }
+
+            try {
+                RangeDownloader downloader = new RangeDownloader(file);
+                mDownloader = downloader;
+                if (mIsCancelled) {
+                    throw new IOException("Download cancelled");
+                }
+
+                URL url = new URL(awaitDownloadUrl(ref).toString());
+                downloader.download(url, getProgressListener(ref));
+
+                mInputStream = new FileInputStream(file);
+                mFile = file;
+            } catch (ExecutionException e) {
+                mDownloads.release(file);
+                // Still on Glide's loading thread, so the original can be downloaded here too
+                onFailure((Exception) e.getCause(), callback, isVariant, true);
+                return;
+            } catch (TimeoutException e) {
+                mDownloads.release(file);
+                callback.onLoadFailed(e);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mDownloads.release(file);
+                callback.onLoadFailed(e);
+                return;
+            } catch (IOException e) {
+                mDownloads.release(file);
+                callback.onLoadFailed(e);
+                return;
+            }
+            callback.onDataReady(mInputStream);
+        }
+
+        /**
+         * Wait for the download URL of an object on Glide's loading thread, which may block,
+         * until it arrives, times out or the load is cancelled.
+         */
+        @NonNull
+        private Uri awaitDownloadUrl(StorageReference ref)
+                throws ExecutionException, InterruptedException, TimeoutException {
+            // The request itself can't be cancelled, so cancel() completes this task instead
+            final TaskCompletionSource<Uri> source = new TaskCompletionSource<>();
+            mDownloadUrl = source;
+            if (mIsCancelled) {
+                source.trySetException(new IOException("Download cancelled"));
+            }
+
+            ref.getDownloadUrl().addOnCompleteListener(new OnCompleteListener<Uri>() {
+                @Override
+                public void onComplete(@NonNull Task<Uri> task) {
+                    if (task.isSuccessful()) {
+                        source.trySetResult(task.getResult());
+                    } else {
+                        source.trySetException(task.getException());
+                    }
+                }
+            });
+            try {
+                return Tasks.await(
+                        source.getTask(), DOWNLOAD_URL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } finally {
+                mDownloadUrl = null;
+            }
+        }
+
+        @Nullable
+        private RangeDownloader.Listener getProgressListener(final StorageReference ref) {
+            final ResumableDownloads.ProgressListener listener = mDownloads.getListener();
+            if (listener == null) {
+                return null;
+            }
+
+            return new RangeDownloader.Listener() {
+                @Override
+                public void onProgress(long bytesDownloaded, long totalBytes) {
+                    listener.onProgress(ref, bytesDownloaded, totalBytes);
+                }
+            };
+        }
+
+        private void stream(StorageReference ref,
+                            final DataCallback<? super InputStream> callback,
+                            final boolean isVariant) {
+            StreamDownloadTask task = ref.getStream();
+            mStreamTask = task;
+            if (mIsCancelled) {
+                // cancel() ran before the task existed, for example while falling back
+                task.cancel();
+            }
+            task
                     .addOnSuccessListener(new OnSuccessListener<StreamDownloadTask.TaskSnapshot>() {
                         @Override
                         public void onSuccess(StreamDownloadTask.TaskSnapshot snapshot) {
@@ -123,11 +413,38 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
                     .addOnFailureListener(new OnFailureListener() {
                         @Override
                         public void onFailure(@NonNull Exception e) {
-                            callback.onLoadFailed(e);
+                            // Called on the main thread, which must not wait for a download
+                            FirebaseStorageFetcher.this.onFailure(e, callback, isVariant, false);
                         }
                     });
         }
 
+        /**
+         * @param mayBlock whether this is called on Glide's loading thread, where the original
+         *                 can be downloaded to a file, rather than streamed.
+         */
+        private void onFailure(Exception e,
+                               DataCallback<? super InputStream> callback,
+                               boolean isVariant,
+                               boolean mayBlock) {
+            if (isVariant && !mIsCancelled && isNotFound(e)) {
+                mVariants.onVariantMissing(mVariant);
+                mKey.onFallback();
+                if (mayBlock) {
+                    load(mRef, callback, false);
+                } else {
+                    stream(mRef, callback, false);
+                }
+            } else {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        private static boolean isNotFound(Exception e) {
+            return e instanceof StorageException && ((StorageException) e).getErrorCode()
+                    == StorageException.ERROR_OBJECT_NOT_FOUND;
+        }
+
         @Override
         public void cleanup() {
             // Close stream if possible
@@ -139,13 +456,31 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
                     Log.w(TAG, "Could not close stream", e);
                 }
             }
+
+            // Glide has read the whole download, nothing is left to resume
+            if (mFile != null) {
+                mDownloader.delete();
+                mDownloads.release(mFile);
+                mFile = null;
+            }
         }
 
         @Override
         public void cancel() {
+            mIsCancelled = true;
+
             // Cancel task if possible
-            if (mStreamTask != null && mStreamTask.isInProgress()) {
-                mStreamTask.cancel();
+            StreamDownloadTask task = mStreamTask;
+            if (task != null && task.isInProgress()) {
+                task.cancel();
+            }
+            TaskCompletionSource<Uri> downloadUrl = mDownloadUrl;
+            if (downloadUrl != null) {
+                downloadUrl.trySetException(new IOException("Download cancelled"));
+            }
+            RangeDownloader downloader = mDownloader;
+            if (downloader != null) {
+                downloader.cancel();
             }
         }
 
@@ -0,0 +1,257 @@
+package com.firebase.ui.storage.images;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adds the version of each object to the disk cache keys of {@link FirebaseImageLoader}, so that
+ * an image which is overwritten in Cloud Storage is downloaded again instead of being served from
+ * the cache forever.
+ * <p>
+ * Versions are read from the object's {@link StorageMetadata}. Lookups are cached for a while and
+ * concurrent lookups of the same object share a single request, so most loads don't cost an extra
+ * round trip. The last known versions are kept across restarts, and an expired version is still
+ * used to look up the cache while it is fetched again in the background; only images which have
+ * to be downloaded anyway wait for their version. When the metadata can't be fetched, for example
+ * when offline, the last known version is used, or the path alone if there is none.
+ */
+public final class MetadataCacheKeys {
+    /**
+     * The metadata field which identifies a version of an object.
+     */
+    public enum Mode {
+        /** {@link StorageMetadata#getGeneration()}, changed by every overwrite. */
+        GENERATION,
+        /** {@link StorageMetadata#getMd5Hash()}, changed only if the contents change. */
+        MD5_HASH,
+        /** {@link StorageMetadata#getUpdatedTimeMillis()}. */
+        UPDATED_TIME
+    }
+
+    private static final String TAG = "MetadataCacheKeys";
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** How long a failed lookup is remembered before the metadata is requested again. */
+    private static final long FAILURE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_ENTRIES = 1000;
+    private static final long LOOKUP_TIMEOUT_SECONDS = 10;
+
+    /** Runs completion listeners on the thread which completed the lookup. */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Context mContext;
+    private final Mode mMode;
+    private final long mTtlMillis;
+
+    private final LruCache<String, Version> mVersions = new LruCache<>(MAX_ENTRIES);
+    private final Map<String, Task<StorageMetadata>> mInFlight = new HashMap<>();
+    private SharedPreferences mPreferences;
+
+    public MetadataCacheKeys(@NonNull Context context, @NonNull Mode mode) {
+        this(context, mode, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param ttlMillis how long a version is trusted before the metadata is fetched again. Changes
+     *                  made in Cloud Storage take up to this long to show.
+     */
+    public MetadataCacheKeys(@NonNull Context context, @NonNull Mode mode, long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("TTL must not be negative: " + ttlMillis);
+        }
+        mContext = context.getApplicationContext();
+        mMode = mode;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Forget the version of an object, for example after uploading a new one from this device.
+     */
+    public void invalidate(@NonNull StorageReference reference) {
+        mVersions.remove(reference.getPath());
+        getPreferences().edit().remove(reference.getPath()).apply();
+    }
+
+    /**
+     * Get the last known version of an object without waiting, and fetch its metadata in the
+     * background if that version is too old.
+     *
+     * @return the version, or null if it isn't known.
+     */
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    @WorkerThread
+    public String getVersion(@NonNull StorageReference reference) {
+        Version known = getKnown(reference.getPath());
+        if (known == null || known.isExpired()) {
+            refresh(reference);
+        }
+        return known == null ? null : known.mValue;
+    }
+
+    /**
+     * Get the current version of an object, waiting for its metadata if the known version is too
+     * old. Use before downloading, which Glide's source threads allow to block.
+     *
+     * @return the version, or null if it isn't known.
+     */
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    @WorkerThread
+    public String awaitVersion(@NonNull StorageReference reference) {
+        String path = reference.getPath();
+        Version known = getKnown(path);
+        if (known != null && !known.isExpired()) {
+            return known.mValue;
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            // Tasks.await isn't allowed here
+            refresh(reference);
+            return known == null ? null : known.mValue;
+        }
+
+        try {
+            return getValue(Tasks.await(
+                    refresh(reference), LOOKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (ExecutionException | TimeoutException e) {
+            // Already logged and remembered when the lookup completed, or still running
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return known == null ? null : known.mValue;
+    }
+
+    /**
+     * Start fetching the metadata of an object unless it is already being fetched.
+     */
+    @NonNull
+    private Task<StorageMetadata> refresh(@NonNull StorageReference reference) {
+        final String path = reference.getPath();
+        synchronized (mInFlight) {
+            Task<StorageMetadata> task = mInFlight.get(path);
+            if (task == null) {
+                task = reference.getMetadata();
+                mInFlight.put(path, task);
+                task.addOnCompleteListener(DIRECT_EXECUTOR,
+                        new OnCompleteListener<StorageMetadata>() {
+                            @Override
+                            public void onComplete(@NonNull Task<StorageMetadata> task) {
+                                onLookupComplete(path, task);
+                            }
+                        });
+            }
+            return task;
+        }
+    }
+
+    private void onLookupComplete(@NonNull String path, @NonNull Task<StorageMetadata> task) {
+        synchronized (mInFlight) {
+            if (mInFlight.get(path) == task) {
+                mInFlight.remove(path);
+            }
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        if (task.isSuccessful()) {
+            String value = getValue(task.getResult());
+            mVersions.put(path, new Version(value, now + mTtlMillis));
+            if (value != null) {
+                getPreferences().edit().putString(path, value).apply();
+            }
+        } else {
+            // Keep serving the last known version without asking again on every load
+            Log.w(TAG, "Could not get metadata for " + path, task.getException());
+            Version known = getKnown(path);
+            mVersions.put(path, new Version(
+                    known == null ? null : known.mValue, now + FAILURE_TTL_MILLIS));
+        }
+    }
+
+    /**
+     * @return the version in memory, or the one persisted by an earlier process, which counts as
+     * expired.
+     */
+    @Nullable
+    private Version getKnown(@NonNull String path) {
+        Version known = mVersions.get(path);
+        if (known == null) {
+            String value = getPreferences().getString(path, null);
+            if (value != null) {
+                known = new Version(value, 0);
+                mVersions.put(path, known);
+            }
+        }
+        return known;
+    }
+
+    @NonNull
+    private synchronized SharedPreferences getPreferences() {
+        if (mPreferences == null) {
+            // Usually first read on Glide's threads, which may wait for the disk
+            mPreferences = mContext.getSharedPreferences(
+                    "com.firebase.ui.storage.MetadataCacheKeys." + mMode.name(),
+                    Context.MODE_PRIVATE);
+            if (mPreferences.getAll().size() > MAX_ENTRIES) {
+                // Start over rather than let versions of images long gone pile up
+                mPreferences.edit().clear().apply();
+            }
+        }
+        return mPreferences;
+    }
+
+    @Nullable
+    private String getValue(@NonNull StorageMetadata metadata) {
+        switch (mMode) {
+            case GENERATION:
+                return metadata.getGeneration();
+            case MD5_HASH:
+                return metadata.getMd5Hash();
+            case UPDATED_TIME:
+                return String.valueOf(metadata.getUpdatedTimeMillis());
+            default:
+                throw new IllegalStateException("Unknown mode: " + mMode);
+        }
+    }
+
+    private static final class Version {
+        @Nullable final String mValue;
+        final long mExpiresAt;
+
+        Version(@Nullable String value, long expiresAt) {
+            mValue = value;
+            mExpiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() >= mExpiresAt;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.firebase.ui.storage.images;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads a URL into a file, resuming from the end of the file with a range request if it was
+ * left incomplete by an earlier attempt. The ETag of the response is stored next to the file, and
+ * only ranges of the same version of the resource are appended.
+ */
+final class RangeDownloader {
+    /**
+     * Receives the progress of a download.
+     */
+    interface Listener {
+        /**
+         * @param totalBytes the size of the resource, or -1 if it isn't known.
+         */
+        void onProgress(long bytesDownloaded, long totalBytes);
+    }
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /** Progress is reported about this many times per download. */
+    private static final int PROGRESS_STEPS = 100;
+
+    private final File mFile;
+    private final File mEtagFile;
+
+    private volatile boolean mIsCancelled;
+    private volatile HttpURLConnection mConnection;
+
+    RangeDownloader(@NonNull File file) {
+        mFile = file;
+        mEtagFile = new File(file.getPath() + ".etag");
+    }
+
+    /**
+     * @return the file, once it holds the whole resource.
+     * @throws IOException if the download fails or is cancelled. Whatever was downloaded is kept
+     *                     for the next attempt.
+     */
+    @NonNull
+    @WorkerThread
+    public File download(@NonNull URL url, @Nullable Listener listener) throws IOException {
+        long offset = mFile.length();
+        String etag = offset > 0 ? readEtag() : null;
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        mConnection = connection;
+        try {
+            checkCancelled();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (etag != null) {
+                // The server ignores the range and sends everything if the ETag changed
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                connection.setRequestProperty("If-Range", etag);
+            }
+
+            int code = connection.getResponseCode();
+            long total;
+            OutputStream out;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                total = getTotal(connection, offset);
+                out = new FileOutputStream(mFile, true);
+            } else if (code == HTTP_RANGE_NOT_SATISFIABLE && etag != null) {
+                // Same version and nothing after the offset: the last attempt got everything
+                if (listener != null) {
+                    listener.onProgress(offset, offset);
+                }
+                return mFile;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                offset = 0;
+                total = parseLong(connection.getHeaderField("Content-Length"));
+                // Truncate before storing the new ETag so old bytes are never resumed with it
+                out = new FileOutputStream(mFile, false);
+            } else {
+                throw new IOException("Unexpected response " + code + " from " + url.getHost());
+            }
+
+            try {
+                if (code == HttpURLConnection.HTTP_OK) {
+                    writeEtag(connection.getHeaderField("ETag"));
+                }
+                offset = copy(connection.getInputStream(), out, offset, total, listener);
+            } finally {
+                out.close();
+            }
+
+            if (total != -1 && offset != total) {
+                throw new IOException("Download ended after " + offset + " of " + total + " bytes");
+            }
+            return mFile;
+        } finally {
+            mConnection = null;
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stop the download from any thread.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+        HttpURLConnection connection = mConnection;
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Delete the file and the state kept to resume it.
+     */
+    public void delete() {
+        mFile.delete();
+        mEtagFile.delete();
+    }
+
+    private long copy(@NonNull InputStream in,
+                      @NonNull OutputStream out,
+                      long offset,
+                      long total,
+                      @Nullable Listener listener) throws IOException {
+        long step = Math.max(BUFFER_SIZE, total / PROGRESS_STEPS);
+        long lastReported = offset;
+        if (listener != null) {
+            listener.onProgress(offset, total);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                checkCancelled();
+                out.write(buffer, 0, read);
+                offset += read;
+
+                if (listener != null && (offset - lastReported >= step || offset == total)) {
+                    listener.onProgress(offset, total);
+                    lastReported = offset;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    private void checkCancelled() throws IOException {
+        if (mIsCancelled) {
+            throw new IOException("Download cancelled");
+        }
+    }
+
+    private long getTotal(@NonNull HttpURLConnection connection, long offset) throws IOException {
+        // Content-Range: bytes <start>-<end>/<total>
+        String range = connection.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes " + offset + "-")) {
+            // Start over next time rather than failing the same way forever
+            delete();
+            throw new IOException("Unexpected range: " + range);
+        }
+        return parseLong(range.substring(range.indexOf('/') + 1));
+    }
+
+    private static long parseLong(@Nullable String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            // "*" for an unknown total
+            return -1;
+        }
+    }
+
+    @Nullable
+    private String readEtag() {
+        try {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mEtagFile), "UTF-8"));
+            try {
+                return reader.readLine();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // Without an ETag the download can't be resumed safely
+            return null;
+        }
+    }
+
+    private void writeEtag(@Nullable String etag) throws IOException {
+        if (etag == null) {
+            mEtagFile.delete();
+            return;
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mEtagFile), "UTF-8");
+        try {
+            writer.write(etag);
+        } finally {
+            writer.close();
+        }
+    }
+}
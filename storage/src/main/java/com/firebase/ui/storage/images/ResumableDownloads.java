@@ -0,0 +1,147 @@
+package com.firebase.ui.storage.images;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.support.annotation.WorkerThread;
+
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes {@link FirebaseImageLoader} download images into files in a directory, so that a download
+ * which fails or is cancelled, for example because the view scrolled away, continues where it
+ * stopped instead of starting over. Useful for large images and GIFs.
+ * <p>
+ * Files are deleted once Glide has read them. Incomplete files which aren't resumed are deleted
+ * after a day.
+ */
+public final class ResumableDownloads {
+    /**
+     * Receives the progress of downloads, for example to draw a progress placeholder.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on Glide's loading threads.
+         *
+         * @param totalBytes the size of the image, or -1 if it isn't known.
+         */
+        @WorkerThread
+        void onProgress(@NonNull StorageReference reference, long bytesDownloaded, long totalBytes);
+    }
+
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final File mDirectory;
+    @Nullable private final ProgressListener mListener;
+
+    /** Names of the files being downloaded. */
+    private final Set<String> mActive = new HashSet<>();
+    private boolean mIsPruned;
+
+    /**
+     * @param directory a directory used only for these downloads, for example in
+     *                  {@code Context#getCacheDir()}.
+     */
+    public ResumableDownloads(@NonNull File directory) {
+        this(directory, null);
+    }
+
+    public ResumableDownloads(@NonNull File directory, @Nullable ProgressListener listener) {
+        mDirectory = directory;
+        mListener = listener;
+    }
+
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public ProgressListener getListener() {
+        return mListener;
+    }
+
+    /**
+     * Get the file to download an object into, unless it is already being downloaded.
+     *
+     * @return the file, or null if another load is downloading the object.
+     * @see #release(File)
+     */
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public synchronized File acquire(@NonNull StorageReference reference) {
+        if (!mIsPruned) {
+            prune();
+            mIsPruned = true;
+        }
+
+        String name = getName(reference);
+        if (!mActive.add(name)) {
+            return null;
+        }
+
+        mDirectory.mkdirs();
+        return new File(mDirectory, name);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public synchronized void release(@NonNull File file) {
+        mActive.remove(file.getName());
+    }
+
+    /**
+     * Delete incomplete downloads which aren't in progress.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!isActive(file)) {
+                file.delete();
+            }
+        }
+    }
+
+    private void prune() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - MAX_AGE_MILLIS;
+        for (File file : files) {
+            if (file.lastModified() < oldest && !isActive(file)) {
+                file.delete();
+            }
+        }
+    }
+
+    private boolean isActive(@NonNull File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        return mActive.contains(dot == -1 ? name : name.substring(0, dot));
+    }
+
+    @NonNull
+    private static String getName(@NonNull StorageReference reference) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(
+                    (reference.getBucket() + reference.getPath()).getBytes("UTF-8"));
+
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Both are guaranteed to exist on Android
+            throw new IllegalStateException(e);
+        }
+    }
+}
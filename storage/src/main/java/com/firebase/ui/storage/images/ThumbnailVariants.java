@@ -0,0 +1,182 @@
+package com.firebase.ui.storage.images;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RestrictTo;
+import android.util.LruCache;
+
+import com.google.firebase.storage.StorageReference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Describes resized copies of images stored next to the originals, for example by the Resize
+ * Images extension or a Cloud Function, so that {@link FirebaseImageLoader} can download the
+ * smallest copy big enough for the view instead of the original.
+ * <p>
+ * Variants are named with a pattern relative to the folder of the original, in which the
+ * following placeholders are replaced:
+ * <ul>
+ * <li>{@code {name}}: the file name of the original, for example {@code cat.jpg}</li>
+ * <li>{@code {base}}: the file name without its extension, for example {@code cat}</li>
+ * <li>{@code {ext}}: the extension including its dot, for example {@code .jpg}, or nothing</li>
+ * <li>{@code {width}} and {@code {height}}: the bounds of the variant</li>
+ * </ul>
+ * With the {@link #DEFAULT_PATTERN default pattern}, the 200x200 variant of {@code
+ * images/cat.jpg} is {@code images/thumb_200x200_cat.jpg}.
+ * <p>
+ * When a variant doesn't exist the original is downloaded and cached as the original instead,
+ * and the variant isn't tried again for that image until the app restarts.
+ */
+public final class ThumbnailVariants {
+    public static final String DEFAULT_PATTERN = "thumb_{width}x{height}_{name}";
+
+    private static final int MISSING_CACHE_SIZE = 500;
+
+    private final String mPattern;
+    /** Sorted from smallest to largest. */
+    private final List<Size> mSizes;
+
+    /** Paths of variants which turned out not to exist. */
+    private final LruCache<String, Boolean> mMissing = new LruCache<>(MISSING_CACHE_SIZE);
+
+    private ThumbnailVariants(@NonNull String pattern, @NonNull List<Size> sizes) {
+        mPattern = pattern;
+        mSizes = sizes;
+    }
+
+    /**
+     * Find the variant to download for a view of the given size.
+     *
+     * @return the smallest variant at least as large as the view in both dimensions, or null if
+     * the original should be downloaded.
+     */
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public Variant select(@NonNull StorageReference original, int width, int height) {
+        if (width <= 0 || height <= 0 || original.getParent() == null) {
+            // Target.SIZE_ORIGINAL or an unknown size
+            return null;
+        }
+
+        for (Size size : mSizes) {
+            if (size.mWidth >= width && size.mHeight >= height) {
+                StorageReference ref = original.getParent().child(getName(original, size));
+                return mMissing.get(ref.getPath()) == null ? new Variant(ref, size) : null;
+            }
+        }
+        return null;
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public void onVariantMissing(@NonNull Variant variant) {
+        mMissing.put(variant.getReference().getPath(), true);
+    }
+
+    @NonNull
+    private String getName(@NonNull StorageReference original, @NonNull Size size) {
+        String name = original.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : "";
+
+        return mPattern
+                .replace("{name}", name)
+                .replace("{base}", base)
+                .replace("{ext}", ext)
+                .replace("{width}", String.valueOf(size.mWidth))
+                .replace("{height}", String.valueOf(size.mHeight));
+    }
+
+    /**
+     * A resized copy of an image chosen by {@link #select(StorageReference, int, int)}.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public static final class Variant {
+        private final StorageReference mReference;
+        private final Size mSize;
+
+        Variant(@NonNull StorageReference reference, @NonNull Size size) {
+            mReference = reference;
+            mSize = size;
+        }
+
+        @NonNull
+        public StorageReference getReference() {
+            return mReference;
+        }
+
+        @NonNull
+        public String getLabel() {
+            return mSize.mWidth + "x" + mSize.mHeight;
+        }
+    }
+
+    private static final class Size {
+        final int mWidth;
+        final int mHeight;
+
+        Size(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+    }
+
+    /**
+     * Builder for {@link ThumbnailVariants}.
+     */
+    public static final class Builder {
+        private final List<Size> mSizes = new ArrayList<>();
+        private String mPattern = DEFAULT_PATTERN;
+
+        /**
+         * Add a variant which fits within the given bounds.
+         */
+        @NonNull
+        public Builder addSize(int width, int height) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException(
+                        "Invalid variant size: " + width + "x" + height);
+            }
+            mSizes.add(new Size(width, height));
+            return this;
+        }
+
+        /**
+         * Set the name of variants relative to the folder of the original. Defaults to
+         * {@link #DEFAULT_PATTERN}.
+         *
+         * @see ThumbnailVariants
+         */
+        @NonNull
+        public Builder setNamePattern(@NonNull String pattern) {
+            if (!pattern.contains("{width}") && !pattern.contains("{height}")) {
+                throw new IllegalArgumentException(
+                        "Pattern must contain {width} or {height}: " + pattern);
+            }
+            mPattern = pattern;
+            return this;
+        }
+
+        @NonNull
+        public ThumbnailVariants build() {
+            if (mSizes.isEmpty()) {
+                throw new IllegalStateException("At least one size must be added.");
+            }
+
+            List<Size> sizes = new ArrayList<>(mSizes);
+            Collections.sort(sizes, new Comparator<Size>() {
+                @Override
+                public int compare(Size a, Size b) {
+                    long areaA = (long) a.mWidth * a.mHeight;
+                    long areaB = (long) b.mWidth * b.mHeight;
+                    return areaA < areaB ? -1 : (areaA == areaB ? 0 : 1);
+                }
+            });
+            return new ThumbnailVariants(mPattern, Collections.unmodifiableList(sizes));
+        }
+    }
+}